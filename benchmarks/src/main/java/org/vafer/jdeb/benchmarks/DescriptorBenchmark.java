@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.descriptors.PackageDescriptor;
+import org.vafer.jdeb.utils.MapVariableResolver;
+import org.vafer.jdeb.utils.VariableResolver;
+
+/**
+ * Parsing and writing a control file. The description gets the given
+ * number of continuation lines.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescriptorBenchmark {
+
+    @Param({ "1", "100" })
+    public int descriptionLines;
+
+    private VariableResolver resolver;
+    private byte[] control;
+    private PackageDescriptor descriptor;
+
+    @Setup
+    public void setUp() throws IOException, ParseException {
+        final Map<String, String> variables = new HashMap<String, String>();
+        variables.put("name", "benchmark");
+        variables.put("version", "1.0-SNAPSHOT");
+        variables.put("maintainer", "Torsten Curdt <tcurdt@vafer.org>");
+        resolver = new MapVariableResolver(variables);
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Package: [[name]]\n");
+        sb.append("Version: [[version]]\n");
+        sb.append("Section: misc\n");
+        sb.append("Priority: optional\n");
+        sb.append("Architecture: all\n");
+        sb.append("Depends: default-jre | java6-runtime, libfoo (>= 1.2), libbar\n");
+        sb.append("Maintainer: [[maintainer]]\n");
+        sb.append("Description: a synthetic package\n");
+        for (int i = 0; i < descriptionLines; i++) {
+            sb.append(" line ").append(i).append(" of the long description of the synthetic package\n");
+        }
+        control = sb.toString().getBytes("UTF-8");
+
+        descriptor = new PackageDescriptor(new ByteArrayInputStream(control), resolver);
+    }
+
+    @Benchmark
+    public PackageDescriptor parse() throws IOException, ParseException {
+        return new PackageDescriptor(new ByteArrayInputStream(control), resolver);
+    }
+
+    @Benchmark
+    public String write() {
+        return descriptor.toString();
+    }
+}
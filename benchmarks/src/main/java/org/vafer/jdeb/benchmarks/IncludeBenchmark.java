@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.producers.AbstractDataProducer;
+
+/**
+ * Selecting the files of a tree with the kind of include and exclude
+ * patterns that show up in real packaging configurations.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncludeBenchmark {
+
+    private static final int PATHS = 1000;
+
+    private static final String[] INCLUDES = {
+        "bin/**",
+        "lib/**/*.jar",
+        "etc/**/*.conf",
+        "etc/**/*.properties",
+        "share/**"
+    };
+
+    private static final String[] EXCLUDES = {
+        "**/.svn/**",
+        "**/.git/**",
+        "**/CVS/**",
+        "**/*~",
+        "**/.#*",
+        "**/.DS_Store",
+        "**/*.orig",
+        "**/test/**"
+    };
+
+    private static final String[] DIRECTORIES = {
+        "bin", "lib", "lib/ext", "etc", "etc/conf.d", "share/doc", "share/man/man1", "src/main/java/org/example", "lib/.svn/text-base"
+    };
+
+    private static final String[] NAMES = {
+        "app", "commons-lang.jar", "server.conf", "logging.properties", "README", "app.1", "Main.java", "app.conf~", ".DS_Store"
+    };
+
+    private String[] paths;
+    private AbstractDataProducer producer;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = DIRECTORIES[random.nextInt(DIRECTORIES.length)] + "/" + NAMES[random.nextInt(NAMES.length)];
+        }
+
+        producer = new AbstractDataProducer(INCLUDES, EXCLUDES, null) {
+            public void produce( final DataConsumer pReceiver ) {
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public int isIncluded() {
+        int included = 0;
+        for (int i = 0; i < paths.length; i++) {
+            if (producer.isIncluded(paths[i])) {
+                included++;
+            }
+        }
+        return included;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.tar.TarEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.mapping.LsMapper;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
+
+/**
+ * Parsing the output of "ls -laR" and looking up the entries in it. The
+ * listing is generated with the given number of directories of 20 files.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LsMapperBenchmark {
+
+    private static final int FILES = 20;
+    private static final int LOOKUPS = 1000;
+
+    @Param({ "10", "1000" })
+    public int directories;
+
+    private byte[] listing;
+    private LsMapper mapper;
+    private TarEntry[] entries;
+
+    @Setup
+    public void setUp() throws IOException, ParseError {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("total 0\n");
+        sb.append("drwxr-xr-x   23 tcurdt  tcurdt   782 Jun 25 03:48 .\n");
+        sb.append("drwxr-xr-x    3 tcurdt  tcurdt   102 Jun 25 03:48 ..\n");
+        sb.append("\n");
+        for (int d = 0; d < directories; d++) {
+            sb.append("./usr/share/benchmark/dir").append(d).append(":\n");
+            sb.append("total ").append(FILES * 8).append("\n");
+            sb.append("drwxr-xr-x   23 tcurdt  tcurdt   782 Jun 25 03:48 .\n");
+            sb.append("drwxr-xr-x    3 tcurdt  tcurdt   102 Jun 25 03:48 ..\n");
+            for (int f = 0; f < FILES; f++) {
+                sb.append(f % 4 == 0 ? "-rwxr-xr-x" : "-rw-r--r--");
+                sb.append("    1 tcurdt  tcurdt  ").append(1000 + f).append(" Jun 25 03:48 file").append(f).append(".txt\n");
+            }
+            sb.append("\n");
+        }
+        listing = sb.toString().getBytes("UTF-8");
+
+        mapper = new LsMapper(new ByteArrayInputStream(listing));
+
+        final Random random = new Random(0);
+        entries = new TarEntry[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            // every 10th lookup misses
+            final String name = i % 10 == 0 ? "usr/share/unknown/file" + i : "usr/share/benchmark/dir" + random.nextInt(directories) + "/file" + random.nextInt(FILES) + ".txt";
+            entries[i] = new TarEntry(name);
+        }
+    }
+
+    @Benchmark
+    public LsMapper parse() throws IOException, ParseError {
+        return new LsMapper(new ByteArrayInputStream(listing));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int map() {
+        int mode = 0;
+        for (int i = 0; i < entries.length; i++) {
+            mode ^= mapper.map(entries[i]).getMode();
+        }
+        return mode;
+    }
+}
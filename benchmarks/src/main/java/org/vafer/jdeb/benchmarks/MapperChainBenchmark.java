@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.tar.TarEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MutableEntry;
+import org.vafer.jdeb.mapping.PermMapper;
+import org.vafer.jdeb.mapping.PrefixMapper;
+import org.vafer.jdeb.producers.AbstractDataProducer;
+
+/**
+ * Mapping the entries through a chain of prefix and permission mappers,
+ * creating a TarEntry per entry and in place the way the producers do it.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperChainBenchmark {
+
+    private static final int ENTRIES = 1000;
+
+    @Param({ "1", "2", "4" })
+    public int mappers;
+
+    private TarEntry[] entries;
+    private AbstractDataProducer producer;
+    private final MutableEntry entry = new MutableEntry();
+
+    @Setup
+    public void setUp() {
+        entries = new TarEntry[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            final TarEntry entry = new TarEntry("target/classes/org/example/dir" + (i % 20) + "/File" + i + ".class");
+            entry.setUserName("builder");
+            entry.setGroupName("builder");
+            entry.setMode(0100644);
+            entry.setSize(i);
+            entries[i] = entry;
+        }
+
+        final Mapper[] chain = new Mapper[mappers];
+        for (int i = 0; i < mappers; i++) {
+            if (i % 2 == 0) {
+                chain[i] = new PrefixMapper(1, "/usr/share/example");
+            } else {
+                chain[i] = new PermMapper(0, 0, "root", "root", 0644, 0755, 0, null);
+            }
+        }
+
+        producer = new AbstractDataProducer(null, null, chain) {
+            public void produce( final DataConsumer pReceiver ) {
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public int map() {
+        int length = 0;
+        for (int i = 0; i < entries.length; i++) {
+            length += producer.map(entries[i]).getName().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public int mapInPlace() {
+        int length = 0;
+        for (int i = 0; i < entries.length; i++) {
+            final TarEntry source = entries[i];
+            entry.set(source.getName(), "", source.getUserName(), 0, source.getGroupName(), 0, source.getMode(), source.getSize());
+            producer.map(entry);
+            length += entry.getName().length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.vafer.jdeb.compression.Compression;
+
+/**
+ * Runs the complete packaging on synthetic trees, once for every workload
+ * and compression. Every build runs in a forked JVM that reports the
+ * throughput, the peak resident set size and the time spent in garbage
+ * collection. The results are written as JSON, so the numbers of different
+ * releases or machines can be compared.
+ *
+ * Usage: PackagingBenchmark [options]
+ *
+ * <pre>
+ *   --workdir &lt;dir&gt;            where the trees and debs are created (default: target/packaging-benchmark)
+ *   --workloads &lt;a,b&gt;          tiny, huge, deep and jars (default: all)
+ *   --compressions &lt;a,b&gt;       the compression methods (default: none,gzip,bzip2,xz,zstd)
+ *   --scale &lt;n&gt;                multiplies the size of the trees (default: 1)
+ *   --iterations &lt;n&gt;           builds per workload and compression (default: 3)
+ *   --jvmArgs &lt;args&gt;           arguments of the forked JVMs, separated by spaces (default: -Xmx1g)
+ *   --output &lt;file&gt;            the JSON results (default: &lt;workdir&gt;/results.json)
+ * </pre>
+ *
+ * The trees are kept in the work directory and reused by later runs with the same scale.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class PackagingBenchmark {
+
+    private File workdir = new File("target/packaging-benchmark");
+    private List<String> workloads = Arrays.asList(Workloads.NAMES);
+    private List<String> compressions = Arrays.asList("none", "gzip", "bzip2", "xz", "zstd");
+    private int scale = 1;
+    private int iterations = 3;
+    private List<String> jvmArgs = Arrays.asList("-Xmx1g");
+    private File output;
+
+    private PackagingBenchmark() {
+    }
+
+    public static void main( final String[] args ) throws Exception {
+        final PackagingBenchmark benchmark = new PackagingBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 == args.length) {
+                usage("Missing the value of " + args[i]);
+            }
+            final String value = args[++i];
+            if ("--workdir".equals(args[i - 1])) {
+                benchmark.workdir = new File(value);
+            } else if ("--workloads".equals(args[i - 1])) {
+                benchmark.workloads = split(value, ",");
+            } else if ("--compressions".equals(args[i - 1])) {
+                benchmark.compressions = split(value, ",");
+            } else if ("--scale".equals(args[i - 1])) {
+                benchmark.scale = Integer.parseInt(value);
+            } else if ("--iterations".equals(args[i - 1])) {
+                benchmark.iterations = Integer.parseInt(value);
+            } else if ("--jvmArgs".equals(args[i - 1])) {
+                benchmark.jvmArgs = split(value, " ");
+            } else if ("--output".equals(args[i - 1])) {
+                benchmark.output = new File(value);
+            } else {
+                usage("Unknown option " + args[i - 1]);
+            }
+        }
+
+        for (String workload : benchmark.workloads) {
+            if (!Workloads.isWorkload(workload)) {
+                usage("Unknown workload " + workload);
+            }
+        }
+        for (String compression : benchmark.compressions) {
+            if (!Compression.isSupported(compression)) {
+                usage("Unknown compression " + compression);
+            }
+        }
+
+        benchmark.run();
+    }
+
+    private static void usage( final String pMessage ) {
+        System.err.println(pMessage);
+        System.err.println("Usage: PackagingBenchmark [--workdir <dir>] [--workloads <a,b>] [--compressions <a,b>] [--scale <n>] [--iterations <n>] [--jvmArgs <args>] [--output <file>]");
+        System.exit(1);
+    }
+
+    private static List<String> split( final String pValue, final String pSeparator ) {
+        final List<String> values = new ArrayList<String>();
+        for (String value : pValue.split(pSeparator)) {
+            if (value.trim().length() > 0) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private void run() throws IOException, InterruptedException {
+        final File control = createControl();
+        final List<String> results = new ArrayList<String>();
+
+        System.out.println(String.format(Locale.ENGLISH, "%-6s %-6s %4s %10s %10s %10s %10s", "Tree", "Method", "Run", "Wall ms", "MB/s", "RSS MB", "GC ms"));
+
+        for (String workload : workloads) {
+            final File tree = getTree(workload);
+            for (String compression : compressions) {
+                for (int i = 0; i < iterations; i++) {
+                    final String result = fork(tree, control, compression);
+                    results.add("{ \"workload\": \"" + workload + "\", \"iteration\": " + i + ", " + result.substring(1).trim());
+                    System.out.println(String.format(Locale.ENGLISH, "%-6s %-6s %4d %10s %10s %10s %10s", workload, compression, i,
+                        getValue(result, "wallMillis"), getValue(result, "mbPerSecond"), toMegabytes(getValue(result, "peakRssKb")), getValue(result, "gcMillis")));
+                }
+            }
+        }
+
+        final File file = output != null ? output : new File(workdir, "results.json");
+        write(file, results);
+        System.out.println("Results written to " + file);
+    }
+
+    /**
+     * @return the tree of the workload, generated on first use
+     */
+    private File getTree( final String pWorkload ) throws IOException {
+        final File tree = new File(workdir, "trees/" + pWorkload + "-" + scale);
+        final File marker = new File(workdir, "trees/" + pWorkload + "-" + scale + ".complete");
+        if (!marker.isFile()) {
+            if (tree.exists()) {
+                throw new IOException("The incomplete tree " + tree + " has to be removed first");
+            }
+            System.out.println("Generating " + tree);
+            Workloads.generate(pWorkload, tree, scale);
+            if (!marker.createNewFile()) {
+                throw new IOException("Could not create " + marker);
+            }
+        }
+        return tree;
+    }
+
+    private File createControl() throws IOException {
+        final File control = new File(workdir, "control");
+        if (!control.isDirectory() && !control.mkdirs()) {
+            throw new IOException("Could not create " + control);
+        }
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(new File(control, "control")), "UTF-8");
+        try {
+            writer.write("Package: jdeb-benchmark\n");
+            writer.write("Version: 1.0\n");
+            writer.write("Section: misc\n");
+            writer.write("Priority: optional\n");
+            writer.write("Architecture: all\n");
+            writer.write("Maintainer: Torsten Curdt <tcurdt@vafer.org>\n");
+            writer.write("Description: synthetic package of the packaging benchmark\n");
+        } finally {
+            writer.close();
+        }
+        return control;
+    }
+
+    /**
+     * Build the package in a JVM of its own.
+     *
+     * @return the JSON object reported by the build
+     */
+    private String fork( final File pTree, final File pControl, final String pCompression ) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PackagingRun.class.getName());
+        command.add(pTree.getPath());
+        command.add(pControl.getPath());
+        command.add(new File(workdir, "benchmark.deb").getPath());
+        command.add(pCompression);
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final StringBuilder log = new StringBuilder();
+        String result = null;
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PackagingRun.PREFIX)) {
+                    result = line.substring(PackagingRun.PREFIX.length());
+                } else {
+                    log.append(line).append('\n');
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        final int exit = process.waitFor();
+        if (exit != 0 || result == null) {
+            throw new IOException("The build of " + pTree + " with " + pCompression + " failed with exit code " + exit + "\n" + log);
+        }
+        return result;
+    }
+
+    /**
+     * @return the value of a number in the flat part of the result
+     */
+    static String getValue( final String pJson, final String pName ) {
+        final String key = "\"" + pName + "\": ";
+        final int start = pJson.indexOf(key);
+        if (start == -1) {
+            return "-";
+        }
+        int end = start + key.length();
+        while (end < pJson.length() && pJson.charAt(end) != ',' && pJson.charAt(end) != ' ') {
+            end++;
+        }
+        return pJson.substring(start + key.length(), end);
+    }
+
+    private static String toMegabytes( final String pKilobytes ) {
+        if ("-".equals(pKilobytes) || pKilobytes.startsWith("-")) {
+            return "-";
+        }
+        return "" + Long.parseLong(pKilobytes) / 1024;
+    }
+
+    private void write( final File pFile, final List<String> pResults ) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+        try {
+            writer.write("{\n");
+            writer.write("  \"java\": \"" + System.getProperty("java.version") + "\",\n");
+            writer.write("  \"os\": \"" + System.getProperty("os.name") + " " + System.getProperty("os.arch") + "\",\n");
+            writer.write("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ",\n");
+            writer.write("  \"scale\": " + scale + ",\n");
+            writer.write("  \"jvmArgs\": \"" + join(jvmArgs) + "\",\n");
+            writer.write("  \"results\": [\n");
+            for (int i = 0; i < pResults.size(); i++) {
+                writer.write("    " + pResults.get(i) + (i + 1 < pResults.size() ? ",\n" : "\n"));
+            }
+            writer.write("  ]\n");
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String join( final List<String> pValues ) {
+        final StringBuilder sb = new StringBuilder();
+        for (String value : pValues) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(value.replace("\\", "\\\\").replace("\"", "\\\""));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.maven.DebMaker;
+import org.vafer.jdeb.metrics.BuildMetrics;
+import org.vafer.jdeb.utils.MapVariableResolver;
+
+/**
+ * Builds a single package and prints the measurements as a line of JSON.
+ * The packaging benchmark runs every build in a JVM of its own, so the peak
+ * memory and the garbage collections only belong to that build.
+ *
+ * Usage: PackagingRun &lt;tree&gt; &lt;control&gt; &lt;deb&gt; &lt;compression&gt;
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class PackagingRun {
+
+    /**
+     * Marks the line with the result in the output of the JVM.
+     */
+    public static final String PREFIX = "RESULT ";
+
+    private PackagingRun() {
+    }
+
+    public static void main( final String[] args ) throws Exception {
+        if (args.length != 4) {
+            System.err.println("Usage: PackagingRun <tree> <control> <deb> <compression>");
+            System.exit(1);
+        }
+
+        final File tree = new File(args[0]);
+        final File deb = new File(args[2]);
+        final String compression = args[3];
+
+        final DebMaker debMaker = new DebMaker(new Console() {
+            public void println( final String s ) {
+            }
+        }, deb, new File(args[1]), new MapVariableResolver(new HashMap<String, String>()));
+        debMaker.addData(tree);
+        debMaker.setCompression(compression);
+
+        final long start = System.nanoTime();
+        debMaker.makeDeb();
+        final long wall = System.nanoTime() - start;
+
+        System.out.println(PREFIX + toJson(debMaker.getMetrics(), compression, wall, deb.length()));
+        deb.delete();
+    }
+
+    private static String toJson( final BuildMetrics pMetrics, final String pCompression, final long pWall, final long pDebBytes ) throws IOException {
+        final BuildMetrics.Phase data = pMetrics.getPhase("data");
+        final long bytes = data != null ? data.getBytesIn() : -1;
+        final long files = data != null ? data.getFiles() : -1;
+        final double seconds = pWall / 1e9;
+
+        long gcCount = 0;
+        long gcMillis = 0;
+        final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{ \"compression\": \"").append(pCompression).append('"');
+        json.append(", \"files\": ").append(files);
+        json.append(", \"bytes\": ").append(bytes);
+        json.append(", \"debBytes\": ").append(pDebBytes);
+        json.append(", \"wallMillis\": ").append(pWall / 1000000);
+        json.append(", \"mbPerSecond\": ").append(String.format(Locale.ENGLISH, "%.2f", bytes / (1024.0 * 1024.0) / seconds));
+        json.append(", \"filesPerSecond\": ").append(String.format(Locale.ENGLISH, "%.2f", files / seconds));
+        json.append(", \"peakRssKb\": ").append(getPeakRss());
+        json.append(", \"peakHeapBytes\": ").append(peakHeap);
+        json.append(", \"gcCount\": ").append(gcCount);
+        json.append(", \"gcMillis\": ").append(gcMillis);
+        json.append(", \"phases\": {");
+        final List<BuildMetrics.Phase> phases = pMetrics.getPhases();
+        for (int i = 0; i < phases.size(); i++) {
+            final BuildMetrics.Phase phase = phases.get(i);
+            json.append(i == 0 ? " \"" : ", \"").append(phase.getName()).append("\": ").append(phase.getWallNanos() / 1000000);
+        }
+        json.append(" } }");
+        return json.toString();
+    }
+
+    /**
+     * @return the peak resident set size of the process in kB or -1 if it is not known on this platform
+     */
+    static long getPeakRss() throws IOException {
+        final File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return -1;
+        }
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(status), "US-ASCII"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.utils.MapVariableResolver;
+import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.VariableResolver;
+
+/**
+ * Replacing the variables of a control file line, with and without
+ * variables in it.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplaceVariablesBenchmark {
+
+    @Param({ "0", "1", "8" })
+    public int variables;
+
+    private VariableResolver resolver;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        final Map<String, String> map = new HashMap<String, String>();
+        final StringBuilder sb = new StringBuilder("Description: the package");
+        for (int i = 0; i < variables; i++) {
+            map.put("variable" + i, "value of variable " + i);
+            sb.append(" and [[variable").append(i).append("]]");
+        }
+        sb.append(" built from a synthetic expression");
+
+        resolver = new MapVariableResolver(map);
+        expression = sb.toString();
+    }
+
+    @Benchmark
+    public String replaceVariables() throws ParseException {
+        return Utils.replaceVariables(resolver, expression, "[[", "]]");
+    }
+}
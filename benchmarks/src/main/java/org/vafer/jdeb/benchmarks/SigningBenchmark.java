@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.signing.SigningUtils;
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * Clear signing a changes file of the given size with the test key of jdeb.
+ * Reading the keyring and extracting the private key are part of every
+ * signature, just like they are when signing a package.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+
+    private static final String KEY = "2E074D8F";
+    private static final String PASSPHRASE = "test";
+
+    @Param({ "1024", "1048576" })
+    public int size;
+
+    private byte[] keyring;
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        final InputStream input = SigningBenchmark.class.getResourceAsStream("/org/vafer/gpg/secring.gpg");
+        if (input == null) {
+            throw new IOException("The test keyring is missing from the classpath");
+        }
+        try {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Utils.copy(input, output);
+            keyring = output.toByteArray();
+        } finally {
+            input.close();
+        }
+
+        final StringBuilder sb = new StringBuilder(size + 100);
+        int line = 0;
+        while (sb.length() < size) {
+            sb.append(" d41d8cd98f00b204e9800998ecf8427e ").append(line).append(" misc optional benchmark_").append(line).append(".deb\n");
+            line++;
+        }
+        content = sb.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public byte[] clearSign() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(content.length + 1024);
+        SigningUtils.clearSign(new ByteArrayInputStream(content), new ByteArrayInputStream(keyring), KEY, PASSPHRASE, output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the synthetic trees the packaging benchmark runs on. The trees
+ * only depend on the name of the workload and the scale, every run with the
+ * same arguments creates the same files with the same content.
+ *
+ * <ul>
+ * <li>tiny - many small text files in a flat hierarchy</li>
+ * <li>huge - a few big files, half text and half random bytes</li>
+ * <li>deep - small files in deeply nested directories</li>
+ * <li>jars - jar files, their content is already compressed</li>
+ * </ul>
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class Workloads {
+
+    public static final String[] NAMES = { "tiny", "huge", "deep", "jars" };
+
+    private static final String[] WORDS = {
+        "package", "debian", "control", "archive", "import", "public", "final", "class",
+        "return", "static", "void", "string", "install", "depends", "version", "the",
+        "a", "of", "to", "and", "in", "is", "for", "with", "file", "data", "org", "vafer"
+    };
+
+    private Workloads() {
+    }
+
+    public static boolean isWorkload( final String pName ) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(pName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create the files of the workload in the directory.
+     *
+     * @param pName the name of the workload
+     * @param pDirectory the directory to create the tree in, it must not exist yet
+     * @param pScale multiplies the number of files or their size
+     */
+    public static void generate( final String pName, final File pDirectory, final int pScale ) throws IOException {
+        final Random random = new Random(pName.hashCode());
+
+        if ("tiny".equals(pName)) {
+            for (int i = 0; i < 20000 * pScale; i++) {
+                writeText(new File(pDirectory, "dir" + (i / 500) + "/file" + i + ".txt"), random, random.nextInt(2048));
+            }
+        } else if ("huge".equals(pName)) {
+            for (int i = 0; i < 3; i++) {
+                writeMixed(new File(pDirectory, "huge" + i + ".bin"), random, 64L * 1024 * 1024 * pScale);
+            }
+        } else if ("deep".equals(pName)) {
+            for (int i = 0; i < 5000 * pScale; i++) {
+                final StringBuilder path = new StringBuilder();
+                final int depth = 1 + (i % 50);
+                for (int d = 0; d < depth; d++) {
+                    path.append("level").append(d).append("-").append((i / 50) % 10).append('/');
+                }
+                path.append("file").append(i).append(".txt");
+                writeText(new File(pDirectory, path.toString()), random, random.nextInt(4096));
+            }
+        } else if ("jars".equals(pName)) {
+            for (int i = 0; i < 40 * pScale; i++) {
+                writeJar(new File(pDirectory, "lib/library" + i + ".jar"), random, 200);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown workload " + pName);
+        }
+    }
+
+    private static OutputStream create( final File pFile ) throws IOException {
+        final File parent = pFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        return new BufferedOutputStream(new FileOutputStream(pFile), 64 * 1024);
+    }
+
+    private static byte[] text( final Random pRandom, final int pLength ) {
+        final byte[] text = new byte[pLength];
+        int position = 0;
+        while (position < pLength) {
+            final String word = WORDS[pRandom.nextInt(WORDS.length)];
+            for (int i = 0; i < word.length() && position < pLength; i++) {
+                text[position++] = (byte) word.charAt(i);
+            }
+            if (position < pLength) {
+                text[position++] = (byte) (pRandom.nextInt(12) == 0 ? '\n' : ' ');
+            }
+        }
+        return text;
+    }
+
+    private static void writeText( final File pFile, final Random pRandom, final int pLength ) throws IOException {
+        final OutputStream output = create(pFile);
+        try {
+            output.write(text(pRandom, pLength));
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Alternate blocks of text and random bytes, so the file compresses to about half its size.
+     */
+    private static void writeMixed( final File pFile, final Random pRandom, final long pLength ) throws IOException {
+        final byte[] random = new byte[1024 * 1024];
+        final byte[] text = text(pRandom, random.length);
+        final OutputStream output = create(pFile);
+        try {
+            long position = 0;
+            boolean compressible = true;
+            while (position < pLength) {
+                final int n = (int) Math.min(random.length, pLength - position);
+                if (compressible) {
+                    output.write(text, 0, n);
+                } else {
+                    pRandom.nextBytes(random);
+                    output.write(random, 0, n);
+                }
+                compressible = !compressible;
+                position += n;
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void writeJar( final File pFile, final Random pRandom, final int pEntries ) throws IOException {
+        final ZipOutputStream output = new ZipOutputStream(create(pFile));
+        try {
+            for (int i = 0; i < pEntries; i++) {
+                final ZipEntry entry = new ZipEntry("org/example/p" + (i % 10) + "/Class" + i + ".class");
+                // fixed times keep the jars identical between runs
+                entry.setTime(0);
+                output.putNextEntry(entry);
+                output.write(text(pRandom, 2048 + pRandom.nextInt(16 * 1024)));
+                output.closeEntry();
+            }
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.tar.TarOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.events.Event;
+import org.vafer.jdeb.events.EventListener;
+
+/**
+ * The throughput of archiving files into the tar stream, including the md5
+ * of every file. The tar stream is written to a stream that drops the data,
+ * so compression and I/O are not part of the measurement.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataConsumerBenchmark {
+
+    private static final int FILES = 100;
+
+    private static final EventListener SILENT = new EventListener() {
+        public boolean isEnabled( final org.vafer.jdeb.events.Level pLevel ) {
+            return false;
+        }
+
+        public void onEvent( final Event pEvent ) {
+        }
+    };
+
+    private static final OutputStream NULL = new OutputStream() {
+        public void write( final int b ) {
+        }
+
+        public void write( final byte[] b, final int off, final int len ) {
+        }
+    };
+
+    @Param({ "1024", "1048576" })
+    public int fileSize;
+
+    private byte[] content;
+    private String[] names;
+    private DefaultDataConsumer consumer;
+
+    @Setup(Level.Trial)
+    public void setUpContent() {
+        content = new byte[fileSize];
+        new Random(0).nextBytes(content);
+
+        names = new String[FILES];
+        for (int i = 0; i < FILES; i++) {
+            names[i] = "usr/share/benchmark/dir" + (i % 10) + "/file" + i + ".bin";
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpConsumer() {
+        final TarOutputStream tar = new TarOutputStream(NULL);
+        tar.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+        consumer = new DefaultDataConsumer(SILENT, tar, new ChecksumSink(), new DataSize(), new ArchiveIndex());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public DefaultDataConsumer onEachFile() throws IOException {
+        for (int i = 0; i < FILES; i++) {
+            consumer.onEachFile(new ByteArrayInputStream(content), names[i], "", "root", 0, "root", 0, 0644, fileSize);
+        }
+        return consumer;
+    }
+}
@@ -15,28 +15,36 @@
  */
 package org.vafer.jdeb;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
-import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
-import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
-import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
+import org.vafer.jdeb.ar.ArArchiveChannel;
 import org.vafer.jdeb.changes.ChangeSet;
 import org.vafer.jdeb.changes.ChangesProvider;
+import org.vafer.jdeb.compression.Compression;
 import org.vafer.jdeb.control.ControlBuilder;
+import org.vafer.jdeb.data.ArchiveIndex;
+import org.vafer.jdeb.data.ChecksumSink;
 import org.vafer.jdeb.data.DataBuilder;
 import org.vafer.jdeb.descriptors.ChangesDescriptor;
 import org.vafer.jdeb.descriptors.InvalidDescriptorException;
 import org.vafer.jdeb.descriptors.PackageDescriptor;
+import org.vafer.jdeb.events.ConsoleEventListener;
+import org.vafer.jdeb.events.EventConsole;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.events.Level;
+import org.vafer.jdeb.metrics.BuildMetrics;
 import org.vafer.jdeb.signing.SigningUtils;
-import org.vafer.jdeb.utils.InformationOutputStream;
-import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.ParallelDigestOutputStream;
 import org.vafer.jdeb.utils.VariableResolver;
 
 /**
@@ -47,34 +55,144 @@ import org.vafer.jdeb.utils.VariableResolver;
  */
 public class Processor {
 
+    /** the digests of the deb the changes file lists */
+    private static final String[] DIGEST_ALGORITHMS = { "MD5", "SHA1", "SHA-256" };
+
     private final Console console;
     private final ControlBuilder controlBuilder;
     private final DataBuilder dataBuilder;
+    private long controlReserve;
+    private BuildMetrics metrics = new BuildMetrics();
 
     public Processor( final Console pConsole, final VariableResolver pResolver ) {
+        this(pConsole, new ConsoleEventListener(pConsole, Level.INFO), pResolver);
+    }
+
+    /**
+     * The messages are sent as INFO events. The events of the archived files
+     * are summarized unless the listener wants DEBUG events.
+     */
+    public Processor( final EventListener pListener, final VariableResolver pResolver ) {
+        this(new EventConsole(pListener), pListener, pResolver);
+    }
+
+    private Processor( final Console pConsole, final EventListener pListener, final VariableResolver pResolver ) {
         console = pConsole;
-        dataBuilder = new DataBuilder(console);
+        dataBuilder = new DataBuilder(console, pListener);
         controlBuilder = new ControlBuilder(pResolver, pConsole);
     }
 
-    private void addTo( final ArArchiveOutputStream pOutput, final String pName, final String pContent ) throws IOException {
-        final byte[] content = pContent.getBytes();
-        pOutput.putArchiveEntry(new ArArchiveEntry(pName, content.length));
-        pOutput.write(content);
-        pOutput.closeArchiveEntry();
+    /**
+     * Reserve space for the control archive in front of the data archive so the
+     * data can be written straight into the deb without intermediate temp files.
+     * Unused space is filled with a padding member dpkg ignores. If the control
+     * archive does not fit, the data gets moved within the deb.
+     *
+     * @param pBytes the number of bytes to reserve, 0 disables the single-write assembly
+     */
+    public void setControlReserve( final long pBytes ) {
+        if (pBytes < 0) {
+            throw new IllegalArgumentException("The control reserve must not be negative");
+        }
+        // members always start at even offsets
+        controlReserve = pBytes + (pBytes % 2);
+    }
+
+    /**
+     * @param pLevel the level for gzip (0-9), xz (0-9) and zstd (1-22), -1 for the default of the method
+     */
+    public void setCompressionLevel( final int pLevel ) {
+        dataBuilder.setCompressionLevel(pLevel);
+    }
+
+    /**
+     * @param pLong whether zstd should use long distance matching
+     */
+    public void setLongDistanceMatching( final boolean pLong ) {
+        dataBuilder.setLongDistanceMatching(pLong);
+    }
+
+    /**
+     * @param pMinThroughput the throughput in MB/s the "auto" compression needs to reach
+     */
+    public void setMinThroughput( final int pMinThroughput ) {
+        dataBuilder.setMinThroughput(pMinThroughput);
+    }
+
+    /**
+     * @param pReport the file to write the compressed sizes of the files and directories to, CSV or JSON by its extension, null for none
+     */
+    public void setSizeReport( final File pReport ) {
+        dataBuilder.setSizeReport(pReport);
+    }
+
+    /**
+     * @return the files and directories of the data archive of the last created deb
+     */
+    public ArchiveIndex getArchiveIndex() {
+        return dataBuilder.getIndex();
+    }
+
+    /**
+     * The phases of the last created deb. The changes phases are added to
+     * them when the changes of that deb are created.
+     *
+     * @return the metrics of the last build
+     */
+    public BuildMetrics getMetrics() {
+        return metrics;
     }
 
-    private void addTo( final ArArchiveOutputStream pOutput, final String pName, final File pContent ) throws IOException {
-        pOutput.putArchiveEntry(new ArArchiveEntry(pName, pContent.length()));
+    private void stopData( final BuildMetrics.Phase pPhase, final long pLength ) {
+        pPhase
+            .setFiles(dataBuilder.getSummary().getFiles())
+            .setBytesIn(dataBuilder.getSize().longValue())
+            .setBytesOut(pLength)
+            .stop();
+
+        // the stages run concurrently, only the scanning and the compression can be told apart
+        pPhase.addPart("scan", dataBuilder.getScanNanos())
+            .setFiles(dataBuilder.getSummary().getFiles());
+        pPhase.addPart("compress", dataBuilder.getCompressionNanos())
+            .setBytesIn(dataBuilder.getArchiveLength())
+            .setBytesOut(pLength);
+    }
 
-        final InputStream input = new FileInputStream(pContent);
+    /**
+     * Calculate the checksums of the finished deb from a separate read of the file.
+     * This allows the members to be transferred into the deb without going through the heap.
+     */
+    private void addChecksums( final PackageDescriptor pPackageDescriptor, final File pDeb ) throws IOException, NoSuchAlgorithmException {
+        final BuildMetrics.Phase phase = metrics.start("digests");
+        final ParallelDigestOutputStream digests = new ParallelDigestOutputStream(DIGEST_ALGORITHMS);
+
+        final byte[] buffer = new byte[64 * 1024];
+
+        final InputStream input = new FileInputStream(pDeb);
         try {
-            Utils.copy(input, pOutput);
+            int n;
+            while (-1 != (n = input.read(buffer))) {
+                digests.write(buffer, 0, n);
+            }
         } finally {
             input.close();
+            digests.close();
+        }
+
+        for (int i = 0; i < DIGEST_ALGORITHMS.length; i++) {
+            pPackageDescriptor.set(getDigestKey(DIGEST_ALGORITHMS[i]), digests.getHexDigest(DIGEST_ALGORITHMS[i]));
         }
+        pPackageDescriptor.set("Size", "" + digests.getSize());
+        pPackageDescriptor.set("File", pDeb.getName());
 
-        pOutput.closeArchiveEntry();
+        phase.setBytesIn(digests.getSize()).stop();
+    }
+
+    /**
+     * The descriptor key of the digest, e.g. "SHA256" for "SHA-256".
+     */
+    private static String getDigestKey( final String pAlgorithm ) {
+        return pAlgorithm.replace("-", "").toUpperCase();
     }
 
     /**
@@ -83,46 +201,63 @@ public class Processor {
      * @param pControlFiles
      * @param pData
      * @param pOutput
-     * @param compression the compression method used for the data file (gzip, bzip2 or anything else for no compression)
-     * @return PackageDescriptor
+     * @param compression the compression method used for the data file (gzip, bzip2, xz, zstd, a profile, auto or anything else for no compression)
+     * @return PackageDescriptor, the metrics of the build are available from {@link #getMetrics()}
      * @throws PackagingException
      */
     public PackageDescriptor createDeb( final File[] pControlFiles, final DataProducer[] pData, final File pOutput, String compression ) throws PackagingException, InvalidDescriptorException {
 
+        metrics = new BuildMetrics();
+
+        if (controlReserve > 0) {
+            return createDebInPlace(pControlFiles, pData, pOutput, compression);
+        }
+
         File tempData = null;
         File tempControl = null;
 
         try {
             tempData = File.createTempFile("deb", "data");
             tempControl = File.createTempFile("deb", "control");
-            
-            dataBuilder.build(pData, tempData, compression);
+
+            BuildMetrics.Phase phase = metrics.start("selection");
+            final Compression dataCompression = dataBuilder.getCompression(pData, compression);
+            phase.stop();
+
+            phase = metrics.start("data");
+            dataBuilder.build(pData, tempData, dataCompression);
+            stopData(phase, tempData.length());
             final BigInteger size = dataBuilder.getSize();
-            final String checkSums = dataBuilder.getMD5s();
+            final ChecksumSink checkSums = dataBuilder.getChecksums();
             
-            controlBuilder.build(pControlFiles, size, checkSums, tempControl);
+            phase = metrics.start("control");
+            try {
+                controlBuilder.build(pControlFiles, size, checkSums, tempControl);
+                phase.setFiles(pControlFiles.length).setBytesIn(checkSums.getLength()).setBytesOut(tempControl.length()).stop();
+            } finally {
+                checkSums.delete();
+            }
             PackageDescriptor packageDescriptor = controlBuilder.getPackageDescriptor();
              
             pOutput.getParentFile().mkdirs();
-            final InformationOutputStream md5output = new InformationOutputStream(new FileOutputStream(pOutput), MessageDigest.getInstance("MD5"));
-            //Add chain of filters in order to calculate sha1 and sha256 for 1.8 format
-            final InformationOutputStream sha1output = new InformationOutputStream(md5output, MessageDigest.getInstance("SHA1"));
-            final InformationOutputStream sha256output = new InformationOutputStream(sha1output, MessageDigest.getInstance("SHA-256"));
 
-            final ArArchiveOutputStream ar = new ArArchiveOutputStream(sha256output);
+            phase = metrics.start("assembly");
+            final RandomAccessFile file = new RandomAccessFile(pOutput, "rw");
+            try {
+                file.setLength(0);
 
-            addTo(ar, "debian-binary", "2.0\n");
-            addTo(ar, "control.tar.gz", tempControl);
-            addTo(ar, "data.tar" + getExtension(compression), tempData);
+                final ArArchiveChannel ar = new ArArchiveChannel(file.getChannel());
 
-            ar.close();
+                ar.putEntry("debian-binary", "2.0\n".getBytes());
+                ar.putEntry("control.tar.gz", tempControl);
+                ar.putEntry("data.tar" + dataCompression.getExtension(), tempData);
 
-            // intermediate values
-            packageDescriptor.set("MD5", md5output.getHexDigest());
-            packageDescriptor.set("SHA1", sha1output.getHexDigest());
-            packageDescriptor.set("SHA256", sha256output.getHexDigest());
-            packageDescriptor.set("Size", "" + md5output.getSize());
-            packageDescriptor.set("File", pOutput.getName());
+            } finally {
+                file.close();
+            }
+            phase.setBytesIn(tempControl.length() + tempData.length()).setBytesOut(pOutput.length()).stop();
+
+            addChecksums(packageDescriptor, pOutput);
 
             return packageDescriptor;
 
@@ -145,18 +280,79 @@ public class Processor {
     }
 
     /**
-     * Return the extension of a file compressed with the specified method.
-     *
-     * @param pCompression the compression method used
-     * @return
+     * Assemble the deb writing the data archive exactly once, straight into its
+     * final position. The control archive is built afterwards and back-patched
+     * into the space reserved in front of the data.
      */
-    private String getExtension( final String pCompression ) {
-        if ("gzip".equals(pCompression)) {
-            return ".gz";
-        } else if ("bzip2".equals(pCompression)) {
-            return ".bz2";
-        } else {
-            return "";
+    private PackageDescriptor createDebInPlace( final File[] pControlFiles, final DataProducer[] pData, final File pOutput, String compression ) throws PackagingException, InvalidDescriptorException {
+
+        try {
+            pOutput.getParentFile().mkdirs();
+
+            final RandomAccessFile file = new RandomAccessFile(pOutput, "rw");
+            try {
+                file.setLength(0);
+
+                final ArArchiveChannel ar = new ArArchiveChannel(file.getChannel());
+
+                ar.putEntry("debian-binary", "2.0\n".getBytes());
+
+                final long controlPosition = ar.position();
+                final long dataPosition = controlPosition + controlReserve;
+
+                BuildMetrics.Phase phase = metrics.start("selection");
+                final Compression dataCompression = dataBuilder.getCompression(pData, compression);
+                phase.stop();
+
+                phase = metrics.start("data");
+                ar.position(dataPosition);
+                dataBuilder.build(pData, new BufferedOutputStream(ar.putEntry("data.tar" + dataCompression.getExtension()), 64 * 1024), dataCompression);
+                final long dataLength = ar.position() - dataPosition;
+                stopData(phase, dataLength);
+
+                final BigInteger size = dataBuilder.getSize();
+                final ChecksumSink checkSums = dataBuilder.getChecksums();
+
+                phase = metrics.start("control");
+                final ByteArrayOutputStream control = new ByteArrayOutputStream();
+                try {
+                    controlBuilder.build(pControlFiles, size, checkSums, control);
+                    phase.setFiles(pControlFiles.length).setBytesIn(checkSums.getLength()).setBytesOut(control.size()).stop();
+                } finally {
+                    checkSums.delete();
+                }
+                final byte[] controlContent = control.toByteArray();
+
+                phase = metrics.start("assembly");
+
+                final long controlEnd = controlPosition + ArArchiveChannel.getEntryLength(controlContent.length);
+
+                final long dataEntryPosition = ArArchiveChannel.getPaddablePosition(controlEnd, dataPosition);
+
+                if (dataEntryPosition != dataPosition) {
+                    // the control archive does not fit into the reserved space or leaves too little for a padding member
+                    console.println("Control archive of " + controlContent.length + " bytes does not fit into the reserved " + controlReserve + " bytes, moving the data");
+                    ar.move(dataPosition, dataLength, dataEntryPosition);
+                }
+                ar.position(controlPosition);
+                ar.putEntry("control.tar.gz", controlContent);
+                ar.putPadding(dataEntryPosition);
+                phase.setBytesIn(controlContent.length).setBytesOut(file.length()).stop();
+
+            } finally {
+                file.close();
+            }
+
+            final PackageDescriptor packageDescriptor = controlBuilder.getPackageDescriptor();
+
+            addChecksums(packageDescriptor, pOutput);
+
+            return packageDescriptor;
+
+        } catch(InvalidDescriptorException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new PackagingException("Could not create deb package", e);
         }
     }
 
@@ -175,6 +371,8 @@ public class Processor {
      */
     public ChangesDescriptor createChanges( final PackageDescriptor pPackageDescriptor, final ChangesProvider pChangesProvider, final InputStream pRing, final String pKey, final String pPassphrase, final OutputStream pOutput ) throws IOException, InvalidDescriptorException {
 
+        BuildMetrics.Phase phase = metrics.start("changes");
+
         final ChangeSet[] changeSets = pChangesProvider.getChangesSets();
         final ChangesDescriptor changesDescriptor = new ChangesDescriptor(pPackageDescriptor, changeSets);
 
@@ -225,6 +423,7 @@ public class Processor {
         //console.println(changes);
 
         final byte[] changesBytes = changes.getBytes("UTF-8");
+        phase.setBytesOut(changesBytes.length).stop();
 
         if (pRing == null || pKey == null || pPassphrase == null) {
             pOutput.write(changesBytes);
@@ -232,6 +431,8 @@ public class Processor {
             return changesDescriptor;
         }
 
+        phase = metrics.start("signing");
+
         console.println("Signing changes with key " + pKey);
 
         final InputStream input = new ByteArrayInputStream(changesBytes);
@@ -243,6 +444,7 @@ public class Processor {
         }
 
         pOutput.close();
+        phase.setBytesIn(changesBytes.length).stop();
 
         return changesDescriptor;
     }
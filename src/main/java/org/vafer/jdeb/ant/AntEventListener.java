@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.ant;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.vafer.jdeb.events.Event;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.events.Level;
+
+/**
+ * Logs the events through the task. Without "verbose" only warnings are
+ * logged, with it the details of every file are logged at the verbose
+ * level of Ant.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class AntEventListener implements EventListener {
+
+    private final Task task;
+    private final boolean verbose;
+
+    AntEventListener( final Task pTask, final boolean pVerbose ) {
+        task = pTask;
+        verbose = pVerbose;
+    }
+
+    public boolean isEnabled( final Level pLevel ) {
+        return verbose || pLevel == Level.WARN;
+    }
+
+    public void onEvent( final Event pEvent ) {
+        switch (pEvent.getLevel()) {
+            case DEBUG:
+                task.log(pEvent.getMessage(), Project.MSG_VERBOSE);
+                break;
+            case INFO:
+                task.log(pEvent.getMessage(), Project.MSG_INFO);
+                break;
+            default:
+                task.log(pEvent.getMessage(), Project.MSG_WARN);
+        }
+    }
+}
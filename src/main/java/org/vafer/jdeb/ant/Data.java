@@ -28,6 +28,8 @@ import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.producers.DataProducerArchive;
 import org.vafer.jdeb.producers.DataProducerDirectory;
 import org.vafer.jdeb.producers.DataProducerFile;
+import org.vafer.jdeb.producers.FilePrefetcher;
+import org.vafer.jdeb.producers.ScanCache;
 
 /**
  * Ant "data" element acting as a factory for DataProducers.
@@ -46,6 +48,12 @@ public final class Data extends PatternSet implements DataProducer {
     
     private String destinationName;
 
+    private long prefetchBudget = FilePrefetcher.DEFAULT_BUDGET;
+
+    private boolean prefetchBudgetSet;
+
+    private ScanCache scanCache;
+
     public void setSrc( final File pSrc ) {
         src = pSrc;
     }
@@ -58,6 +66,41 @@ public final class Data extends PatternSet implements DataProducer {
       destinationName = pDestinationName;
     }
     
+    public void setPrefetchBudget( final long pPrefetchBudget ) {
+        prefetchBudget = pPrefetchBudget;
+        prefetchBudgetSet = true;
+    }
+
+    /**
+     * Use the budget of the task, unless the element has one of its own.
+     */
+    void setDefaultPrefetchBudget( final long pPrefetchBudget ) {
+        if (!prefetchBudgetSet) {
+            prefetchBudget = pPrefetchBudget;
+        }
+    }
+
+    long getPrefetchBudget() {
+        return prefetchBudget;
+    }
+
+    /**
+     * Share the walk of the src directory with the other data elements of the build.
+     */
+    void setScanCache( final ScanCache pScanCache ) {
+        scanCache = pScanCache;
+        if (isDirectory()) {
+            pScanCache.expect(src, true, getIncludePatterns(getProject()), getExcludePatterns(getProject()));
+        }
+    }
+
+    private boolean isDirectory() {
+        if (src == null || "file".equalsIgnoreCase(type) || "archive".equalsIgnoreCase(type)) {
+            return false;
+        }
+        return "directory".equalsIgnoreCase(type) || src.isDirectory();
+    }
+
     public void addMapper( final Mapper pMapper ) {
         mapperWrapper.add(pMapper);
     }
@@ -96,12 +139,7 @@ public final class Data extends PatternSet implements DataProducer {
         }
 
         if ("directory".equalsIgnoreCase(type)) {
-            new DataProducerDirectory(
-                    src,
-                    getIncludePatterns(getProject()),
-                    getExcludePatterns(getProject()),
-                    mappers
-                    ).produce(pReceiver);
+            produceDirectory(pReceiver, mappers);
             return;
         }
 
@@ -115,12 +153,19 @@ public final class Data extends PatternSet implements DataProducer {
                 mappers
                 ).produce(pReceiver);
         } else {
-            new DataProducerDirectory(
+            produceDirectory(pReceiver, mappers);
+        }
+    }
+
+    private void produceDirectory( final DataConsumer pReceiver, final org.vafer.jdeb.mapping.Mapper[] pMappers ) throws IOException {
+        final DataProducerDirectory producer = new DataProducerDirectory(
                 src,
                 getIncludePatterns(getProject()),
                 getExcludePatterns(getProject()),
-                mappers
-                ).produce(pReceiver);
-        }
+                pMappers
+                );
+        producer.setPrefetchBudget(prefetchBudget);
+        producer.setScanCache(scanCache);
+        producer.produce(pReceiver);
     }
 }
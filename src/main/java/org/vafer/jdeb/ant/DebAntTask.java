@@ -18,19 +18,26 @@ package org.vafer.jdeb.ant;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.MatchingTask;
 import org.apache.tools.ant.taskdefs.Tar;
 import org.apache.tools.ant.types.FileSet;
-import org.vafer.jdeb.Console;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.Processor;
 import org.vafer.jdeb.changes.TextfileChangesProvider;
+import org.vafer.jdeb.compression.Compression;
+import org.vafer.jdeb.compression.CompressionSelector;
 import org.vafer.jdeb.descriptors.PackageDescriptor;
+import org.vafer.jdeb.events.AsyncEventListener;
+import org.vafer.jdeb.metrics.BuildMetrics;
 import org.vafer.jdeb.producers.DataProducerFileSet;
+import org.vafer.jdeb.producers.FilePrefetcher;
+import org.vafer.jdeb.producers.ScanCache;
 
 /**
  * TODO generalize with DebMaker
@@ -67,9 +74,30 @@ public class DebAntTask extends MatchingTask {
     /** The file where to write the changes of the changes input to */
     private File changesSave;
 
-    /** The compression method used for the data file (none, gzip or bzip2) */
+    /** The compression method used for the data file (none, gzip, bzip2, xz, zstd), a profile (fast, balanced, max) or auto */
     private String compression = "gzip";
 
+    /** The space reserved for the control archive to write the data straight into the deb (0 to disable) */
+    private long controlReserve;
+
+    /** The compression level, -1 for the default of the compression method */
+    private int compressionLevel = -1;
+
+    /** Whether zstd should use long distance matching */
+    private boolean longDistanceMatching;
+
+    /** The throughput in MB/s the "auto" compression needs to reach */
+    private int compressionThroughput = CompressionSelector.DEFAULT_MIN_THROUGHPUT;
+
+    /** The bytes of the upcoming files that may be read ahead, for the data elements that do not set their own (0 to disable) */
+    private long prefetchBudget = FilePrefetcher.DEFAULT_BUDGET;
+
+    /** Whether to write the build metrics to a JSON file next to the deb and log them */
+    private boolean metricsReport;
+
+    /** The file where to write the compressed size of every file to */
+    private File sizeReport;
+
     /** Trigger the verbose mode detailing all operations */
     private boolean verbose;
 
@@ -112,6 +140,34 @@ public class DebAntTask extends MatchingTask {
         this.compression = compression;
     }
 
+    public void setControlReserve( long controlReserve ) {
+        this.controlReserve = controlReserve;
+    }
+
+    public void setCompressionLevel( int compressionLevel ) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void setLongDistanceMatching( boolean longDistanceMatching ) {
+        this.longDistanceMatching = longDistanceMatching;
+    }
+
+    public void setCompressionThroughput( int compressionThroughput ) {
+        this.compressionThroughput = compressionThroughput;
+    }
+
+    public void setPrefetchBudget( long prefetchBudget ) {
+        this.prefetchBudget = prefetchBudget;
+    }
+
+    public void setSizeReport( File sizeReport ) {
+        this.sizeReport = sizeReport;
+    }
+
+    public void setMetricsReport( boolean metricsReport ) {
+        this.metricsReport = metricsReport;
+    }
+
     public void setVerbose( boolean verbose ) {
         this.verbose = verbose;
     }
@@ -167,10 +223,34 @@ public class DebAntTask extends MatchingTask {
             }
         }
 
-        if (!"gzip".equals(compression) && !"bzip2".equals(compression) && !"none".equals(compression)) {
+        if (!Compression.isSupported(compression)) {
             throw new BuildException("The compression method '" + compression + "' is not supported");
         }
 
+        if (controlReserve < 0) {
+            throw new BuildException("The 'controlReserve' attribute must not be negative.");
+        }
+
+        if (!Compression.isValidLevel(compression, compressionLevel)) {
+            throw new BuildException("The 'compressionLevel' " + compressionLevel + " is not supported by the compression '" + compression + "' (gzip 0-9, xz 0-9, zstd 1-22, -1 for the default).");
+        }
+
+        if (!Compression.AUTO.equals(compression)) {
+            try {
+                Compression.forName(compression).checkAvailable();
+            } catch (IOException e) {
+                throw new BuildException(e.getMessage(), e);
+            }
+        }
+
+        if (compressionThroughput <= 0) {
+            throw new BuildException("The 'compressionThroughput' attribute must be positive.");
+        }
+
+        if (prefetchBudget < 0) {
+            throw new BuildException("The 'prefetchBudget' attribute must not be negative.");
+        }
+
         if (dataProducers.size() == 0) {
             throw new BuildException("You need to provide at least one reference to a tgz or directory with data.");
         }
@@ -184,14 +264,57 @@ public class DebAntTask extends MatchingTask {
         final DataProducer[] data = new DataProducer[dataProducers.size()];
         dataProducers.toArray(data);
 
-        final Processor processor = new Processor(new Console() {
-            public void println(String s) {
-                if (verbose) {
-                    log(s);
+        final ScanCache scanCache = new ScanCache();
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] instanceof DataProducerFileSet) {
+                ((DataProducerFileSet) data[i]).setPrefetchBudget(prefetchBudget);
+            } else if (data[i] instanceof Data) {
+                final Data element = (Data) data[i];
+                element.setDefaultPrefetchBudget(prefetchBudget);
+                if (element.getPrefetchBudget() < 0) {
+                    throw new BuildException("The 'prefetchBudget' attribute of a data element must not be negative.");
                 }
+                element.setScanCache(scanCache);
             }
-        }, null);
+        }
+
+        final AsyncEventListener events = new AsyncEventListener(new AntEventListener(this, verbose));
+        final Processor processor = new Processor(events, null);
+        processor.setControlReserve(controlReserve);
+        processor.setCompressionLevel(compressionLevel);
+        processor.setLongDistanceMatching(longDistanceMatching);
+        processor.setMinThroughput(compressionThroughput);
+        processor.setSizeReport(sizeReport);
+
+        try {
+            createPackage(processor, controlFiles, data);
+        } catch (RuntimeException e) {
+            events.close(e);
+            throw e;
+        } finally {
+            scanCache.release();
+            // only rethrows the failure of the listener if the packaging succeeded
+            events.close();
+        }
+
+        // the table is only part of the regular output if the metrics were asked for
+        final BuildMetrics metrics = processor.getMetrics();
+        for (String line : metrics.toTable()) {
+            log(line, metricsReport ? Project.MSG_INFO : Project.MSG_VERBOSE);
+        }
+
+        if (metricsReport) {
+            final File report = BuildMetrics.getReportFile(deb);
+            try {
+                log("Writing build metrics to file: " + report);
+                metrics.writeJson(report);
+            } catch (IOException e) {
+                throw new BuildException("Failed to write the build metrics " + report, e);
+            }
+        }
+    }
 
+    private void createPackage( final Processor processor, final File[] controlFiles, final DataProducer[] data ) {
         final PackageDescriptor packageDescriptor;
         try {
 
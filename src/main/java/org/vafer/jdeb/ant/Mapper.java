@@ -18,14 +18,16 @@ package org.vafer.jdeb.ant;
 import java.io.File;
 import java.io.FileInputStream;
 
+import org.apache.tools.ant.BuildException;
 import org.vafer.jdeb.mapping.LsMapper;
 import org.vafer.jdeb.mapping.NullMapper;
 import org.vafer.jdeb.mapping.PermMapper;
 import org.vafer.jdeb.mapping.PrefixMapper;
+import org.vafer.jdeb.mapping.RuleMapper;
 
 /**
  * Ant "mapper" element acting as factory for the entry mapper.
- * Supported types: ls, prefix, perm
+ * Supported types: ls, prefix, perm, rules
  *
  * @author Torsten Curdt <tcurdt@vafer.org>
  */
@@ -103,6 +105,19 @@ public final class Mapper {
             }
         }
 
+        if ("rules".equalsIgnoreCase(mapperType)) {
+            try {
+                final FileInputStream input = new FileInputStream(src);
+                try {
+                    return new RuleMapper(input);
+                } finally {
+                    input.close();
+                }
+            } catch (Exception e) {
+                throw new BuildException("Could not read the rules of the mapper from " + src, e);
+            }
+        }
+
         return new NullMapper();
     }
 
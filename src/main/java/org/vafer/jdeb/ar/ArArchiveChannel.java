@@ -0,0 +1,258 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.ar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes an ar archive through a seekable FileChannel. Unlike the stream
+ * based ArArchiveOutputStream this allows to write a member straight into
+ * its final position, to reserve space for members that are only known
+ * later and to back-patch the member headers once the sizes are known.
+ *
+ * The headers are written in the same format as commons-compress does.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ArArchiveChannel {
+
+    public static final int HEADER_LENGTH = 60;
+
+    private static final byte[] MAGIC = { '!', '<', 'a', 'r', 'c', 'h', '>', '\n' };
+
+    private static final String PADDING_NAME = "_padding";
+
+    private final FileChannel channel;
+    private long position;
+
+    public ArArchiveChannel( final FileChannel pChannel ) throws IOException {
+        channel = pChannel;
+        position = 0;
+        write(ByteBuffer.wrap(MAGIC));
+    }
+
+    /**
+     * @return the number of bytes a member with the given content length occupies in the archive
+     */
+    public static long getEntryLength( final long pContentLength ) {
+        return HEADER_LENGTH + pContentLength + (pContentLength % 2);
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void position( final long pPosition ) {
+        position = pPosition;
+    }
+
+    public void putEntry( final String pName, final byte[] pContent ) throws IOException {
+        writeHeader(pName, pContent.length);
+        write(ByteBuffer.wrap(pContent));
+        writePadding(pContent.length);
+    }
+
+    /**
+     * Adds a file as member. The content is transferred between the channels
+     * without being copied through the heap.
+     */
+    public void putEntry( final String pName, final File pContent ) throws IOException {
+        final FileInputStream input = new FileInputStream(pContent);
+        try {
+            final FileChannel source = input.getChannel();
+            final long length = source.size();
+
+            writeHeader(pName, length);
+
+            long transferred = 0;
+            while (transferred < length) {
+                final long n = channel.transferFrom(source, position, length - transferred);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of " + pContent);
+                }
+                transferred += n;
+                position += n;
+            }
+
+            writePadding(length);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reserves the header of a member at the current position and returns a stream
+     * to write its content to. The header is written when the stream gets closed
+     * and the position is moved past the end of the member.
+     */
+    public OutputStream putEntry( final String pName ) {
+        final long headerPosition = position;
+        position += HEADER_LENGTH;
+        return new EntryOutputStream(pName, headerPosition);
+    }
+
+    /**
+     * @return whether the space between the end of a member and the next one can be filled with a padding member
+     */
+    public static boolean isPaddable( final long pGap ) {
+        return pGap == 0 || (pGap >= HEADER_LENGTH && pGap % 2 == 0);
+    }
+
+    /**
+     * @return the first position from the given one on that the space after a member ending at pEnd can be padded up to
+     */
+    public static long getPaddablePosition( final long pEnd, final long pPosition ) {
+        final long gap = Math.max(pPosition - pEnd, 0);
+        if (isPaddable(gap)) {
+            return pEnd + gap;
+        }
+        final long padding = Math.max(gap, HEADER_LENGTH);
+        return pEnd + padding + (padding % 2);
+    }
+
+    /**
+     * Fills the space from the current position up to the given end with a
+     * member that is ignored by dpkg (its name starts with an underscore).
+     */
+    public void putPadding( final long pEnd ) throws IOException {
+        final long gap = pEnd - position;
+
+        if (!isPaddable(gap)) {
+            throw new IOException("Cannot pad a gap of " + gap + " bytes");
+        }
+
+        if (gap == 0) {
+            return;
+        }
+
+        // the content is left as it is, unwritten parts of the file read as zeros
+        writeHeader(PADDING_NAME, gap - HEADER_LENGTH);
+        position = pEnd;
+    }
+
+    /**
+     * Moves a region of the archive to a higher offset. The region is copied
+     * backwards so source and target may overlap.
+     */
+    public void move( final long pFrom, final long pLength, final long pTo ) throws IOException {
+        if (pTo < pFrom) {
+            throw new IOException("Can only move regions towards the end of the archive");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+
+        long remaining = pLength;
+        while (remaining > 0) {
+            final int len = (int) Math.min(buffer.capacity(), remaining);
+            remaining -= len;
+
+            buffer.clear();
+            buffer.limit(len);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, pFrom + remaining + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of archive");
+                }
+            }
+
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, pTo + remaining + buffer.position());
+            }
+        }
+    }
+
+    private void writeHeader( final String pName, final long pLength ) throws IOException {
+        if (pName.length() > 16) {
+            throw new IOException("Filename too long: " + pName);
+        }
+
+        final StringBuilder header = new StringBuilder(HEADER_LENGTH);
+        append(header, pName, 16);
+        append(header, "" + (System.currentTimeMillis() / 1000), 12);
+        append(header, "0", 6);
+        append(header, "0", 6);
+        append(header, Integer.toString(0100644, 8), 8);
+        append(header, "" + pLength, 10);
+        header.append("`\n");
+
+        write(ByteBuffer.wrap(header.toString().getBytes("US-ASCII")));
+    }
+
+    private void append( final StringBuilder pHeader, final String pValue, final int pWidth ) throws IOException {
+        if (pValue.length() > pWidth) {
+            throw new IOException("Header value too long: " + pValue);
+        }
+        pHeader.append(pValue);
+        for (int i = pValue.length(); i < pWidth; i++) {
+            pHeader.append(' ');
+        }
+    }
+
+    private void writePadding( final long pLength ) throws IOException {
+        if (pLength % 2 != 0) {
+            write(ByteBuffer.wrap(new byte[] { '\n' }));
+        }
+    }
+
+    private void write( final ByteBuffer pBuffer ) throws IOException {
+        while (pBuffer.hasRemaining()) {
+            position += channel.write(pBuffer, position);
+        }
+    }
+
+    private final class EntryOutputStream extends OutputStream {
+
+        private final String name;
+        private final long headerPosition;
+        private boolean closed;
+
+        private EntryOutputStream( final String pName, final long pHeaderPosition ) {
+            name = pName;
+            headerPosition = pHeaderPosition;
+        }
+
+        public void write( final int b ) throws IOException {
+            ArArchiveChannel.this.write(ByteBuffer.wrap(new byte[] { (byte) b }));
+        }
+
+        public void write( final byte[] b, final int off, final int len ) throws IOException {
+            ArArchiveChannel.this.write(ByteBuffer.wrap(b, off, len));
+        }
+
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            final long end = position;
+            final long length = end - headerPosition - HEADER_LENGTH;
+
+            position = headerPosition;
+            writeHeader(name, length);
+            position = end;
+
+            writePadding(length);
+        }
+    }
+}
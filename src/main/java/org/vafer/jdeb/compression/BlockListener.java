@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+/**
+ * Implemented by the output of a {@link ParallelCompressorOutputStream} that
+ * wants to know where the compressed blocks end. Every block is compressed
+ * on its own, so the bytes written up to then are exactly the compressed
+ * content of the uncompressed bytes up to the end of the block.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public interface BlockListener {
+
+    /**
+     * Called after a compressed block has been written.
+     *
+     * @param pLength the number of uncompressed bytes of the block
+     */
+    void onBlockWritten( int pLength );
+}
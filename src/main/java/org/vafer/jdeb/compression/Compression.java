@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.tukaani.xz.LZMA2Options;
+
+/**
+ * A compression method for the data archive together with its settings.
+ * Besides the plain methods ("gzip", "bzip2", "xz", "zstd" and "none")
+ * there are the profiles "fast", "balanced" and "max" that pick a tuned
+ * method, level and buffer size. "auto" is resolved by the DataBuilder
+ * through trial compression.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class Compression {
+
+    public static final String AUTO = "auto";
+
+    public static final Compression NONE = new Compression("none", "none", -1, 64 * 1024, false);
+    public static final Compression GZIP = new Compression("gzip", "gzip", -1, 64 * 1024, false);
+    public static final Compression BZIP2 = new Compression("bzip2", "bzip2", -1, 64 * 1024, false);
+    public static final Compression XZ = new Compression("xz", "xz", -1, 64 * 1024, false);
+    public static final Compression ZSTD = new Compression("zstd", "zstd", -1, 64 * 1024, false);
+
+    /** for snapshot builds, fast compression with a reasonable ratio */
+    public static final Compression FAST = new Compression("fast", "zstd", 1, 128 * 1024, false);
+
+    /** the same as dpkg-deb does by default */
+    public static final Compression BALANCED = new Compression("balanced", "xz", 6, 256 * 1024, false);
+
+    /** for releases, the best ratio regardless of the time it takes */
+    public static final Compression MAX = new Compression("max", "xz", 9, 1024 * 1024, false);
+
+    private static final Map<String, Compression> COMPRESSIONS = new LinkedHashMap<String, Compression>();
+
+    static {
+        final Compression[] compressions = { NONE, GZIP, BZIP2, XZ, ZSTD, FAST, BALANCED, MAX };
+        for (int i = 0; i < compressions.length; i++) {
+            COMPRESSIONS.put(compressions[i].getName(), compressions[i]);
+        }
+    }
+
+    private final String name;
+    private final String method;
+    private final int level;
+    private final int bufferSize;
+    private final boolean longDistanceMatching;
+
+    private Compression( final String pName, final String pMethod, final int pLevel, final int pBufferSize, final boolean pLongDistanceMatching ) {
+        name = pName;
+        method = pMethod;
+        level = pLevel;
+        bufferSize = pBufferSize;
+        longDistanceMatching = pLongDistanceMatching;
+    }
+
+    /**
+     * @param pName the name of a method or profile
+     * @return the compression or null if there is no such method or profile
+     */
+    public static Compression forName( final String pName ) {
+        return COMPRESSIONS.get(pName);
+    }
+
+    /**
+     * @return whether the name is a known method, profile or "auto"
+     */
+    public static boolean isSupported( final String pName ) {
+        return AUTO.equals(pName) || COMPRESSIONS.containsKey(pName);
+    }
+
+    /**
+     * @return the methods "auto" chooses from, at their default levels
+     */
+    public static Compression[] getCandidates() {
+        return new Compression[] { GZIP, BZIP2, XZ, ZSTD };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the level, -1 for the default of the method
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isLongDistanceMatching() {
+        return longDistanceMatching;
+    }
+
+    /**
+     * @return whether the method supports the level, -1 for the default is supported by every method
+     */
+    public boolean isValidLevel( final int pLevel ) {
+        if (pLevel == -1) {
+            return true;
+        }
+        if ("gzip".equals(method)) {
+            return pLevel >= Deflater.NO_COMPRESSION && pLevel <= Deflater.BEST_COMPRESSION;
+        } else if ("xz".equals(method)) {
+            return pLevel >= LZMA2Options.PRESET_MIN && pLevel <= LZMA2Options.PRESET_MAX;
+        } else if ("zstd".equals(method)) {
+            return pLevel >= ZstdCompressor.MIN_LEVEL && pLevel <= ZstdCompressor.MAX_LEVEL;
+        } else {
+            // bzip2 always uses the largest blocks
+            return false;
+        }
+    }
+
+    /**
+     * @param pName the name of a method, profile or "auto"
+     * @return whether the method of the compression supports the level, for "auto" any of the candidates
+     */
+    public static boolean isValidLevel( final String pName, final int pLevel ) {
+        if (AUTO.equals(pName)) {
+            final Compression[] candidates = getCandidates();
+            for (int i = 0; i < candidates.length; i++) {
+                if (candidates[i].isValidLevel(pLevel)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final Compression compression = forName(pName);
+        return compression != null && compression.isValidLevel(pLevel);
+    }
+
+    /**
+     * @param pLevel the level for gzip (0-9), xz (0-9) and zstd (1-22), -1 for the default of the method
+     */
+    public Compression withLevel( final int pLevel ) {
+        if (!isValidLevel(pLevel)) {
+            throw new IllegalArgumentException("Invalid " + method + " level " + pLevel);
+        }
+        return new Compression(name, method, pLevel, bufferSize, longDistanceMatching);
+    }
+
+    /**
+     * Make sure the method can be used before the build starts. zstd needs
+     * zstd-jni and its native library for the platform.
+     *
+     * @throws IOException if the method is not available
+     */
+    public void checkAvailable() throws IOException {
+        if (!"zstd".equals(method)) {
+            return;
+        }
+        try {
+            ZstdCompressor.probe();
+        } catch (LinkageError e) {
+            throw new IOException("zstd compression is not available, zstd-jni or its native library for this platform is missing (" + e + ")", e);
+        }
+    }
+
+    public Compression withLongDistanceMatching( final boolean pLongDistanceMatching ) {
+        return new Compression(name, method, level, bufferSize, pLongDistanceMatching);
+    }
+
+    /**
+     * @return the extension of the data archive
+     */
+    public String getExtension() {
+        if ("gzip".equals(method)) {
+            return ".gz";
+        } else if ("bzip2".equals(method)) {
+            return ".bz2";
+        } else if ("xz".equals(method)) {
+            return ".xz";
+        } else if ("zstd".equals(method)) {
+            return ".zst";
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * Wrap the stream with a compressing one. Closing the returned stream closes the wrapped one.
+     *
+     * @param pOut the stream to write the compressed data to
+     * @param pThreads the number of threads to compress with
+     */
+    public OutputStream createOutputStream( final OutputStream pOut, final int pThreads ) throws IOException {
+        final OutputStream out;
+        if ("gzip".equals(method)) {
+            out = new ParallelGzipOutputStream(pOut, getLevel(Deflater.DEFAULT_COMPRESSION), ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, pThreads);
+        } else if ("bzip2".equals(method)) {
+            out = new ParallelBZip2OutputStream(pOut, pThreads);
+        } else if ("xz".equals(method)) {
+            out = new ParallelXZOutputStream(pOut, getLevel(ParallelXZOutputStream.DEFAULT_PRESET), pThreads);
+        } else if ("zstd".equals(method)) {
+            out = ZstdCompressor.createOutputStream(pOut, getLevel(ZstdCompressor.DEFAULT_LEVEL), longDistanceMatching, pThreads);
+        } else {
+            out = pOut;
+        }
+        return new BufferedOutputStream(out, bufferSize);
+    }
+
+    private int getLevel( final int pDefault ) {
+        return level == -1 ? pDefault : level;
+    }
+
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(method);
+        if (level != -1) {
+            sb.append(" level ").append(level);
+        }
+        if (longDistanceMatching) {
+            sb.append(" (long)");
+        }
+        if (!name.equals(method)) {
+            sb.append(" (").append(name).append(')');
+        }
+        return sb.toString();
+    }
+}
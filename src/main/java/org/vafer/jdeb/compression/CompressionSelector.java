@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.vafer.jdeb.Console;
+
+/**
+ * Picks a compression method by compressing a sample of the data with
+ * every candidate. The objective is the smallest output of the methods
+ * that reach the minimum throughput. If none does, the fastest wins.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class CompressionSelector {
+
+    /** in MB/s */
+    public static final int DEFAULT_MIN_THROUGHPUT = 20;
+
+    private final Console console;
+    private final int threads;
+    private final int minThroughput;
+
+    public CompressionSelector( final Console pConsole, final int pThreads, final int pMinThroughput ) {
+        console = pConsole;
+        threads = pThreads;
+        minThroughput = pMinThroughput;
+    }
+
+    public Compression select( final byte[] pSample, final Compression[] pCandidates ) {
+        console.println("Trial compression of " + pSample.length + " bytes");
+
+        Compression smallest = null;
+        long smallestSize = Long.MAX_VALUE;
+
+        Compression fastest = null;
+        double fastestThroughput = 0;
+
+        for (int i = 0; i < pCandidates.length; i++) {
+            final Compression candidate = pCandidates[i];
+
+            final CountingOutputStream counter = new CountingOutputStream();
+            final long start = System.nanoTime();
+            try {
+                final OutputStream out = candidate.createOutputStream(counter, threads);
+                out.write(pSample);
+                out.close();
+            } catch (IOException e) {
+                console.println("  " + candidate + ": failed (" + e.getMessage() + ")");
+                continue;
+            } catch (LinkageError e) {
+                console.println("  " + candidate + ": not available (" + e.getMessage() + ")");
+                continue;
+            }
+            final long nanos = Math.max(1, System.nanoTime() - start);
+
+            final double throughput = (pSample.length / (1024.0 * 1024.0)) / (nanos / 1e9);
+            final double ratio = pSample.length == 0 ? 100 : 100.0 * counter.count / pSample.length;
+
+            console.println("  " + candidate + ": " + counter.count + " bytes ("
+                + String.format("%.1f", ratio) + "%) in " + (nanos / 1000000) + " ms ("
+                + String.format("%.1f", throughput) + " MB/s)");
+
+            if (throughput > fastestThroughput) {
+                fastest = candidate;
+                fastestThroughput = throughput;
+            }
+
+            if (throughput >= minThroughput && counter.count < smallestSize) {
+                smallest = candidate;
+                smallestSize = counter.count;
+            }
+        }
+
+        if (smallest != null) {
+            console.println("Selected " + smallest + ", the smallest output at " + minThroughput + " MB/s or more");
+            return smallest;
+        }
+
+        if (fastest != null) {
+            console.println("Selected " + fastest + ", no method reached " + minThroughput + " MB/s");
+            return fastest;
+        }
+
+        console.println("Selected no compression, no method was available");
+        return Compression.NONE;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        public void write( final int b ) {
+            count++;
+        }
+
+        public void write( final byte[] b, final int off, final int len ) {
+            count += len;
+        }
+    }
+}
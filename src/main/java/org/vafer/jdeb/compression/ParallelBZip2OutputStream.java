@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Writes a single bzip2 stream (including the "BZh9" signature) and compresses
+ * its blocks concurrently. Every chunk of input is compressed into a stream of
+ * its own that contains exactly one block. The blocks are then cut out on the
+ * bit level and concatenated, and the combined CRC is recalculated from the
+ * block CRCs. The result is the same as if the blocks had been compressed by
+ * a single encoder.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ParallelBZip2OutputStream extends ParallelCompressorOutputStream<ParallelBZip2OutputStream.Block> {
+
+    /**
+     * The run length encoding in front of the block sort can grow the input
+     * by a quarter. Staying below 900 KB / 1.25 guarantees that every chunk
+     * ends up in exactly one block of level 9.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 700 * 1000;
+
+    private static final int LEVEL = 9;
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+    /** "BZh" followed by the level */
+    private static final int SIGNATURE_BITS = 32;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private long bits;
+    private int bitCount;
+    private int combinedCRC;
+
+    public ParallelBZip2OutputStream( final OutputStream pOut, final int pBlockSize, final int pThreads ) throws IOException {
+        super(pOut, Math.min(pBlockSize, DEFAULT_BLOCK_SIZE), pThreads);
+        pOut.write(new byte[] { 'B', 'Z', 'h', (byte) ('0' + LEVEL) });
+    }
+
+    public ParallelBZip2OutputStream( final OutputStream pOut, final int pThreads ) throws IOException {
+        this(pOut, DEFAULT_BLOCK_SIZE, pThreads);
+    }
+
+    static final class Block {
+
+        private final byte[] data;
+        private final long start;
+        private final long end;
+        private final int crc;
+
+        private Block( final byte[] pData, final long pStart, final long pEnd, final int pCRC ) {
+            data = pData;
+            start = pStart;
+            end = pEnd;
+            crc = pCRC;
+        }
+    }
+
+    protected Block compress( final byte[] pData, final int pLength, final byte[] pPrevious, final boolean pLast ) throws IOException {
+        if (pLength == 0) {
+            return null;
+        }
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(pLength / 4 + 64);
+        final OutputStream compressor = new BZip2CompressorOutputStream(output, LEVEL);
+        compressor.write(pData, 0, pLength);
+        compressor.close();
+
+        final byte[] data = output.toByteArray();
+        final long total = data.length * 8L;
+
+        if (readBits(data, SIGNATURE_BITS, 48) != BLOCK_MAGIC) {
+            throw new IOException("Unexpected bzip2 block header");
+        }
+
+        final int crc = (int) readBits(data, SIGNATURE_BITS + 48, 32);
+
+        // the stream is padded to a full byte, find the end of stream marker followed by the CRC
+        for (int padding = 0; padding < 8; padding++) {
+            final long end = total - padding - 80;
+            if (end > SIGNATURE_BITS
+                && readBits(data, end, 48) == END_OF_STREAM_MAGIC
+                && (int) readBits(data, end + 48, 32) == crc) {
+                return new Block(data, SIGNATURE_BITS, end, crc);
+            }
+        }
+
+        throw new IOException("Could not find the end of the bzip2 block");
+    }
+
+    protected void write( final Block pBlock, final OutputStream pOut ) throws IOException {
+        if (pBlock == null) {
+            return;
+        }
+
+        final byte[] data = pBlock.data;
+
+        long position = pBlock.start;
+        while (pBlock.end - position >= 8) {
+            final int index = (int) (position >>> 3);
+            final int shift = (int) (position & 7);
+            final int value = shift == 0 ? data[index] : (data[index] << shift) | ((data[index + 1] & 0xff) >>> (8 - shift));
+            writeBits(8, value & 0xff);
+            position += 8;
+        }
+        final int rest = (int) (pBlock.end - position);
+        writeBits(rest, readBits(data, position, rest));
+
+        combinedCRC = ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ pBlock.crc;
+
+        buffer.writeTo(pOut);
+        buffer.reset();
+    }
+
+    protected void finish( final OutputStream pOut ) throws IOException {
+        writeBits(48, END_OF_STREAM_MAGIC);
+        writeBits(32, combinedCRC & 0xffffffffL);
+        if (bitCount > 0) {
+            writeBits(8 - bitCount, 0);
+        }
+
+        buffer.writeTo(pOut);
+        buffer.reset();
+    }
+
+    private void writeBits( final int pCount, final long pValue ) {
+        bits = (bits << pCount) | pValue;
+        bitCount += pCount;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            buffer.write((int) (bits >>> bitCount));
+        }
+    }
+
+    private static long readBits( final byte[] pData, final long pPosition, final int pCount ) {
+        long value = 0;
+        for (long i = pPosition; i < pPosition + pCount; i++) {
+            final int bit = (pData[(int) (i >>> 3)] >>> (7 - (int) (i & 7))) & 1;
+            value = (value << 1) | bit;
+        }
+        return value;
+    }
+}
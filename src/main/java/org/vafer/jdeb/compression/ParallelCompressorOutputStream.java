@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Base class for compressors that split the input into blocks of a fixed size
+ * and compress the blocks concurrently on a pool of worker threads. The compressed
+ * blocks are written out in the original order.
+ *
+ * The block boundaries only depend on the number of bytes written, never on the
+ * number of threads or the size of the write calls, so the output is reproducible.
+ * If the output is a {@link BlockListener} it gets told where the blocks end.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public abstract class ParallelCompressorOutputStream<T> extends OutputStream {
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final LinkedList<Future<T>> pending = new LinkedList<Future<T>>();
+    private final LinkedList<Integer> pendingLengths = new LinkedList<Integer>();
+
+    private byte[] block;
+    private int blockLength;
+    private byte[] previous;
+    private boolean closed;
+
+    protected ParallelCompressorOutputStream( final OutputStream pOut, final int pBlockSize, final int pThreads ) {
+        if (pBlockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size " + pBlockSize);
+        }
+        if (pThreads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads " + pThreads);
+        }
+
+        out = pOut;
+        blockSize = pBlockSize;
+        maxPending = pThreads * 2;
+        executor = Executors.newFixedThreadPool(pThreads, new ThreadFactory() {
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread(r, "jdeb-compressor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        block = new byte[blockSize];
+    }
+
+    /**
+     * Compress a block. Called concurrently from the worker threads.
+     *
+     * @param pData the block to compress
+     * @param pLength the number of valid bytes in the block
+     * @param pPrevious the previous block (always full) or null for the first block
+     * @param pLast whether this is the last block of the stream
+     */
+    protected abstract T compress( final byte[] pData, final int pLength, final byte[] pPrevious, final boolean pLast ) throws IOException;
+
+    /**
+     * Write a compressed block. Called in the order of the blocks.
+     */
+    protected abstract void write( final T pBlock, final OutputStream pOut ) throws IOException;
+
+    /**
+     * Called in the order of the blocks with the uncompressed content before the block is handed to the workers.
+     */
+    protected void update( final byte[] pData, final int pLength ) {
+    }
+
+    /**
+     * Write whatever needs to follow the last block.
+     */
+    protected void finish( final OutputStream pOut ) throws IOException {
+    }
+
+    public void write( final int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( final byte[] b, int off, int len ) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (len > 0) {
+            final int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+
+            if (blockLength == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    private void submit( final boolean pLast ) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] dictionary = previous;
+
+        update(data, length);
+
+        if (pending.size() >= maxPending) {
+            drain();
+        }
+
+        pending.add(executor.submit(new Callable<T>() {
+            public T call() throws Exception {
+                return compress(data, length, dictionary, pLast);
+            }
+        }));
+        pendingLengths.add(length);
+
+        previous = data;
+        block = pLast ? null : new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void drain() throws IOException {
+        final Future<T> future = pending.removeFirst();
+        final int length = pendingLengths.removeFirst();
+        final T compressed;
+        try {
+            compressed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to compress block", cause);
+        }
+        write(compressed, out);
+
+        if (out instanceof BlockListener) {
+            ((BlockListener) out).onBlockWritten(length);
+        }
+    }
+
+    public void flush() throws IOException {
+        // blocks are only complete once they are full, flushing would break reproducibility
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            submit(true);
+
+            while (!pending.isEmpty()) {
+                drain();
+            }
+
+            finish(out);
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+}
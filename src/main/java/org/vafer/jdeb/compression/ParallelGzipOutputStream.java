@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a standard single member gzip stream and compresses the deflate
+ * blocks concurrently (like pigz does). Every block is primed with the last
+ * 32 KB of the previous block as dictionary and ends on a byte boundary
+ * through a sync flush, so the blocks can simply be concatenated.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ParallelGzipOutputStream extends ParallelCompressorOutputStream<byte[]> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final int level;
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    public ParallelGzipOutputStream( final OutputStream pOut, final int pLevel, final int pBlockSize, final int pThreads ) throws IOException {
+        super(pOut, Math.max(pBlockSize, DICTIONARY_SIZE), pThreads);
+        level = pLevel;
+        pOut.write(HEADER);
+    }
+
+    public ParallelGzipOutputStream( final OutputStream pOut, final int pThreads ) throws IOException {
+        this(pOut, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE, pThreads);
+    }
+
+    protected void update( final byte[] pData, final int pLength ) {
+        crc.update(pData, 0, pLength);
+        size += pLength;
+    }
+
+    protected byte[] compress( final byte[] pData, final int pLength, final byte[] pPrevious, final boolean pLast ) {
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            if (pPrevious != null) {
+                deflater.setDictionary(pPrevious, pPrevious.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+
+            deflater.setInput(pData, 0, pLength);
+
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(pLength / 2 + 64);
+            final byte[] buffer = new byte[16 * 1024];
+
+            if (pLast) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(buffer);
+                    output.write(buffer, 0, n);
+                }
+            } else {
+                // a sync flush is complete once the output buffer is not filled up anymore
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected void write( final byte[] pBlock, final OutputStream pOut ) throws IOException {
+        pOut.write(pBlock);
+    }
+
+    protected void finish( final OutputStream pOut ) throws IOException {
+        writeInt(pOut, crc.getValue());
+        writeInt(pOut, size);
+    }
+
+    private static void writeInt( final OutputStream pOut, final long pValue ) throws IOException {
+        pOut.write((int) (pValue & 0xff));
+        pOut.write((int) ((pValue >> 8) & 0xff));
+        pOut.write((int) ((pValue >> 16) & 0xff));
+        pOut.write((int) ((pValue >> 24) & 0xff));
+    }
+}
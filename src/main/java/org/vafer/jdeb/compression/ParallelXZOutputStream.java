@@ -0,0 +1,265 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import org.tukaani.xz.FinishableOutputStream;
+import org.tukaani.xz.FinishableWrapperOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+
+/**
+ * Writes a single xz stream that consists of independent LZMA2 blocks
+ * (like "xz -T" does). The blocks are encoded concurrently, the stream
+ * header, block headers, index and footer are written here.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ParallelXZOutputStream extends ParallelCompressorOutputStream<ParallelXZOutputStream.Block> {
+
+    public static final int DEFAULT_PRESET = LZMA2Options.PRESET_DEFAULT;
+
+    private static final byte[] HEADER_MAGIC = { (byte) 0xfd, '7', 'z', 'X', 'Z', 0 };
+    private static final byte[] FOOTER_MAGIC = { 'Y', 'Z' };
+
+    /** no flags and CRC32 as check */
+    private static final byte[] STREAM_FLAGS = { 0, 1 };
+
+    private static final int CHECK_SIZE = 4;
+
+    private static final int FILTER_LZMA2 = 0x21;
+
+    private static final int MIN_BLOCK_SIZE = 1024 * 1024;
+
+    private final LZMA2Options options;
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private long records;
+
+    /**
+     * @param pBlockSize the size of the blocks, it gets smaller if not even a single thread fits into half of the heap
+     */
+    public ParallelXZOutputStream( final OutputStream pOut, final int pPreset, final int pBlockSize, final int pThreads ) throws IOException {
+        this(pOut, pPreset, getBlockSize(pPreset, pBlockSize, getMemoryBudget()), pThreads, getMemoryBudget());
+    }
+
+    private ParallelXZOutputStream( final OutputStream pOut, final int pPreset, final int pBlockSize, final int pThreads, final long pBudget ) throws IOException {
+        super(pOut, pBlockSize, getThreads(pPreset, pBlockSize, pThreads, pBudget));
+
+        try {
+            options = new LZMA2Options(pPreset);
+        } catch (UnsupportedOptionsException e) {
+            throw new IllegalArgumentException("Invalid xz preset " + pPreset);
+        }
+
+        pOut.write(HEADER_MAGIC);
+        pOut.write(STREAM_FLAGS);
+        writeInt(pOut, crc(STREAM_FLAGS, 0, STREAM_FLAGS.length));
+    }
+
+    public ParallelXZOutputStream( final OutputStream pOut, final int pPreset, final int pThreads ) throws IOException {
+        this(pOut, pPreset, getBlockSize(pPreset), pThreads);
+    }
+
+    /**
+     * @return the block size "xz -T" would use, three times the dictionary size
+     */
+    public static int getBlockSize( final int pPreset ) throws IOException {
+        return 3 * new LZMA2Options(pPreset).getDictSize();
+    }
+
+    /**
+     * The encoders and blocks of the higher presets need hundreds of
+     * megabytes. They have to stay within half of the heap.
+     */
+    private static long getMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * Every thread needs an encoder, two pending blocks and the compressed
+     * output, one more block is being filled and the previous one is kept.
+     */
+    private static long getMemoryUsage( final long pEncoder, final int pBlockSize, final int pThreads ) {
+        return pThreads * (pEncoder + 3L * pBlockSize) + 2L * pBlockSize;
+    }
+
+    private static long getEncoderMemoryUsage( final int pPreset ) throws IOException {
+        return new LZMA2Options(pPreset).getEncoderMemoryUsage() * 1024L;
+    }
+
+    /**
+     * Shrink the blocks if not even a single thread fits into the budget.
+     * This changes the output, so it only happens when the heap is too
+     * small for the blocks.
+     *
+     * @throws IOException if the encoder does not fit even with the smallest blocks
+     */
+    static int getBlockSize( final int pPreset, final int pBlockSize, final long pBudget ) throws IOException {
+        final long encoder = getEncoderMemoryUsage(pPreset);
+        if (getMemoryUsage(encoder, pBlockSize, 1) <= pBudget) {
+            return pBlockSize;
+        }
+
+        final long blockSize = (pBudget - encoder) / 5;
+        if (blockSize < MIN_BLOCK_SIZE) {
+            throw new IOException("The xz preset " + pPreset + " needs at least "
+                + (getMemoryUsage(encoder, MIN_BLOCK_SIZE, 1) >> 20) + " MB but only " + (pBudget >> 20)
+                + " MB (half of the maximum heap) are available, increase the heap or lower the compression level");
+        }
+        return (int) blockSize;
+    }
+
+    /**
+     * Limit the number of threads so the encoders and the blocks stay
+     * within the budget. This does not change the output.
+     */
+    static int getThreads( final int pPreset, final int pBlockSize, final int pThreads, final long pBudget ) throws IOException {
+        if (pThreads <= 1) {
+            return pThreads;
+        }
+        final long encoder = getEncoderMemoryUsage(pPreset);
+        final long threads = (pBudget - 2L * pBlockSize) / (encoder + 3L * pBlockSize);
+        return (int) Math.max(1, Math.min(pThreads, threads));
+    }
+
+    static final class Block {
+
+        private final byte[] data;
+        private final long unpaddedSize;
+        private final long uncompressedSize;
+
+        private Block( final byte[] pData, final long pUnpaddedSize, final long pUncompressedSize ) {
+            data = pData;
+            unpaddedSize = pUnpaddedSize;
+            uncompressedSize = pUncompressedSize;
+        }
+    }
+
+    protected Block compress( final byte[] pData, final int pLength, final byte[] pPrevious, final boolean pLast ) throws IOException {
+        if (pLength == 0) {
+            return null;
+        }
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(pLength / 4 + 64);
+
+        final byte[] header = createBlockHeader();
+        output.write(header);
+
+        final FinishableOutputStream lzma2 = options.getOutputStream(new FinishableWrapperOutputStream(output));
+        lzma2.write(pData, 0, pLength);
+        lzma2.finish();
+
+        // the index records the size without the padding in front of the check
+        final long unpadded = output.size() + CHECK_SIZE;
+
+        while (output.size() % 4 != 0) {
+            output.write(0);
+        }
+
+        writeInt(output, crc(pData, 0, pLength));
+
+        return new Block(output.toByteArray(), unpadded, pLength);
+    }
+
+    private byte[] createBlockHeader() throws IOException {
+        // header size, block flags (one filter, no sizes), LZMA2 with its dictionary size, padding and CRC
+        final byte[] header = new byte[12];
+        header[0] = (byte) (header.length / 4 - 1);
+        header[1] = 0;
+        header[2] = FILTER_LZMA2;
+        header[3] = 1;
+        header[4] = (byte) getDictionaryProperty(options.getDictSize());
+
+        final long crc = crc(header, 0, header.length - 4);
+        for (int i = 0; i < 4; i++) {
+            header[header.length - 4 + i] = (byte) (crc >>> (8 * i));
+        }
+        return header;
+    }
+
+    private static int getDictionaryProperty( final int pDictSize ) {
+        for (int i = 0; i < 40; i++) {
+            if (((long) (2 | (i & 1)) << (i / 2 + 11)) >= pDictSize) {
+                return i;
+            }
+        }
+        return 40;
+    }
+
+    protected void write( final Block pBlock, final OutputStream pOut ) throws IOException {
+        if (pBlock == null) {
+            return;
+        }
+
+        pOut.write(pBlock.data);
+
+        writeVarInt(index, pBlock.unpaddedSize);
+        writeVarInt(index, pBlock.uncompressedSize);
+        records++;
+    }
+
+    protected void finish( final OutputStream pOut ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(0);
+        writeVarInt(bytes, records);
+        index.writeTo(bytes);
+        while (bytes.size() % 4 != 0) {
+            bytes.write(0);
+        }
+
+        final byte[] indexBytes = bytes.toByteArray();
+        pOut.write(indexBytes);
+        writeInt(pOut, crc(indexBytes, 0, indexBytes.length));
+
+        final byte[] footer = new byte[6];
+        final long backwardSize = (indexBytes.length + CHECK_SIZE) / 4 - 1;
+        for (int i = 0; i < 4; i++) {
+            footer[i] = (byte) (backwardSize >>> (8 * i));
+        }
+        footer[4] = STREAM_FLAGS[0];
+        footer[5] = STREAM_FLAGS[1];
+
+        writeInt(pOut, crc(footer, 0, footer.length));
+        pOut.write(footer);
+        pOut.write(FOOTER_MAGIC);
+    }
+
+    private static long crc( final byte[] pData, final int pOffset, final int pLength ) {
+        final CRC32 crc = new CRC32();
+        crc.update(pData, pOffset, pLength);
+        return crc.getValue();
+    }
+
+    private static void writeInt( final OutputStream pOut, final long pValue ) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            pOut.write((int) (pValue >>> (8 * i)) & 0xff);
+        }
+    }
+
+    private static void writeVarInt( final OutputStream pOut, long pValue ) throws IOException {
+        while (pValue >= 0x80) {
+            pOut.write((int) (pValue & 0x7f) | 0x80);
+            pValue >>>= 7;
+        }
+        pOut.write((int) pValue);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps an evenly spread sample of everything written to it without
+ * knowing the total length in advance. The content is cut into chunks
+ * and every n-th chunk is kept. Whenever the sample gets too big every
+ * other kept chunk is dropped and n is doubled.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class SamplingOutputStream extends OutputStream {
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+    private byte[] chunk;
+    private int chunkLength;
+    private long index;
+    private long stride = 1;
+    private long count;
+
+    public SamplingOutputStream( final int pChunkSize, final int pMaxSize ) {
+        chunkSize = pChunkSize;
+        maxChunks = Math.max(1, pMaxSize / pChunkSize);
+        chunk = new byte[chunkSize];
+    }
+
+    public void write( final int b ) {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( final byte[] b, int off, int len ) {
+        count += len;
+
+        while (len > 0) {
+            final int n = Math.min(len, chunkSize - chunkLength);
+            if (index % stride == 0) {
+                System.arraycopy(b, off, chunk, chunkLength, n);
+            }
+            chunkLength += n;
+            off += n;
+            len -= n;
+
+            if (chunkLength == chunkSize) {
+                nextChunk();
+            }
+        }
+    }
+
+    private void nextChunk() {
+        if (index % stride == 0) {
+            chunks.add(chunk);
+            chunk = new byte[chunkSize];
+
+            if (chunks.size() > maxChunks) {
+                final List<byte[]> kept = new ArrayList<byte[]>();
+                for (int i = 0; i < chunks.size(); i += 2) {
+                    kept.add(chunks.get(i));
+                }
+                chunks.clear();
+                chunks.addAll(kept);
+                stride *= 2;
+            }
+        }
+        index++;
+        chunkLength = 0;
+    }
+
+    /**
+     * @return the number of bytes written to the stream
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sampled content
+     */
+    public byte[] getSample() {
+        final int partial = index % stride == 0 ? chunkLength : 0;
+        final byte[] sample = new byte[chunks.size() * chunkSize + partial];
+
+        int position = 0;
+        for (byte[] c : chunks) {
+            System.arraycopy(c, 0, sample, position, chunkSize);
+            position += chunkSize;
+        }
+        System.arraycopy(chunk, 0, sample, position, partial);
+
+        return sample;
+    }
+}
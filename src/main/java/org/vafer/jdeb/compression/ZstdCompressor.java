@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Creates the Zstandard streams. Kept in a class of its own so the native
+ * library only gets loaded when zstd is actually used.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ZstdCompressor {
+
+    /** the level dpkg-deb uses */
+    public static final int DEFAULT_LEVEL = 3;
+
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 22;
+
+    /**
+     * The window used for long distance matching. dpkg does not decompress
+     * frames with windows larger than 128 MB.
+     */
+    public static final int LONG_WINDOW_LOG = 27;
+
+    private ZstdCompressor() {
+    }
+
+    /**
+     * Compress nothing to load the native library.
+     */
+    static void probe() throws IOException {
+        createOutputStream(new ByteArrayOutputStream(), DEFAULT_LEVEL, false, 1).close();
+    }
+
+    /**
+     * The frames are always compressed by the worker threads of libzstd, even
+     * with a single thread. That way the output does not depend on the number
+     * of threads.
+     *
+     * @param pOut the stream to write the frame to
+     * @param pLevel the compression level (1-22)
+     * @param pLong whether to enable long distance matching
+     * @param pThreads the number of worker threads
+     */
+    public static OutputStream createOutputStream( final OutputStream pOut, final int pLevel, final boolean pLong, final int pThreads ) throws IOException {
+        if (pLevel < MIN_LEVEL || pLevel > MAX_LEVEL) {
+            throw new IllegalArgumentException("Invalid zstd level " + pLevel);
+        }
+
+        final ZstdOutputStream out = new ZstdOutputStream(pOut);
+        out.setLevel(pLevel);
+        out.setChecksum(true);
+        out.setWorkers(Math.max(1, pThreads));
+        if (pLong) {
+            out.setLong(LONG_WINDOW_LOG);
+        }
+        return out;
+    }
+}
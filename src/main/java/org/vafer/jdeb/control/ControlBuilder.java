@@ -6,6 +6,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -21,8 +22,10 @@ import java.util.zip.GZIPOutputStream;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarOutputStream;
 import org.vafer.jdeb.Console;
+import org.vafer.jdeb.data.ChecksumSink;
 import org.vafer.jdeb.descriptors.InvalidDescriptorException;
 import org.vafer.jdeb.descriptors.PackageDescriptor;
+import org.vafer.jdeb.events.FlightRecorderEvent;
 import org.vafer.jdeb.mapping.PermMapper;
 import org.vafer.jdeb.utils.Utils;
 import org.vafer.jdeb.utils.VariableResolver;
@@ -65,9 +68,55 @@ public class ControlBuilder {
      * @throws InvalidDescriptorException 
      */
     public void build( final File[] pControlFiles, final BigInteger pDataSize, final String pChecksums, final File pOutput ) throws IOException, ParseException, InvalidDescriptorException {
+        build(pControlFiles, pDataSize, pChecksums, new FileOutputStream(pOutput));
+    }
+
+    /**
+     * Build control archive of the deb
+     * @param pControlFiles
+     * @param pDataSize
+     * @param pChecksums the md5sums, streamed into the archive
+     * @param pOutput
+     * @throws IOException
+     * @throws ParseException
+     * @throws InvalidDescriptorException
+     */
+    public void build( final File[] pControlFiles, final BigInteger pDataSize, final ChecksumSink pChecksums, final File pOutput ) throws IOException, ParseException, InvalidDescriptorException {
+        build(pControlFiles, pDataSize, pChecksums, new FileOutputStream(pOutput));
+    }
+
+    /**
+     * Build control archive of the deb into a stream.
+     * The stream gets closed when the archive is complete.
+     * @param pControlFiles
+     * @param pDataSize
+     * @param pChecksums
+     * @param pOutput
+     * @throws IOException
+     * @throws ParseException
+     * @throws InvalidDescriptorException
+     */
+    public void build( final File[] pControlFiles, final BigInteger pDataSize, final String pChecksums, final OutputStream pOutput ) throws IOException, ParseException, InvalidDescriptorException {
+        final ChecksumSink checksums = new ChecksumSink(Integer.MAX_VALUE);
+        checksums.addLines(pChecksums);
+        build(pControlFiles, pDataSize, checksums, pOutput);
+    }
+
+    /**
+     * Build control archive of the deb into a stream.
+     * The stream gets closed when the archive is complete.
+     * @param pControlFiles
+     * @param pDataSize
+     * @param pChecksums the md5sums, streamed into the archive
+     * @param pOutput
+     * @throws IOException
+     * @throws ParseException
+     * @throws InvalidDescriptorException
+     */
+    public void build( final File[] pControlFiles, final BigInteger pDataSize, final ChecksumSink pChecksums, final OutputStream pOutput ) throws IOException, ParseException, InvalidDescriptorException {
         console.println("Building control");
         
-        final TarOutputStream outputStream = new TarOutputStream(new GZIPOutputStream(new FileOutputStream(pOutput)));
+        final TarOutputStream outputStream = new TarOutputStream(new GZIPOutputStream(pOutput));
         outputStream.setLongFileMode(TarOutputStream.LONGFILE_GNU);
 
         for (File file : pControlFiles) {
@@ -92,7 +141,7 @@ public class ControlBuilder {
             addControlEntry(configurationFile.getName(), configurationFile.toString(), outputStream);
         }
         addControlEntry("control", packageDescriptor.toString(), outputStream);
-        addControlEntry("md5sums", pChecksums.toString(), outputStream);
+        addChecksumsEntry(pChecksums, outputStream);
 
         outputStream.close();
         
@@ -147,17 +196,36 @@ public class ControlBuilder {
         pOutput.closeEntry();
     }
     
+    private void addChecksumsEntry( final ChecksumSink pChecksums, final TarOutputStream pOutput ) throws IOException {
+        final FlightRecorderEvent.Span span = FlightRecorderEvent.ENTRY.begin("./md5sums");
+
+        final TarEntry entry = new TarEntry("./md5sums");
+        entry.setSize(pChecksums.getLength());
+        entry.setNames("root", "root");
+        entry.setMode(PermMapper.toMode("755"));
+
+        pOutput.putNextEntry(entry);
+        pChecksums.writeTo(pOutput);
+        pOutput.closeEntry();
+
+        span.end(pChecksums.getLength());
+    }
+
     private void addControlEntry( final File pFile, final TarOutputStream pOutput ) throws IOException {
         final TarEntry entry = new TarEntry(pFile);
         entry.setName("./" + pFile.getName());
         entry.setNames("root", "root");
         entry.setMode(PermMapper.toMode("755"));
 
+        final FlightRecorderEvent.Span span = FlightRecorderEvent.ENTRY.begin(entry.getName());
+
         final InputStream inputStream = new FileInputStream(pFile);
         pOutput.putNextEntry(entry);
         Utils.copy(inputStream, pOutput);
         pOutput.closeEntry();
         inputStream.close();
+
+        span.end(entry.getSize());
     }
 
 }
@@ -0,0 +1,291 @@
+package org.vafer.jdeb.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The paths in the data archive, kept as a trie of path components. Adding
+ * a path and its missing parent directories only looks at the components
+ * of that path, no matter how many entries the archive already has.
+ *
+ * Paths can be given as "usr/lib", "/usr/lib" or "./usr/lib/".
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ArchiveIndex {
+
+    /**
+     * The children are kept in an open addressing table that is looked up
+     * with a region of the path, so walking a path does not allocate.
+     */
+    private static final class Node {
+
+        private final boolean directory;
+        private String[] names;
+        private Node[] children;
+        private int size;
+
+        private Node( final boolean pDirectory ) {
+            directory = pDirectory;
+        }
+
+        private static int hash( final String pPath, final int pStart, final int pEnd ) {
+            // the same as String.hashCode() of the region
+            int h = 0;
+            for (int i = pStart; i < pEnd; i++) {
+                h = 31 * h + pPath.charAt(i);
+            }
+            return h;
+        }
+
+        private static int slot( final int pHash, final int pCapacity ) {
+            return (pHash ^ (pHash >>> 16)) & (pCapacity - 1);
+        }
+
+        private Node getChild( final String pPath, final int pStart, final int pEnd ) {
+            if (names == null) {
+                return null;
+            }
+            final int length = pEnd - pStart;
+            int i = slot(hash(pPath, pStart, pEnd), names.length);
+            while (names[i] != null) {
+                if (names[i].length() == length && names[i].regionMatches(0, pPath, pStart, length)) {
+                    return children[i];
+                }
+                i = (i + 1) & (names.length - 1);
+            }
+            return null;
+        }
+
+        private Node addChild( final String pPath, final int pStart, final int pEnd, final boolean pDirectory ) {
+            if (names == null) {
+                names = new String[4];
+                children = new Node[4];
+            } else if ((size + 1) * 2 > names.length) {
+                final String[] oldNames = names;
+                final Node[] oldChildren = children;
+                names = new String[oldNames.length * 2];
+                children = new Node[oldNames.length * 2];
+                for (int i = 0; i < oldNames.length; i++) {
+                    if (oldNames[i] != null) {
+                        put(oldNames[i], oldChildren[i]);
+                    }
+                }
+            }
+
+            final Node child = new Node(pDirectory);
+            put(pPath.substring(pStart, pEnd), child);
+            size++;
+            return child;
+        }
+
+        private void put( final String pName, final Node pChild ) {
+            int i = slot(pName.hashCode(), names.length);
+            while (names[i] != null) {
+                i = (i + 1) & (names.length - 1);
+            }
+            names[i] = pName;
+            children[i] = pChild;
+        }
+
+        private String[] getNames() {
+            final String[] result = new String[size];
+            if (names != null) {
+                int n = 0;
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i] != null) {
+                        result[n++] = names[i];
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private final Node root = new Node(true);
+    private final List<String> duplicates = new ArrayList<String>();
+    private int directories;
+    private int files;
+    private boolean rootAdded;
+
+    /**
+     * @return the position after "./" or "/" the path components start at
+     */
+    private static int getStart( final String pPath ) {
+        if (pPath.startsWith("./")) {
+            return 2;
+        }
+        if (pPath.startsWith("/")) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the end of the path without a trailing slash
+     */
+    private static int getEnd( final String pPath ) {
+        if (pPath.endsWith("/")) {
+            return pPath.length() - 1;
+        }
+        return pPath.length();
+    }
+
+    /**
+     * Add the parent directories of the path that are not in the index yet.
+     * Once a parent is missing all the ones below it are missing as well,
+     * so the new directories are the ones after the returned position.
+     *
+     * @param pPath the path of a file or directory
+     * @return the length of the path prefix holding the parents that already existed
+     */
+    int addParents( final String pPath ) {
+        final int end = getEnd(pPath);
+        int start = getStart(pPath);
+        int existing = start;
+        Node node = root;
+
+        while (true) {
+            final int slash = pPath.indexOf('/', start);
+            if (slash == -1 || slash >= end) {
+                return existing;
+            }
+
+            if (slash > start) {
+                final Node child = node.getChild(pPath, start, slash);
+                if (child != null) {
+                    node = child;
+                    existing = slash + 1;
+                } else {
+                    node = node.addChild(pPath, start, slash, true);
+                    directories++;
+                }
+            }
+
+            start = slash + 1;
+        }
+    }
+
+    /**
+     * @return whether the directory was not in the index before
+     */
+    boolean addDirectory( final String pPath ) {
+        return add(pPath, true);
+    }
+
+    /**
+     * @return whether the file was not in the index before, otherwise it is reported as duplicate
+     */
+    boolean addFile( final String pPath ) {
+        return add(pPath, false);
+    }
+
+    private boolean add( final String pPath, final boolean pDirectory ) {
+        final int end = getEnd(pPath);
+        final int start = Math.max(getStart(pPath), pPath.lastIndexOf('/', end - 1) + 1);
+
+        if (start >= end) {
+            // the root of the archive
+            final boolean added = !rootAdded;
+            rootAdded = true;
+            return added;
+        }
+
+        Node parent = find(pPath, true);
+        if (parent == null) {
+            addParents(pPath);
+            parent = find(pPath, true);
+        }
+
+        if (parent.getChild(pPath, start, end) != null) {
+            if (!pDirectory) {
+                duplicates.add(pPath);
+            }
+            return false;
+        }
+
+        parent.addChild(pPath, start, end, pDirectory);
+        if (pDirectory) {
+            directories++;
+        } else {
+            files++;
+        }
+        return true;
+    }
+
+    /**
+     * @param pParent whether to look up the parent of the path instead of the path itself
+     * @return the node or null if it is not in the index
+     */
+    private Node find( final String pPath, final boolean pParent ) {
+        final int end = getEnd(pPath);
+        int start = getStart(pPath);
+        Node node = root;
+
+        while (node != null && start < end) {
+            int slash = pPath.indexOf('/', start);
+            if (slash == -1 || slash > end) {
+                slash = end;
+            }
+            if (pParent && slash == end) {
+                break;
+            }
+            if (slash > start) {
+                node = node.getChild(pPath, start, slash);
+            }
+            start = slash + 1;
+        }
+
+        return node;
+    }
+
+    /**
+     * @return whether the archive contains the file or directory
+     */
+    public boolean contains( final String pPath ) {
+        return find(pPath, false) != null;
+    }
+
+    public boolean isDirectory( final String pPath ) {
+        final Node node = find(pPath, false);
+        return node != null && node.directory;
+    }
+
+    public boolean isFile( final String pPath ) {
+        final Node node = find(pPath, false);
+        return node != null && !node.directory;
+    }
+
+    /**
+     * @return the sorted names of the entries in the directory
+     */
+    public String[] list( final String pDirectory ) {
+        final Node node = find(pDirectory, false);
+        if (node == null) {
+            return new String[0];
+        }
+        final String[] names = node.getNames();
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * @return the number of directories in the archive, including the created parents
+     */
+    public int getDirectoryCount() {
+        return directories;
+    }
+
+    public int getFileCount() {
+        return files;
+    }
+
+    /**
+     * @return the paths of the files that have been added more than once
+     */
+    public List<String> getDuplicates() {
+        return Collections.unmodifiableList(duplicates);
+    }
+}
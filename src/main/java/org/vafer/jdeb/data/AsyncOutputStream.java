@@ -0,0 +1,150 @@
+package org.vafer.jdeb.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Hands everything written to it in pooled buffers to a thread of its own
+ * that writes it to the wrapped stream. Closing waits until all data has
+ * been written and the wrapped stream got closed.
+ *
+ * Flushing does not reach the wrapped stream, the data is only guaranteed
+ * to be written once the stream got closed.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class AsyncOutputStream extends OutputStream {
+
+    private static final Chunk END = new Chunk(null, 0);
+
+    private final OutputStream out;
+    private final BufferPool pool;
+    private final Pipe<Chunk> pipe;
+    private final Thread thread;
+
+    private byte[] buffer;
+    private int position;
+    private boolean closed;
+
+    private static final class Chunk {
+
+        private final byte[] data;
+        private final int length;
+
+        private Chunk( final byte[] pData, final int pLength ) {
+            data = pData;
+            length = pLength;
+        }
+    }
+
+    AsyncOutputStream( final OutputStream pOut, final int pBuffers, final int pBufferSize, final String pName ) {
+        out = pOut;
+        pool = new BufferPool(pBuffers, pBufferSize);
+        pipe = new Pipe<Chunk>(pBuffers + 1);
+        thread = Pipe.start(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, pName);
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                final Chunk chunk = pipe.take();
+                if (chunk == END) {
+                    break;
+                }
+                try {
+                    if (!pipe.isFailed()) {
+                        out.write(chunk.data, 0, chunk.length);
+                    }
+                } catch (Throwable t) {
+                    pipe.fail(t);
+                } finally {
+                    pool.release(chunk.data);
+                }
+            }
+        } catch (Throwable t) {
+            pipe.fail(t);
+        } finally {
+            try {
+                out.close();
+            } catch (Throwable t) {
+                pipe.fail(t);
+            }
+        }
+    }
+
+    public void write( final int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( final byte[] b, int off, int len ) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (len > 0) {
+            if (buffer == null) {
+                pipe.check();
+                buffer = pool.take();
+            }
+
+            final int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            off += n;
+            len -= n;
+
+            if (position == buffer.length) {
+                send();
+            }
+        }
+    }
+
+    private void send() throws IOException {
+        final Chunk chunk = new Chunk(buffer, position);
+        buffer = null;
+        position = 0;
+        pipe.put(chunk);
+    }
+
+    public void flush() throws IOException {
+        pipe.check();
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (buffer != null) {
+                if (position > 0) {
+                    send();
+                } else {
+                    pool.release(buffer);
+                }
+            }
+        } finally {
+            pipe.putQuietly(END);
+            Pipe.join(thread);
+        }
+
+        pipe.check();
+    }
+
+    /**
+     * Stop writing to the wrapped stream and close it.
+     */
+    void abort() throws IOException {
+        pipe.fail(new IOException("Aborted"));
+        if (!closed) {
+            closed = true;
+            pipe.putQuietly(END);
+            Pipe.join(thread);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.vafer.jdeb.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed number of buffers that are handed between the stages of the
+ * data pipeline. Taking a buffer blocks until one is released, which
+ * bounds the memory and makes a fast stage wait for a slow one.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class BufferPool {
+
+    private final BlockingQueue<byte[]> buffers;
+    private final int bufferSize;
+
+    BufferPool( final int pBuffers, final int pBufferSize ) {
+        buffers = new ArrayBlockingQueue<byte[]>(pBuffers);
+        bufferSize = pBufferSize;
+        for (int i = 0; i < pBuffers; i++) {
+            buffers.add(new byte[pBufferSize]);
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getCapacity() {
+        return buffers.remainingCapacity() + buffers.size();
+    }
+
+    byte[] take() throws IOException {
+        try {
+            return buffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    void release( final byte[] pBuffer ) {
+        buffers.add(pBuffer);
+    }
+}
@@ -0,0 +1,185 @@
+package org.vafer.jdeb.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * Collects the lines of the md5sums control file as UTF-8. Small packages
+ * keep them in memory, once they grow beyond a threshold they get spilled
+ * into a temp file so the heap does not grow with the number of files.
+ * The content is streamed into the control archive with {@link #writeTo}.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ChecksumSink {
+
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private final int threshold;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private File file;
+    private OutputStream output;
+    private long length;
+    private byte[] line = new byte[256];
+    private boolean deleted;
+
+    public ChecksumSink() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param pThreshold the number of bytes kept in memory before spilling to a temp file
+     */
+    public ChecksumSink( final int pThreshold ) {
+        threshold = pThreshold;
+        output = memory;
+    }
+
+    /**
+     * Add the line for a file.
+     *
+     * @param pChecksum the hex encoded checksum
+     * @param pName the name of the file in the archive
+     */
+    public void add( final String pChecksum, final String pName ) throws IOException {
+        checkNotDeleted();
+        if (memory != null && memory.size() >= threshold) {
+            spill();
+        }
+
+        final byte[] line = (pChecksum + " " + pName + "\n").getBytes("UTF-8");
+        output.write(line);
+        length += line.length;
+    }
+
+    /**
+     * Add the line for a file without allocating for ASCII names.
+     *
+     * @param pChecksum the checksum
+     * @param pLength the number of bytes of the checksum
+     * @param pName the name of the file in the archive
+     */
+    public void add( final byte[] pChecksum, final int pLength, final String pName ) throws IOException {
+        checkNotDeleted();
+        if (memory != null && memory.size() >= threshold) {
+            spill();
+        }
+
+        final int size = pLength * 2 + 1 + pName.length() + 1;
+        if (line.length < size) {
+            line = new byte[Math.max(size, line.length * 2)];
+        }
+
+        int position = Utils.toHex(pChecksum, pLength, line, 0);
+        line[position++] = ' ';
+
+        for (int i = 0; i < pName.length(); i++) {
+            final char c = pName.charAt(i);
+            if (c >= 0x80) {
+                // not worth avoiding the allocation for the rare non-ASCII names
+                add(new String(line, 0, pLength * 2, "US-ASCII"), pName);
+                return;
+            }
+            line[position++] = (byte) c;
+        }
+
+        line[position++] = '\n';
+
+        output.write(line, 0, position);
+        length += position;
+    }
+
+    /**
+     * Add lines that are already in the format of the md5sums file.
+     */
+    public void addLines( final String pLines ) throws IOException {
+        checkNotDeleted();
+        if (memory != null && memory.size() >= threshold) {
+            spill();
+        }
+
+        final byte[] lines = pLines.getBytes("UTF-8");
+        output.write(lines);
+        length += lines.length;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("deb", "md5sums");
+        file.deleteOnExit();
+        output = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        memory.writeTo(output);
+        memory = null;
+    }
+
+    /**
+     * @return the number of bytes of the md5sums file
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return whether the lines have been spilled into a temp file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Write the md5sums file to the stream.
+     */
+    public void writeTo( final OutputStream pOutput ) throws IOException {
+        checkNotDeleted();
+        if (memory != null) {
+            memory.writeTo(pOutput);
+            return;
+        }
+
+        output.flush();
+        final InputStream input = new FileInputStream(file);
+        try {
+            Utils.copy(input, pOutput);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Remove the temp file and drop the lines, the sink cannot be used afterwards.
+     */
+    public void delete() throws IOException {
+        if (file != null) {
+            output.close();
+            file.delete();
+            file = null;
+        }
+        memory = null;
+        output = null;
+        length = 0;
+        deleted = true;
+    }
+
+    private void checkNotDeleted() {
+        if (deleted) {
+            throw new IllegalStateException("The md5sums have been deleted");
+        }
+    }
+
+    public String toString() {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            writeTo(content);
+            return content.toString("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the md5sums", e);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package org.vafer.jdeb.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tools.tar.TarOutputStream;
+import org.vafer.jdeb.compression.BlockListener;
+
+/**
+ * Attributes the compressed size of the data archive to its files and
+ * directories. The positions of the entries in the tar stream are matched
+ * with checkpoints of how many compressed bytes have been written for how
+ * many uncompressed bytes. The block compressors report exact checkpoints
+ * at the end of every block, for the other compressions the checkpoints
+ * are taken whenever compressed output is written. Within two checkpoints
+ * the compressed bytes are interpolated, so the sizes are estimates for
+ * files much smaller than a block.
+ *
+ * The tar headers and padding are attributed to the files, the directory
+ * entries and the end of the archive are not attributed at all.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class CompressedSizeReport {
+
+    /**
+     * The raw and the compressed size of a file or of all files below a directory.
+     */
+    public static final class Row {
+
+        private final String path;
+        private long files;
+        private long size;
+        private long compressed;
+
+        private Row( final String pPath ) {
+            path = pPath;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressed() {
+            return compressed;
+        }
+
+        /**
+         * @return the compressed bytes per raw byte, 0 for empty files
+         */
+        public double getRatio() {
+            return size > 0 ? (double) compressed / size : 0;
+        }
+    }
+
+    /**
+     * The tar stream of the data archive, it knows its position in the archive.
+     */
+    private static final class ArchiveOutputStream extends TarOutputStream {
+
+        private ArchiveOutputStream( final OutputStream pOutput ) {
+            super(pOutput);
+        }
+
+        private long getPosition() {
+            // the records are written in blocks, the current record is the last written one
+            return (long) buffer.getCurrentBlockNum() * buffer.getBlockSize() + (long) (buffer.getCurrentRecordNum() + 1) * buffer.getRecordSize();
+        }
+    }
+
+    private static final int MAX_WRITE = 4 * 1024;
+
+    // the entries, added on the archiver thread
+    private ArchiveOutputStream archive;
+    private final List<String> names = new ArrayList<String>();
+    private long[] entries = new long[3 * 64];
+
+    // the checkpoints, added on the thread writing into the compression
+    private long input;
+    private long output;
+    private long blockInput;
+    private boolean blocks;
+    private long[] checkpoints = new long[2 * 64];
+    private int checkpointCount;
+
+    /**
+     * @return the tar stream for the data archive, the entries are located with it
+     */
+    TarOutputStream createArchive( final OutputStream pOutput ) {
+        archive = new ArchiveOutputStream(pOutput);
+        return archive;
+    }
+
+    /**
+     * @return the position of the next entry in the data archive
+     */
+    long getPosition() {
+        return archive.getPosition();
+    }
+
+    void addFile( final String pName, final long pSize, final long pStart, final long pEnd ) {
+        final int n = names.size();
+        if (entries.length < (n + 1) * 3) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[n * 3] = pSize;
+        entries[n * 3 + 1] = pStart;
+        entries[n * 3 + 2] = pEnd;
+        names.add(pName);
+    }
+
+    /**
+     * @return the stream counting the bytes written into the compression
+     */
+    OutputStream countInput( final OutputStream pCompression ) {
+        return new OutputStream() {
+            public void write( final int b ) throws IOException {
+                pCompression.write(b);
+                input++;
+            }
+
+            public void write( final byte[] b, int off, int len ) throws IOException {
+                // small writes so a buffer in front of the compressor never passes them through,
+                // which would write compressed output for input that has not been counted yet
+                while (len > 0) {
+                    final int n = Math.min(len, MAX_WRITE);
+                    pCompression.write(b, off, n);
+                    input += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            public void flush() throws IOException {
+                pCompression.flush();
+            }
+
+            public void close() throws IOException {
+                pCompression.close();
+            }
+        };
+    }
+
+    /**
+     * @return the stream the compression writes into, it takes the checkpoints
+     */
+    OutputStream countOutput( final OutputStream pOutput ) {
+        return new CompressedOutputStream(pOutput);
+    }
+
+    private final class CompressedOutputStream extends OutputStream implements BlockListener {
+
+        private final OutputStream out;
+
+        private CompressedOutputStream( final OutputStream pOut ) {
+            out = pOut;
+        }
+
+        public void write( final int b ) throws IOException {
+            out.write(b);
+            output++;
+            writtenOutput();
+        }
+
+        public void write( final byte[] b, final int off, final int len ) throws IOException {
+            out.write(b, off, len);
+            output += len;
+            writtenOutput();
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+
+        public void onBlockWritten( final int pLength ) {
+            if (!blocks) {
+                // the exact block boundaries replace the checkpoints of the writes
+                blocks = true;
+                checkpointCount = 0;
+            }
+            blockInput += pLength;
+            addCheckpoint(blockInput, output);
+        }
+    }
+
+    private void writtenOutput() {
+        if (!blocks) {
+            addCheckpoint(input, output);
+        }
+    }
+
+    private void addCheckpoint( final long pInput, final long pOutput ) {
+        if (checkpointCount > 0 && checkpoints[(checkpointCount - 1) * 2] == pInput) {
+            checkpoints[(checkpointCount - 1) * 2 + 1] = pOutput;
+            return;
+        }
+        if (checkpoints.length < (checkpointCount + 1) * 2) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[checkpointCount * 2] = pInput;
+        checkpoints[checkpointCount * 2 + 1] = pOutput;
+        checkpointCount++;
+    }
+
+    /**
+     * Add the final checkpoint once the compression is closed.
+     */
+    void finish() {
+        addCheckpoint(Math.max(input, blockInput), output);
+    }
+
+    /**
+     * @return the number of compressed bytes written for the uncompressed bytes up to the position
+     */
+    long getCompressedPosition( final long pPosition ) {
+        int low = 0;
+        int high = checkpointCount - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (checkpoints[middle * 2] < pPosition) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (checkpointCount == 0 || checkpoints[low * 2] < pPosition) {
+            // beyond the last checkpoint
+            return checkpointCount == 0 ? 0 : checkpoints[(checkpointCount - 1) * 2 + 1];
+        }
+
+        final long endInput = checkpoints[low * 2];
+        final long endOutput = checkpoints[low * 2 + 1];
+        final long startInput = low > 0 ? checkpoints[(low - 1) * 2] : 0;
+        final long startOutput = low > 0 ? checkpoints[(low - 1) * 2 + 1] : 0;
+
+        if (endInput == startInput) {
+            return endOutput;
+        }
+        return startOutput + Math.round((double) (endOutput - startOutput) * (pPosition - startInput) / (endInput - startInput));
+    }
+
+    /**
+     * @return the files in the order of the archive
+     */
+    public List<Row> getFiles() {
+        final List<Row> files = new ArrayList<Row>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            final Row row = new Row(names.get(i));
+            row.files = 1;
+            row.size = entries[i * 3];
+            row.compressed = getCompressedPosition(entries[i * 3 + 2]) - getCompressedPosition(entries[i * 3 + 1]);
+            files.add(row);
+        }
+        return files;
+    }
+
+    /**
+     * @return the directories sorted by path with the sums of all files below them
+     */
+    public List<Row> getDirectories() {
+        final Map<String, Row> directories = new TreeMap<String, Row>();
+        for (Row file : getFiles()) {
+            final String path = file.getPath();
+            int slash = path.indexOf('/', 1);
+            while (slash != -1) {
+                final String directory = path.substring(0, slash);
+                Row row = directories.get(directory);
+                if (row == null) {
+                    row = new Row(directory);
+                    directories.put(directory, row);
+                }
+                row.files++;
+                row.size += file.size;
+                row.compressed += file.compressed;
+                slash = path.indexOf('/', slash + 1);
+            }
+        }
+        return new ArrayList<Row>(directories.values());
+    }
+
+    private static String ratio( final Row pRow ) {
+        return String.format(Locale.ENGLISH, "%.3f", pRow.getRatio());
+    }
+
+    private static String csv( final String pValue ) {
+        if (pValue.indexOf(',') == -1 && pValue.indexOf('"') == -1 && pValue.indexOf('\n') == -1) {
+            return pValue;
+        }
+        return '"' + pValue.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json( final String pValue ) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < pValue.length(); i++) {
+            final char c = pValue.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Write the directories and then the files with the columns type, path, files, size, compressed and ratio.
+     */
+    public void writeCsv( final Writer pWriter ) throws IOException {
+        pWriter.write("type,path,files,size,compressed,ratio\n");
+        for (Row row : getDirectories()) {
+            pWriter.write("directory," + csv(row.path) + "," + row.files + "," + row.size + "," + row.compressed + "," + ratio(row) + "\n");
+        }
+        for (Row row : getFiles()) {
+            pWriter.write("file," + csv(row.path) + "," + row.files + "," + row.size + "," + row.compressed + "," + ratio(row) + "\n");
+        }
+    }
+
+    public void writeJson( final Writer pWriter ) throws IOException {
+        pWriter.write("{\n  \"directories\": [");
+        writeJson(pWriter, getDirectories());
+        pWriter.write("],\n  \"files\": [");
+        writeJson(pWriter, getFiles());
+        pWriter.write("]\n}\n");
+    }
+
+    private static void writeJson( final Writer pWriter, final List<Row> pRows ) throws IOException {
+        for (int i = 0; i < pRows.size(); i++) {
+            final Row row = pRows.get(i);
+            pWriter.write(i == 0 ? "\n" : ",\n");
+            pWriter.write("    { \"path\": " + json(row.path) + ", \"files\": " + row.files + ", \"size\": " + row.size + ", \"compressed\": " + row.compressed + ", \"ratio\": " + ratio(row) + " }");
+        }
+        if (!pRows.isEmpty()) {
+            pWriter.write("\n  ");
+        }
+    }
+
+    /**
+     * Write the report as JSON if the name of the file ends with ".json", as CSV otherwise.
+     */
+    public void write( final File pFile ) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+        try {
+            if (pFile.getName().endsWith(".json")) {
+                writeJson(writer);
+            } else {
+                writeCsv(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
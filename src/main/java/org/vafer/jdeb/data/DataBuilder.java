@@ -1,20 +1,27 @@
 package org.vafer.jdeb.data;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.GZIPOutputStream;
 
-import org.apache.tools.bzip2.CBZip2OutputStream;
 import org.apache.tools.tar.TarOutputStream;
 import org.vafer.jdeb.Console;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.compression.Compression;
+import org.vafer.jdeb.compression.CompressionSelector;
+import org.vafer.jdeb.compression.SamplingOutputStream;
+import org.vafer.jdeb.events.ConsoleEventListener;
+import org.vafer.jdeb.events.Event;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.events.FlightRecorderEvent;
+import org.vafer.jdeb.events.Level;
+import org.vafer.jdeb.events.SummarizingEventListener;
 
 /**
  * Build the control section of the debian package.
@@ -24,12 +31,264 @@ import org.vafer.jdeb.DataProducer;
  */
 public class DataBuilder {
 
+    private static final int PIPELINE_BUFFERS = 16;
+    private static final int PIPELINE_BUFFER_SIZE = 64 * 1024;
+
+    // "auto" takes at most the size of a chunk from every file and reads up to this many times the sample size
+    private static final int SAMPLE_CHUNKS = 256;
+    private static final int SAMPLE_SPREAD = 16;
+
     private final Console console;
+    private final EventListener listener;
+    private SummarizingEventListener summary;
     private DataSize dataSize;
-    private StringBuilder checkSums;
+    private ChecksumSink checkSums;
+    private ArchiveIndex index;
+    private int compressionLevel = -1;
+    private boolean longDistanceMatching;
+    private int minThroughput = CompressionSelector.DEFAULT_MIN_THROUGHPUT;
+    private int sampleSize = 16 * 1024 * 1024;
+    private boolean pipelined = true;
+    private File sizeReportFile;
+    private CompressedSizeReport sizeReport;
+    private TimingOutputStream compressionTimer;
+    private long scanNanos;
     
     public DataBuilder(Console console) {
+        this(console, new ConsoleEventListener(console, Level.INFO));
+    }
+
+    /**
+     * @param console the console for the progress messages
+     * @param listener the listener for the events of the archived files, they get summarized unless it wants DEBUG events
+     */
+    public DataBuilder(Console console, EventListener listener) {
         this.console = console;
+        this.listener = listener;
+    }
+
+    /**
+     * @param pLevel the level for gzip (0-9), xz (0-9) and zstd (1-22), -1 for the default of the method
+     */
+    public void setCompressionLevel( final int pLevel ) {
+        compressionLevel = pLevel;
+    }
+
+    /**
+     * @param pLong whether zstd should look for matches far back (uses a 128 MB window)
+     */
+    public void setLongDistanceMatching( final boolean pLong ) {
+        longDistanceMatching = pLong;
+    }
+
+    /**
+     * Run reading, archiving, compressing and writing the data on separate
+     * threads connected by bounded queues. The output is the same either way.
+     *
+     * @param pPipelined whether to run the stages concurrently
+     */
+    public void setPipelined( final boolean pPipelined ) {
+        pipelined = pPipelined;
+    }
+
+    /**
+     * @param pMinThroughput the throughput in MB/s the "auto" compression needs to reach
+     */
+    public void setMinThroughput( final int pMinThroughput ) {
+        minThroughput = pMinThroughput;
+    }
+
+    /**
+     * @param pSampleSize the number of bytes "auto" trial compresses, they are spread over the heads of the files in up to 16 times as many bytes of data
+     */
+    public void setSampleSize( final int pSampleSize ) {
+        sampleSize = pSampleSize;
+    }
+
+    /**
+     * Attribute the compressed size of the data archive to its files and
+     * directories and write it as a report, JSON if the name ends with
+     * ".json" and CSV otherwise.
+     *
+     * @param pReport the file to write the report to, null for no report
+     */
+    public void setSizeReport( final File pReport ) {
+        sizeReportFile = pReport;
+    }
+
+    /**
+     * Resolve the name of a compression method or profile. The compression
+     * level and long distance matching settings are applied. For "auto" the
+     * data is sampled and trial compressed with every candidate.
+     *
+     * @param pData the data the compression is used for
+     * @param pName the compression method, profile or "auto" (anything else for no compression)
+     * @return the compression to build the data archive with
+     * @throws IOException
+     */
+    public Compression getCompression( final DataProducer[] pData, final String pName ) throws IOException {
+        if (Compression.AUTO.equals(pName)) {
+            return selectCompression(pData);
+        }
+
+        final Compression compression = Compression.forName(pName);
+        final Compression configured = configure(compression != null ? compression : Compression.NONE);
+        configured.checkAvailable();
+        return configured;
+    }
+
+    /**
+     * @return the compression with the configured level and long distance matching
+     */
+    private Compression configure( final Compression pCompression ) {
+        Compression compression = pCompression;
+        if (compressionLevel != -1) {
+            compression = compression.withLevel(compressionLevel);
+        }
+        if (longDistanceMatching) {
+            compression = compression.withLongDistanceMatching(true);
+        }
+        return compression;
+    }
+
+    private Compression selectCompression( final DataProducer[] pData ) throws IOException {
+        console.println("Sampling data to select the compression");
+
+        // only the head of every file is taken and the payload is read well past the
+        // sample size, so the kept chunks are spread over many files and not just the first
+        final int chunkSize = Math.max(512, sampleSize / SAMPLE_CHUNKS);
+        final SamplingOutputStream sample = new SamplingOutputStream(chunkSize, sampleSize);
+        final SampleLimit limit = new SampleLimit(sample, (long) sampleSize * SAMPLE_SPREAD);
+        final TarOutputStream outputStream = new TarOutputStream(limit);
+        outputStream.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+
+        final EventListener silent = new EventListener() {
+            public boolean isEnabled( final Level pLevel ) {
+                return false;
+            }
+
+            public void onEvent( final Event pEvent ) {
+            }
+        };
+        final ChecksumSink checksums = new ChecksumSink();
+        final DataConsumer receiver = new SampleConsumer(new DefaultDataConsumer(silent, outputStream, checksums, new DataSize(), new ArchiveIndex()), chunkSize);
+
+        try {
+            for (int i = 0; i < pData.length; i++) {
+                pData[i].produce(receiver);
+            }
+            outputStream.close();
+        } catch (IOException e) {
+            // the producers get stopped once the sample is complete
+            if (!limit.isReached()) {
+                throw e;
+            }
+        } finally {
+            checksums.delete();
+        }
+
+        // only the methods that support the configured level are candidates
+        final List<Compression> candidates = new ArrayList<Compression>();
+        for (Compression candidate : Compression.getCandidates()) {
+            if (candidate.isValidLevel(compressionLevel)) {
+                candidates.add(configure(candidate));
+            }
+        }
+
+        final CompressionSelector selector = new CompressionSelector(console, getThreads(), minThroughput);
+        return selector.select(sample.getSample(), candidates.toArray(new Compression[candidates.size()]));
+    }
+
+    /**
+     * Passes on only the head of every file.
+     */
+    private static final class SampleConsumer implements DataConsumer {
+
+        private final DataConsumer consumer;
+        private final int maxFileSize;
+
+        private SampleConsumer( final DataConsumer pConsumer, final int pMaxFileSize ) {
+            consumer = pConsumer;
+            maxFileSize = pMaxFileSize;
+        }
+
+        public void onEachDir( final String dirname, final String linkname, final String user, final int uid, final String group, final int gid, final int mode, final long size ) throws IOException {
+            consumer.onEachDir(dirname, linkname, user, uid, group, gid, mode, size);
+        }
+
+        public void onEachFile( final InputStream input, final String filename, final String linkname, final String user, final int uid, final String group, final int gid, final int mode, final long size ) throws IOException {
+            final long head = Math.min(size, maxFileSize);
+            consumer.onEachFile(new HeadInputStream(input, head), filename, linkname, user, uid, group, gid, mode, head);
+        }
+    }
+
+    /**
+     * Reads only up to the limit of the wrapped stream.
+     */
+    private static final class HeadInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        private HeadInputStream( final InputStream pIn, final long pLimit ) {
+            in = pIn;
+            remaining = pLimit;
+        }
+
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        public int read( final byte[] b, final int off, final int len ) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Passes on the bytes up to the limit and fails the write that exceeds it.
+     */
+    private static final class SampleLimit extends OutputStream {
+
+        private final OutputStream out;
+        private long remaining;
+        private boolean reached;
+
+        private SampleLimit( final OutputStream pOut, final long pLimit ) {
+            out = pOut;
+            remaining = pLimit;
+        }
+
+        public void write( final int b ) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write( final byte[] b, final int off, final int len ) throws IOException {
+            final int n = (int) Math.min(len, remaining);
+            out.write(b, off, n);
+            remaining -= n;
+            if (n < len) {
+                reached = true;
+                throw new IOException("The sample is complete");
+            }
+        }
+
+        private boolean isReached() {
+            return reached;
+        }
     }
 
     /**
@@ -37,48 +296,235 @@ public class DataBuilder {
      * @param pData
      * @param pOutput
      * @param pChecksums
-     * @param pCompression the compression method used for the data file (gzip, bzip2 or anything else for no compression)
+     * @param pCompression the compression method used for the data file (gzip, bzip2, xz, zstd or anything else for no compression)
      * @return
      * @throws IOException
      */
     public void build( final DataProducer[] pData, final File pOutput, String pCompression ) throws IOException {
-        console.println("Building data");
+        build(pData, new FileOutputStream(pOutput), getCompression(pData, pCompression));
+    }
+
+    /**
+     * Build the data archive of the deb from the provided DataProducers
+     * @param pData
+     * @param pOutput
+     * @param pCompression the compression of the data file
+     * @throws IOException
+     */
+    public void build( final DataProducer[] pData, final File pOutput, final Compression pCompression ) throws IOException {
+        build(pData, new FileOutputStream(pOutput), pCompression);
+    }
+
+    /**
+     * Build the data archive of the deb from the provided DataProducers into a stream.
+     * The stream gets closed when the archive is complete.
+     * @param pData
+     * @param pOutput
+     * @param pCompression the compression method used for the data file (gzip, bzip2, xz, zstd or anything else for no compression)
+     * @throws IOException
+     */
+    public void build( final DataProducer[] pData, final OutputStream pOutput, String pCompression ) throws IOException {
+        build(pData, pOutput, getCompression(pData, pCompression));
+    }
+
+    /**
+     * Build the data archive of the deb from the provided DataProducers into a stream.
+     * The stream gets closed when the archive is complete.
+     * @param pData
+     * @param pOutput
+     * @param pCompression the compression of the data file
+     * @throws IOException
+     */
+    public void build( final DataProducer[] pData, final OutputStream pOutput, final Compression pCompression ) throws IOException {
+        console.println("Building data (" + pCompression + ")");
         
-        checkSums = new StringBuilder();
+        if (checkSums != null) {
+            checkSums.delete();
+        }
+        checkSums = new ChecksumSink();
         dataSize = new DataSize();
+        index = new ArchiveIndex();
+        summary = new SummarizingEventListener(listener);
         
-        final TarOutputStream outputStream = createOutputStream(pOutput, pCompression);
+        sizeReport = sizeReportFile != null ? new CompressedSizeReport() : null;
+        scanNanos = 0;
+
+        if (!pipelined) {
+            final TarOutputStream outputStream = createArchive(createCompression(pOutput, pCompression));
+            outputStream.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+
+            final DefaultDataConsumer receiver = new DefaultDataConsumer(summary, outputStream, checkSums, dataSize, index);
+            receiver.setSizeReport(sizeReport);
+
+            for (int i = 0; i < pData.length; i++) {
+                produce(pData[i], receiver);
+            }
+
+            outputStream.close();
+            summary.summarize();
+            console.println("Total size: " + dataSize);
+            writeSizeReport();
+            return;
+        }
+
+        // read -> tar and MD5 -> compress -> write
+        final AsyncOutputStream writer = new AsyncOutputStream(pOutput, PIPELINE_BUFFERS, PIPELINE_BUFFER_SIZE, "jdeb-writer");
+        final AsyncOutputStream compressor = new AsyncOutputStream(createCompression(writer, pCompression), PIPELINE_BUFFERS, PIPELINE_BUFFER_SIZE, "jdeb-compressor");
+        final TarOutputStream outputStream = createArchive(compressor);
         outputStream.setLongFileMode(TarOutputStream.LONGFILE_GNU);
 
-        final List<String> addedDirectories = new ArrayList<String>();
-        final DataConsumer receiver = new DefaultDataConsumer(console, outputStream, checkSums, dataSize, addedDirectories);
+        final DefaultDataConsumer archiver = new DefaultDataConsumer(summary, outputStream, checkSums, dataSize, index);
+        archiver.setSizeReport(sizeReport);
+        final PipelinedDataConsumer receiver = new PipelinedDataConsumer(archiver, PIPELINE_BUFFERS, PIPELINE_BUFFER_SIZE, "jdeb-archiver");
+
+        boolean done = false;
+        try {
+            for (int i = 0; i < pData.length; i++) {
+                produce(pData[i], receiver);
+            }
 
-        for (int i = 0; i < pData.length; i++) {
-            final DataProducer data = pData[i];
-            data.produce(receiver);
+            receiver.finish();
+            outputStream.close();
+            done = true;
+        } finally {
+            if (!done) {
+                receiver.abort();
+                compressor.abort();
+                writer.abort();
+            }
         }
 
-        outputStream.close();
+        summary.summarize();
         console.println("Total size: " + dataSize);
+        writeSizeReport();
     }
 
-    private TarOutputStream createOutputStream( final File pOutput, String pCompression ) throws FileNotFoundException, IOException {
-        OutputStream out = new FileOutputStream(pOutput);
-        if ("gzip".equals(pCompression)) {
-            out = new GZIPOutputStream(out);
-        } else if ("bzip2".equals(pCompression)) {
-            out.write("BZ".getBytes());
-            out = new CBZip2OutputStream(out);
+    /**
+     * @return the compression stream, counting the bytes for the size report if there is one
+     */
+    private OutputStream createCompression( final OutputStream pOutput, final Compression pCompression ) throws IOException {
+        if (sizeReport == null) {
+            compressionTimer = new TimingOutputStream(pCompression.createOutputStream(pOutput, getThreads()));
+        } else {
+            compressionTimer = new TimingOutputStream(sizeReport.countInput(pCompression.createOutputStream(sizeReport.countOutput(pOutput), getThreads())));
         }
-        return new TarOutputStream(out);
+        return compressionTimer;
     }
-    
+
+    private TarOutputStream createArchive( final OutputStream pOutput ) {
+        return sizeReport != null ? sizeReport.createArchive(pOutput) : new TarOutputStream(pOutput);
+    }
+
+    private void writeSizeReport() throws IOException {
+        if (sizeReport == null) {
+            return;
+        }
+        sizeReport.finish();
+        console.println("Writing the compressed sizes to " + sizeReportFile);
+        sizeReport.write(sizeReportFile);
+    }
+
+    /**
+     * Let the producer pass its entries to the consumer, recording it as
+     * a {@link FlightRecorderEvent#PRODUCER} event with the bytes of its files.
+     * The time the producer spends outside of the consumer, walking its
+     * source and mapping the entries, is added to the scan time.
+     */
+    private void produce( final DataProducer pData, final DataConsumer pReceiver ) throws IOException {
+        final FlightRecorderEvent.Span span = FlightRecorderEvent.PRODUCER.begin(pData.getClass().getName());
+        final long[] bytes = new long[1];
+        final long[] consumed = new long[1];
+
+        final long start = System.nanoTime();
+        pData.produce(new DataConsumer() {
+            public void onEachDir( String dirname, String linkname, String user, int uid, String group, int gid, int mode, long size ) throws IOException {
+                final long started = System.nanoTime();
+                try {
+                    pReceiver.onEachDir(dirname, linkname, user, uid, group, gid, mode, size);
+                } finally {
+                    consumed[0] += System.nanoTime() - started;
+                }
+            }
+
+            public void onEachFile( InputStream input, String filename, String linkname, String user, int uid, String group, int gid, int mode, long size ) throws IOException {
+                bytes[0] += size;
+                final long started = System.nanoTime();
+                try {
+                    pReceiver.onEachFile(input, filename, linkname, user, uid, group, gid, mode, size);
+                } finally {
+                    consumed[0] += System.nanoTime() - started;
+                }
+            }
+        });
+        scanNanos += System.nanoTime() - start - consumed[0];
+
+        span.end(bytes[0]);
+    }
+
+    private int getThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     public BigInteger getSize() {
-        return dataSize.count;
+        return dataSize.getCount();
+    }
+
+    /**
+     * @return the nanoseconds the producers of the last build spent walking their sources and mapping the entries
+     */
+    public long getScanNanos() {
+        return scanNanos;
+    }
+
+    /**
+     * @return the nanoseconds the last build spent compressing (and writing) the tar archive
+     */
+    public long getCompressionNanos() {
+        return compressionTimer.getNanos();
+    }
+
+    /**
+     * @return the length of the uncompressed tar archive of the last build
+     */
+    public long getArchiveLength() {
+        return compressionTimer.getCount();
     }
     
+    /**
+     * @deprecated use {@link #getChecksums()}, it does not need to hold all lines in memory
+     * @throws IllegalStateException if the md5sums have been deleted already, like the Processor does once the control archive is built
+     */
+    @Deprecated
     public String getMD5s() {
         return checkSums.toString();
     }
+
+    /**
+     * @return the md5sums of the last built data archive
+     */
+    public ChecksumSink getChecksums() {
+        return checkSums;
+    }
+
+    /**
+     * @return the counts and largest files of the last built data archive
+     */
+    public SummarizingEventListener getSummary() {
+        return summary;
+    }
+
+    /**
+     * @return the compressed sizes of the files of the last built data archive, null if no report was requested
+     */
+    public CompressedSizeReport getSizeReport() {
+        return sizeReport;
+    }
+
+    /**
+     * @return the files and directories of the last built data archive
+     */
+    public ArchiveIndex getIndex() {
+        return index;
+    }
     
 }
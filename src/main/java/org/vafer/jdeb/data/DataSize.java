@@ -9,14 +9,25 @@ import java.math.BigInteger;
  */
 public class DataSize {
     
-    BigInteger count = BigInteger.valueOf(0);
+    private BigInteger count = BigInteger.valueOf(0);
+
+    // sizes are summed up in a long and only carried over before it can overflow
+    private long pending;
 
     public void add( long size ) {
-        count = count.add(BigInteger.valueOf(size));
+        if (pending > Long.MAX_VALUE - size) {
+            count = count.add(BigInteger.valueOf(pending));
+            pending = 0;
+        }
+        pending += size;
+    }
+
+    public BigInteger getCount() {
+        return count.add(BigInteger.valueOf(pending));
     }
 
     public String toString() {
-        return "" + count;
+        return "" + getCount();
     }
 
 }
\ No newline at end of file
@@ -3,15 +3,19 @@ package org.vafer.jdeb.data;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestException;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.List;
 
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarOutputStream;
-import org.vafer.jdeb.Console;
 import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.events.Event;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.events.FlightRecorderEvent;
+import org.vafer.jdeb.events.Level;
+import org.vafer.jdeb.events.SummarizingEventListener;
 import org.vafer.jdeb.utils.Utils;
 
 /**
@@ -21,43 +25,65 @@ import org.vafer.jdeb.utils.Utils;
  */
 public class DefaultDataConsumer implements DataConsumer {
     
-    private final Console console;
+    private final EventListener listener;
+    // counts the files and directories when no events get sent for them
+    private final SummarizingEventListener summary;
     private final TarOutputStream outputStream;
-    private final List<String> addedDirectories;
-    private StringBuilder checkSums;
+    private final ArchiveIndex index;
+    private ChecksumSink checkSums;
     private MessageDigest digest;
     private DataSize dataSize;
 
-    DefaultDataConsumer(Console console, TarOutputStream outputStream, StringBuilder checkSums, DataSize dataSize, List<String> addedDirectories) {
-        this.console = console;
+    // reused for every file to keep the per-file path free of allocations
+    private final DigestOutputStream digestStream;
+    private final byte[] buffer = new byte[64 * 1024];
+    private final byte[] md5 = new byte[16];
+
+    private CompressedSizeReport sizeReport;
+
+    DefaultDataConsumer(EventListener listener, TarOutputStream outputStream, ChecksumSink checkSums, DataSize dataSize, ArchiveIndex index) {
+        this.listener = listener;
+        this.summary = listener instanceof SummarizingEventListener ? (SummarizingEventListener) listener : null;
         this.outputStream = outputStream;
         this.checkSums = checkSums;
         this.dataSize = dataSize;
-        this.addedDirectories = addedDirectories;
+        this.index = index;
         try {
             digest = MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
+        digestStream = new DigestOutputStream(outputStream, digest);
+    }
+
+    /**
+     * @param pReport the report to add the positions of the files to, its archive has to be the tar stream of this consumer
+     */
+    void setSizeReport( final CompressedSizeReport pReport ) {
+        sizeReport = pReport;
     }
 
     public void onEachDir( String dirname, String linkname, String user, int uid, String group, int gid, int mode, long size ) throws IOException {
         dirname = fixPath(dirname);
 
-        createParentDirectories(new File(dirname).getParent(), user, uid, group, gid);
+        createParentDirectories(dirname, user, uid, group, gid);
 
         // The directory passed in explicitly by the caller also gets the passed-in mode.  (Unlike
         // the parent directories for now.  See related comments at "int mode =" in
         // createParentDirectories, including about a possible bug.)
         createDirectory(dirname, user, uid, group, gid, mode, 0);
-
-        console.println("dir: " + dirname);
     }
 
     public void onEachFile( InputStream inputStream, String filename, String linkname, String user, int uid, String group, int gid, int mode, long size ) throws IOException {
         filename = fixPath(filename);
 
-        createParentDirectories(new File(filename).getParent(), user, uid, group, gid);
+        createParentDirectories(filename, user, uid, group, gid);
+
+        if (!index.addFile(filename)) {
+            listener.onEvent(new Event(Level.WARN, "Duplicate file " + filename));
+        }
+
+        final FlightRecorderEvent.Span span = FlightRecorderEvent.ENTRY.begin(filename);
 
         TarEntry entry = new TarEntry(filename);
 
@@ -69,35 +95,61 @@ public class DefaultDataConsumer implements DataConsumer {
         entry.setMode(mode);
         entry.setSize(size);
 
+        final long start = sizeReport != null ? sizeReport.getPosition() : 0;
+
         outputStream.putNextEntry(entry);
 
         dataSize.add(size);
 
         digest.reset();
 
-        Utils.copy(inputStream, new DigestOutputStream(outputStream, digest));
+        int n;
+        while (-1 != (n = inputStream.read(buffer))) {
+            digestStream.write(buffer, 0, n);
+        }
 
-        final String md5 = Utils.toHex(digest.digest());
+        try {
+            digest.digest(md5, 0, md5.length);
+        } catch (DigestException e) {
+            throw new IOException("Could not calculate the md5 of " + filename, e);
+        }
 
         outputStream.closeEntry();
 
-        console.println(
-                "file:" + entry.getName() +
-                " size:" + entry.getSize() +
-                " mode:" + entry.getMode() +
-                " linkname:" + entry.getLinkName() +
-                " username:" + entry.getUserName() +
-                " userid:" + entry.getUserId() +
-                " groupname:" + entry.getGroupName() +
-                " groupid:" + entry.getGroupId() +
-                " modtime:" + entry.getModTime() +
-                " md5: " + md5
-        );
-
-        checkSums.append(md5).append(" ").append(entry.getName()).append('\n');
+        if (sizeReport != null) {
+            sizeReport.addFile(entry.getName(), size, start, sizeReport.getPosition());
+        }
+
+        span.end(size);
+
+        if (listener.isEnabled(Level.DEBUG)) {
+            onFileEvent(entry);
+        } else if (summary != null) {
+            summary.addFile(entry.getName(), entry.getSize());
+        }
+
+        checkSums.add(md5, md5.length, entry.getName());
 
     }
 
+    private void onFileEvent( final TarEntry fileEntry ) {
+        final String hex = Utils.toHex(md5);
+        listener.onEvent(new Event(Level.DEBUG, Event.FILE, fileEntry.getName(), fileEntry.getSize()) {
+            protected String createMessage() {
+                return "file:" + fileEntry.getName() +
+                       " size:" + fileEntry.getSize() +
+                       " mode:" + fileEntry.getMode() +
+                       " linkname:" + fileEntry.getLinkName() +
+                       " username:" + fileEntry.getUserName() +
+                       " userid:" + fileEntry.getUserId() +
+                       " groupname:" + fileEntry.getGroupName() +
+                       " groupid:" + fileEntry.getGroupId() +
+                       " modtime:" + fileEntry.getModTime() +
+                       " md5: " + hex;
+            }
+        });
+    }
+
     private String fixPath(String path) {
         // If we're receiving directory names from Windows, then we'll convert to use slash
         // This does eliminate the ability to use of a backslash in a directory name on *NIX, but in practice, this is a non-issue
@@ -116,29 +168,37 @@ public class DefaultDataConsumer implements DataConsumer {
     private void createDirectory(String directory, String user, int uid, String group, int gid, int mode, long size) throws IOException {
         // All dirs should end with "/" when created, or the test DebAndTaskTestCase.testTarFileSet() thinks its a file
         // and so thinks it has the wrong permission.
-        // This consistency also helps when checking if a directory already exists in addedDirectories.
 
         if (!directory.endsWith("/")) {
             directory += "/";
         }
 
-        if (!addedDirectories.contains(directory)) {
-            TarEntry entry = new TarEntry(directory);
-            // FIXME: link is in the constructor
-            entry.setUserName(user);
-            entry.setUserId(uid);
-            entry.setGroupName(group);
-            entry.setGroupId(gid);
-            entry.setMode(mode);
-            entry.setSize(size);
-
-            outputStream.putNextEntry(entry);
-            outputStream.closeEntry();
-            addedDirectories.add(directory); // so addedDirectories consistently have "/" for finding duplicates.
+        if (index.addDirectory(directory)) {
+            createDirectoryEntry(directory, user, uid, group, gid, mode, size);
         }
     }
 
-    private void createParentDirectories(String dirname, String user, int uid, String group, int gid) throws IOException {
+    private void createDirectoryEntry(String directory, String user, int uid, String group, int gid, int mode, long size) throws IOException {
+        TarEntry entry = new TarEntry(directory);
+        // FIXME: link is in the constructor
+        entry.setUserName(user);
+        entry.setUserId(uid);
+        entry.setGroupName(group);
+        entry.setGroupId(gid);
+        entry.setMode(mode);
+        entry.setSize(size);
+
+        outputStream.putNextEntry(entry);
+        outputStream.closeEntry();
+
+        if (listener.isEnabled(Level.DEBUG)) {
+            listener.onEvent(new Event(Level.DEBUG, Event.DIRECTORY, directory, 0));
+        } else if (summary != null) {
+            summary.addDirectory();
+        }
+    }
+
+    private void createParentDirectories(String path, String user, int uid, String group, int gid) throws IOException {
         // Debian packages must have parent directories created
         // before sub-directories or files can be installed.
         // For example, if an entry of ./usr/lib/foo/bar existed
@@ -146,16 +206,17 @@ public class DefaultDataConsumer implements DataConsumer {
         // exist, the package installation would fail.  The .deb must
         // then have an entry for ./usr/lib/foo and then ./usr/lib/foo/bar
 
-        if (dirname == null) {
-          return;
-        }
-
-        // The loop below will create entries for all parent directories
-        // to ensure that .deb packages will install correctly.
-        String[] pathParts = dirname.split("\\/");
-        String parentDir = "./";
-        for (int i = 1; i < pathParts.length; i++) {
-            parentDir += pathParts[i] + "/";
+        // The index knows which parents already exist, the ones
+        // below those get created to ensure that .deb packages
+        // will install correctly.
+        final int existing = index.addParents(path);
+        final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+
+        for (int slash = path.indexOf('/', existing); slash != -1 && slash < end; slash = path.indexOf('/', slash + 1)) {
+            if (slash == existing) {
+                continue;
+            }
+            final String parentDir = path.substring(0, slash + 1);
             // Make it so the dirs can be traversed by users.
             // We could instead try something more granular, like setting the directory
             // permission to 'rx' for each of the 3 user/group/other read permissions
@@ -173,7 +234,7 @@ public class DefaultDataConsumer implements DataConsumer {
             // drwxr-xr-x fs/fs   # Usable. Too loose?
             int mode = TarEntry.DEFAULT_DIR_MODE;
 
-            createDirectory(parentDir, user, uid, group, gid, mode, 0);
+            createDirectoryEntry(parentDir, user, uid, group, gid, mode, 0);
         }
     }
 
@@ -0,0 +1,96 @@
+package org.vafer.jdeb.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Connects two stages of the data pipeline. A failure of the receiving
+ * stage is reported back to the sending one on the next put. The receiving
+ * stage keeps taking (and discarding) items after a failure so the sending
+ * stage never blocks forever.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class Pipe<T> {
+
+    private final BlockingQueue<T> queue;
+    private volatile Throwable failure;
+
+    Pipe( final int pCapacity ) {
+        queue = new ArrayBlockingQueue<T>(pCapacity);
+    }
+
+    void put( final T pItem ) throws IOException {
+        check();
+        putQuietly(pItem);
+    }
+
+    /**
+     * Put an item even if the receiving stage failed, used for the end of the stream.
+     */
+    void putQuietly( final T pItem ) throws IOException {
+        try {
+            queue.put(pItem);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while passing data between stages");
+        }
+    }
+
+    T take() throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data");
+        }
+    }
+
+    void fail( final Throwable pFailure ) {
+        if (failure == null) {
+            failure = pFailure;
+        }
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Rethrow the failure of the receiving stage in the sending one.
+     */
+    void check() throws IOException {
+        final Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IOException("Failed to build the data archive", t);
+    }
+
+    static void join( final Thread pThread ) throws IOException {
+        try {
+            pThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + pThread.getName());
+        }
+    }
+
+    static Thread start( final Runnable pRunnable, final String pName ) {
+        final Thread thread = new Thread(pRunnable, pName);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,242 @@
+package org.vafer.jdeb.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.vafer.jdeb.DataConsumer;
+
+/**
+ * Decouples reading the files from archiving them. The producers call this
+ * consumer on their thread, which reads the file content into pooled buffers.
+ * The entries and buffers are replayed in the same order into the wrapped
+ * consumer on a thread of its own.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class PipelinedDataConsumer implements DataConsumer {
+
+    private static final int DIR = 0;
+    private static final int FILE = 1;
+    private static final int CHUNK = 2;
+    private static final int END_OF_FILE = 3;
+    private static final int END = 4;
+
+    private final DataConsumer consumer;
+    private final BufferPool pool;
+    private final Pipe<Item> pipe;
+    private final Thread thread;
+    private boolean finished;
+    private boolean ended;
+
+    private static final class Item {
+
+        private final int type;
+        private String name;
+        private String linkname;
+        private String user;
+        private int uid;
+        private String group;
+        private int gid;
+        private int mode;
+        private long size;
+        private byte[] data;
+        private int length;
+
+        private Item( final int pType ) {
+            type = pType;
+        }
+    }
+
+    PipelinedDataConsumer( final DataConsumer pConsumer, final int pBuffers, final int pBufferSize, final String pName ) {
+        consumer = pConsumer;
+        pool = new BufferPool(pBuffers, pBufferSize);
+        // besides the buffers there are the entries, the queue only needs to be large enough for a few of them
+        pipe = new Pipe<Item>(pBuffers * 2);
+        thread = Pipe.start(new Runnable() {
+            public void run() {
+                replay();
+            }
+        }, pName);
+    }
+
+    private static Item createEntry( final int pType, final String pName, final String pLinkname, final String pUser, final int pUid, final String pGroup, final int pGid, final int pMode, final long pSize ) {
+        final Item item = new Item(pType);
+        item.name = pName;
+        item.linkname = pLinkname;
+        item.user = pUser;
+        item.uid = pUid;
+        item.group = pGroup;
+        item.gid = pGid;
+        item.mode = pMode;
+        item.size = pSize;
+        return item;
+    }
+
+    public void onEachDir( final String dirname, final String linkname, final String user, final int uid, final String group, final int gid, final int mode, final long size ) throws IOException {
+        pipe.put(createEntry(DIR, dirname, linkname, user, uid, group, gid, mode, size));
+    }
+
+    public void onEachFile( final InputStream input, final String filename, final String linkname, final String user, final int uid, final String group, final int gid, final int mode, final long size ) throws IOException {
+        pipe.put(createEntry(FILE, filename, linkname, user, uid, group, gid, mode, size));
+
+        while (true) {
+            final byte[] buffer = pool.take();
+            final int length = readFully(input, buffer);
+            if (length > 0) {
+                final Item chunk = new Item(CHUNK);
+                chunk.data = buffer;
+                chunk.length = length;
+                pipe.put(chunk);
+            } else {
+                pool.release(buffer);
+            }
+            if (length < buffer.length) {
+                break;
+            }
+        }
+
+        pipe.put(new Item(END_OF_FILE));
+    }
+
+    private static int readFully( final InputStream pInput, final byte[] pBuffer ) throws IOException {
+        int length = 0;
+        while (length < pBuffer.length) {
+            final int n = pInput.read(pBuffer, length, pBuffer.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * Wait until all entries have been passed on to the wrapped consumer.
+     */
+    void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            pipe.putQuietly(new Item(END));
+            Pipe.join(thread);
+        }
+        pipe.check();
+    }
+
+    /**
+     * Stop passing on the entries.
+     */
+    void abort() throws IOException {
+        pipe.fail(new IOException("Aborted"));
+        if (!finished) {
+            finished = true;
+            pipe.putQuietly(new Item(END));
+            Pipe.join(thread);
+        }
+    }
+
+    private void replay() {
+        try {
+            while (!ended) {
+                final Item item = pipe.take();
+
+                if (item.type == END) {
+                    break;
+                }
+
+                if (pipe.isFailed()) {
+                    if (item.data != null) {
+                        pool.release(item.data);
+                    }
+                    continue;
+                }
+
+                try {
+                    if (item.type == DIR) {
+                        consumer.onEachDir(item.name, item.linkname, item.user, item.uid, item.group, item.gid, item.mode, item.size);
+                    } else if (item.type == FILE) {
+                        final ChunkInputStream input = new ChunkInputStream();
+                        try {
+                            consumer.onEachFile(input, item.name, item.linkname, item.user, item.uid, item.group, item.gid, item.mode, item.size);
+                        } finally {
+                            input.skipRemaining();
+                        }
+                    }
+                } catch (Throwable t) {
+                    pipe.fail(t);
+                }
+            }
+        } catch (Throwable t) {
+            pipe.fail(t);
+        }
+    }
+
+    /**
+     * The content of the current file, read from the chunks in the pipe.
+     * The end of the stream before the end of the file means the producer
+     * failed, it gets reported as an IOException like a failure of the pipe.
+     */
+    private final class ChunkInputStream extends InputStream {
+
+        private Item chunk;
+        private int position;
+        private boolean eof;
+
+        private boolean next() throws IOException {
+            while (!eof && (chunk == null || position == chunk.length)) {
+                if (chunk != null) {
+                    pool.release(chunk.data);
+                    chunk = null;
+                }
+                final Item item = pipe.take();
+                if (item.type == END_OF_FILE) {
+                    eof = true;
+                } else if (item.type == END) {
+                    // the producer failed within the file, there is nothing left for the replay either
+                    ended = true;
+                    eof = true;
+                } else {
+                    chunk = item;
+                    position = 0;
+                }
+            }
+            return !eof;
+        }
+
+        private boolean hasMore() throws IOException {
+            if (pipe.isFailed()) {
+                throw new IOException("Aborted");
+            }
+            final boolean more = next();
+            if (ended) {
+                throw new IOException("Aborted");
+            }
+            return more;
+        }
+
+        public int read() throws IOException {
+            if (!hasMore()) {
+                return -1;
+            }
+            return chunk.data[position++] & 0xff;
+        }
+
+        public int read( final byte[] b, final int off, final int len ) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!hasMore()) {
+                return -1;
+            }
+            final int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk.data, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private void skipRemaining() throws IOException {
+            while (next()) {
+                position = chunk.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.vafer.jdeb.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Measures the time spent in the wrapped stream and counts the bytes
+ * written to it. Used to tell the time of a stage of the data pipeline
+ * from the time of the whole build of the data archive.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class TimingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private long nanos;
+    private long count;
+
+    TimingOutputStream( final OutputStream pOut ) {
+        out = pOut;
+    }
+
+    public void write( final int b ) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            out.write(b);
+            count++;
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    public void write( final byte[] b, final int off, final int len ) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            out.write(b, off, len);
+            count += len;
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    public void flush() throws IOException {
+        final long start = System.nanoTime();
+        try {
+            out.flush();
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    public void close() throws IOException {
+        final long start = System.nanoTime();
+        try {
+            out.close();
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return the nanoseconds spent writing, flushing and closing
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    long getCount() {
+        return count;
+    }
+}
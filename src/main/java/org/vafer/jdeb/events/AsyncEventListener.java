@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Passes the events on to the wrapped listener on a thread of its own, so
+ * formatting and logging the messages does not slow down the packaging.
+ * The events are passed on in the order they were received. Closing waits
+ * until all events have been passed on.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class AsyncEventListener implements EventListener {
+
+    private static final Event END = new Event(Level.DEBUG, "");
+
+    private final EventListener listener;
+    private final BlockingQueue<Event> queue;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    public AsyncEventListener( final EventListener pListener ) {
+        this(pListener, 1024);
+    }
+
+    /**
+     * @param pListener the listener to pass the events on to
+     * @param pCapacity the number of events that may be pending before the sender has to wait
+     */
+    public AsyncEventListener( final EventListener pListener, final int pCapacity ) {
+        listener = pListener;
+        queue = new ArrayBlockingQueue<Event>(pCapacity);
+        thread = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "jdeb-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void drain() {
+        while (true) {
+            final Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (event == END) {
+                return;
+            }
+
+            if (failure != null) {
+                // keep draining so the sender does not block
+                continue;
+            }
+
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    public boolean isEnabled( final Level pLevel ) {
+        return !closed && listener.isEnabled(pLevel);
+    }
+
+    public void onEvent( final Event pEvent ) {
+        if (closed) {
+            return;
+        }
+        try {
+            queue.put(pEvent);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until all pending events have been passed on. Once the wrapped
+     * listener failed no further events are passed on to it, the failure
+     * gets rethrown here.
+     *
+     * @throws RuntimeException the first exception thrown by the wrapped listener
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Wait until all pending events have been passed on, for when the
+     * packaging failed already. The failure of the wrapped listener does
+     * not replace the one of the packaging but gets added to it as
+     * suppressed exception.
+     *
+     * @param pPrimary the exception the packaging failed with
+     */
+    public void close( final Throwable pPrimary ) {
+        try {
+            close();
+        } catch (RuntimeException e) {
+            pPrimary.addSuppressed(e);
+        }
+    }
+}
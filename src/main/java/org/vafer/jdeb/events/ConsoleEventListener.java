@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import org.vafer.jdeb.Console;
+
+/**
+ * Prints the messages of the events from a level on to a Console.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ConsoleEventListener implements EventListener {
+
+    private final Console console;
+    private final Level level;
+
+    public ConsoleEventListener( final Console pConsole, final Level pLevel ) {
+        console = pConsole;
+        level = pLevel;
+    }
+
+    public boolean isEnabled( final Level pLevel ) {
+        return level.includes(pLevel);
+    }
+
+    public void onEvent( final Event pEvent ) {
+        if (isEnabled(pEvent.getLevel())) {
+            console.println(pEvent.getMessage());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+/**
+ * Something that happened while packaging. The message is only formatted
+ * when somebody asks for it, subclasses override {@link #createMessage()}
+ * to format it lazily from values that do not change anymore.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public class Event {
+
+    /** a plain message */
+    public static final String MESSAGE = "message";
+
+    /** a directory got added to the data archive, the size is 0 */
+    public static final String DIRECTORY = "directory";
+
+    /** a file got added to the data archive */
+    public static final String FILE = "file";
+
+    private final Level level;
+    private final String type;
+    private final String name;
+    private final long size;
+    private String message;
+
+    public Event( final Level pLevel, final String pMessage ) {
+        this(pLevel, MESSAGE, null, 0);
+        message = pMessage;
+    }
+
+    public Event( final Level pLevel, final String pType, final String pName, final long pSize ) {
+        level = pLevel;
+        type = pType;
+        name = pName;
+        size = pSize;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the name of the directory or file in the archive
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public final String getMessage() {
+        if (message == null) {
+            message = createMessage();
+        }
+        return message;
+    }
+
+    protected String createMessage() {
+        return type + ": " + name;
+    }
+
+    public String toString() {
+        return level + " " + getMessage();
+    }
+}
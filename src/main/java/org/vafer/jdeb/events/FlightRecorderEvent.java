@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A type of Java Flight Recorder event. The events get defined at runtime
+ * through jdk.jfr.EventFactory, so jdeb still runs on JVMs without JFR.
+ * There all events are ignored. While nobody records the events a span is
+ * a shared no-op instance, so the instrumented code does not allocate.
+ *
+ * Every event has the fields "name" and "bytes". The events of entries are
+ * only committed for entries that are bigger or take longer than the
+ * thresholds set with the system properties "jdeb.jfr.entryBytes" and
+ * "jdeb.jfr.entryMillis".
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class FlightRecorderEvent {
+
+    public static final long DEFAULT_ENTRY_BYTES = 8 * 1024 * 1024;
+    public static final long DEFAULT_ENTRY_MILLIS = 100;
+
+    // initialized before the event types below
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private static Method newEvent;
+    private static Method isEnabled;
+    private static Method begin;
+    private static Method end;
+    private static Method set;
+    private static Method commit;
+
+    /** a phase of the build, like building the data or control archive */
+    public static final FlightRecorderEvent PHASE = new FlightRecorderEvent("org.vafer.jdeb.Phase", "Packaging Phase", "A phase of building a deb", 0, 0);
+
+    /** the time it took to archive the entries of a data producer */
+    public static final FlightRecorderEvent PRODUCER = new FlightRecorderEvent("org.vafer.jdeb.Producer", "Data Producer", "Archiving the entries of a data producer", 0, 0);
+
+    /** an entry of the data or control archive above the thresholds */
+    public static final FlightRecorderEvent ENTRY = new FlightRecorderEvent("org.vafer.jdeb.Entry", "Archive Entry", "Archiving an entry that is big or slow",
+        Long.getLong("jdeb.jfr.entryBytes", DEFAULT_ENTRY_BYTES),
+        Long.getLong("jdeb.jfr.entryMillis", DEFAULT_ENTRY_MILLIS) * 1000000L);
+
+    private final Object factory;
+    private final Object probe;
+    private final long minBytes;
+    private final long minNanos;
+
+    /**
+     * An event in progress.
+     */
+    public static final class Span {
+
+        private static final Span NONE = new Span(null, null, 0);
+
+        private final FlightRecorderEvent type;
+        private final Object event;
+        private final long start;
+
+        private Span( final FlightRecorderEvent pType, final Object pEvent, final long pStart ) {
+            type = pType;
+            event = pEvent;
+            start = pStart;
+        }
+
+        /**
+         * Commit the event, unless it is below the thresholds of its type.
+         *
+         * @param pBytes the number of bytes processed
+         */
+        public void end( final long pBytes ) {
+            if (event == null) {
+                return;
+            }
+            if (pBytes < type.minBytes && System.nanoTime() - start < type.minNanos) {
+                return;
+            }
+            try {
+                set.invoke(event, 1, pBytes);
+                end.invoke(event, NO_ARGUMENTS);
+                commit.invoke(event, NO_ARGUMENTS);
+            } catch (Exception e) {
+                // recording is best effort
+            }
+        }
+    }
+
+    private FlightRecorderEvent( final String pName, final String pLabel, final String pDescription, final long pMinBytes, final long pMinNanos ) {
+        minBytes = pMinBytes;
+        minNanos = pMinNanos;
+
+        Object eventFactory = null;
+        Object eventProbe = null;
+        try {
+            eventFactory = createFactory(pName, pLabel, pDescription);
+            eventProbe = newEvent.invoke(eventFactory, NO_ARGUMENTS);
+        } catch (Throwable t) {
+            // no JFR on this JVM
+            eventFactory = null;
+            eventProbe = null;
+        }
+        factory = eventFactory;
+        probe = eventProbe;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object createFactory( final String pName, final String pLabel, final String pDescription ) throws Exception {
+        final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        final Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+        final Class<?> valueClass = Class.forName("jdk.jfr.ValueDescriptor");
+
+        final Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+        final List<Object> annotations = new ArrayList<Object>();
+        annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Name"), pName));
+        annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Label"), pLabel));
+        annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Description"), pDescription));
+        annotations.add(annotation.newInstance((Class<? extends Annotation>) Class.forName("jdk.jfr.Category"), new String[] { "jdeb" }));
+
+        final Constructor<?> value = valueClass.getConstructor(Class.class, String.class);
+        final List<Object> fields = new ArrayList<Object>();
+        fields.add(value.newInstance(String.class, "name"));
+        fields.add(value.newInstance(long.class, "bytes"));
+
+        final Object eventFactory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+
+        synchronized (FlightRecorderEvent.class) {
+            newEvent = factoryClass.getMethod("newEvent");
+            isEnabled = eventClass.getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+        }
+
+        return eventFactory;
+    }
+
+    /**
+     * @return whether the events of this type are being recorded
+     */
+    public boolean isEnabled() {
+        if (probe == null) {
+            return false;
+        }
+        try {
+            return (Boolean) isEnabled.invoke(probe, NO_ARGUMENTS);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Start an event, it is committed when the span ends.
+     *
+     * @param pName what the event is about
+     * @return the span of the event, a no-op if the events are not recorded
+     */
+    public Span begin( final String pName ) {
+        if (!isEnabled()) {
+            return Span.NONE;
+        }
+        try {
+            final Object event = newEvent.invoke(factory, NO_ARGUMENTS);
+            set.invoke(event, 0, pName);
+            begin.invoke(event, NO_ARGUMENTS);
+            return new Span(this, event, System.nanoTime());
+        } catch (Exception e) {
+            return Span.NONE;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sums up the directory and file events instead of passing every single
+ * one on. They are only passed on when the wrapped listener wants DEBUG
+ * events, all other events are always passed on. The summary with the
+ * counts, the bytes and the largest files gets sent by {@link #summarize()}.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class SummarizingEventListener implements EventListener {
+
+    public static final int DEFAULT_LARGEST = 10;
+
+    private static final Comparator<Event> BY_SIZE = new Comparator<Event>() {
+        public int compare( final Event a, final Event b ) {
+            if (a.getSize() != b.getSize()) {
+                return a.getSize() < b.getSize() ? -1 : 1;
+            }
+            return b.getName().compareTo(a.getName());
+        }
+    };
+
+    private final EventListener listener;
+    private final int largest;
+    private final PriorityQueue<Event> largestFiles;
+
+    private long directories;
+    private long files;
+    private long bytes;
+    private long warnings;
+
+    public SummarizingEventListener( final EventListener pListener ) {
+        this(pListener, DEFAULT_LARGEST);
+    }
+
+    /**
+     * @param pListener the listener to pass the summary on to
+     * @param pLargest the number of largest files to list
+     */
+    public SummarizingEventListener( final EventListener pListener, final int pLargest ) {
+        listener = pListener;
+        largest = pLargest;
+        largestFiles = new PriorityQueue<Event>(pLargest + 1, BY_SIZE);
+    }
+
+    public boolean isEnabled( final Level pLevel ) {
+        return listener.isEnabled(pLevel);
+    }
+
+    public void onEvent( final Event pEvent ) {
+        final String type = pEvent.getType();
+
+        if (Event.FILE.equals(type)) {
+            addFile(pEvent.getName(), pEvent.getSize());
+        } else if (Event.DIRECTORY.equals(type)) {
+            addDirectory();
+        } else if (pEvent.getLevel() == Level.WARN) {
+            warnings++;
+        }
+
+        if (listener.isEnabled(pEvent.getLevel())) {
+            listener.onEvent(pEvent);
+        }
+    }
+
+    /**
+     * Count a file without an event, for when the wrapped listener does
+     * not want the DEBUG events anyway.
+     */
+    public void addFile( final String pName, final long pSize ) {
+        files++;
+        bytes += pSize;
+        if (largest > 0 && (largestFiles.size() < largest || isLarger(pName, pSize, largestFiles.peek()))) {
+            largestFiles.add(new Event(Level.INFO, Event.FILE, pName, pSize));
+            if (largestFiles.size() > largest) {
+                largestFiles.poll();
+            }
+        }
+    }
+
+    private static boolean isLarger( final String pName, final long pSize, final Event pFile ) {
+        if (pSize != pFile.getSize()) {
+            return pSize > pFile.getSize();
+        }
+        return pFile.getName().compareTo(pName) > 0;
+    }
+
+    /**
+     * Count a directory without an event.
+     */
+    public void addDirectory() {
+        directories++;
+    }
+
+    public long getDirectories() {
+        return directories;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the largest files, the largest first
+     */
+    public List<Event> getLargestFiles() {
+        final List<Event> result = new ArrayList<Event>(largestFiles);
+        Collections.sort(result, Collections.reverseOrder(BY_SIZE));
+        return result;
+    }
+
+    /**
+     * Send the summary as INFO events.
+     */
+    public void summarize() {
+        if (!listener.isEnabled(Level.INFO)) {
+            return;
+        }
+
+        listener.onEvent(new Event(Level.INFO, "Archived " + files + " files with " + bytes + " bytes in " + directories + " directories"));
+
+        if (warnings > 0) {
+            listener.onEvent(new Event(Level.INFO, warnings + " warnings"));
+        }
+
+        final List<Event> largestFiles = getLargestFiles();
+        if (!largestFiles.isEmpty()) {
+            listener.onEvent(new Event(Level.INFO, "Largest files:"));
+            for (Event file : largestFiles) {
+                listener.onEvent(new Event(Level.INFO, "  " + file.getSize() + " " + file.getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * A run of consecutive {@link PrefixMapper}s and {@link PermMapper}s applied
+ * in one go. The names are still stripped and prefixed one after the other,
+ * but the ownerships get set only once and the mode of an entry is taken
+ * from the last mapper that has one for it.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class FusedPermMapper implements EntryMapper {
+
+    private int[] strips = new int[2];
+    private String[] prefixes = new String[2];
+    private int[] fileModes = new int[2];
+    private int[] dirModes = new int[2];
+    private int size;
+
+    private int uid = -1;
+    private int gid = -1;
+    private String user;
+    private String group;
+
+    void add( final int pStrip, final String pPrefix, final int pUid, final int pGid, final String pUser, final String pGroup, final int pFileMode, final int pDirMode ) {
+        if (size == strips.length) {
+            final int length = size * 2;
+            final int[] newStrips = new int[length];
+            final String[] newPrefixes = new String[length];
+            final int[] newFileModes = new int[length];
+            final int[] newDirModes = new int[length];
+            System.arraycopy(strips, 0, newStrips, 0, size);
+            System.arraycopy(prefixes, 0, newPrefixes, 0, size);
+            System.arraycopy(fileModes, 0, newFileModes, 0, size);
+            System.arraycopy(dirModes, 0, newDirModes, 0, size);
+            strips = newStrips;
+            prefixes = newPrefixes;
+            fileModes = newFileModes;
+            dirModes = newDirModes;
+        }
+
+        strips[size] = pStrip;
+        prefixes[size] = pPrefix;
+        fileModes[size] = pFileMode;
+        dirModes[size] = pDirMode;
+        size++;
+
+        // a later mapper overrides the ownerships of an earlier one
+        if (pUid > -1) {
+            uid = pUid;
+        }
+        if (pGid > -1) {
+            gid = pGid;
+        }
+        if (pUser != null) {
+            user = pUser;
+        }
+        if (pGroup != null) {
+            group = pGroup;
+        }
+    }
+
+    public void map( final MutableEntry pEntry ) {
+        String name = pEntry.getName();
+        int mode = pEntry.getMode();
+
+        for (int i = 0; i < size; i++) {
+            name = prefixes[i] + '/' + Utils.stripPath(strips[i], name);
+
+            // whether the entry is a directory depends on the name at this step
+            final int newMode = name.endsWith("/") ? dirModes[i] : fileModes[i];
+            if (newMode > -1) {
+                mode = newMode;
+            }
+        }
+
+        pEntry.setName(name);
+        pEntry.setMode(mode);
+
+        if (uid > -1) {
+            pEntry.setUserId(uid);
+        }
+        if (gid > -1) {
+            pEntry.setGroupId(gid);
+        }
+        if (user != null) {
+            pEntry.setUserName(user);
+        }
+        if (group != null) {
+            pEntry.setGroupName(group);
+        }
+    }
+}
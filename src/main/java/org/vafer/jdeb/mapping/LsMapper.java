@@ -32,9 +32,26 @@ import org.apache.tools.tar.TarEntry;
  *
  * @author Torsten Curdt <tcurdt@vafer.org>
  */
-public final class LsMapper implements Mapper {
+public final class LsMapper implements Mapper, EntryMapper {
 
-    private final Map<String, TarEntry> mapping;
+    /**
+     * Only the attributes the listing provides are kept, a full TarEntry
+     * per line would make the mapping of big listings take a lot of heap.
+     */
+    private static final class Attributes {
+
+        private final int mode;
+        private final String user;
+        private final String group;
+
+        private Attributes( final int pMode, final String pUser, final String pGroup ) {
+            mode = pMode;
+            user = pUser;
+            group = pGroup;
+        }
+    }
+
+    private final Map<String, Attributes> mapping;
 
 
     public final static class ParseError extends Exception {
@@ -189,8 +206,10 @@ drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes
 
     }
 
-    private Map<String, TarEntry> parse( final InputStream pInput ) throws IOException, ParseError {
-        final Map<String, TarEntry> mapping = new HashMap<String, TarEntry>();
+    private Map<String, Attributes> parse( final InputStream pInput ) throws IOException, ParseError {
+        final Map<String, Attributes> mapping = new HashMap<String, Attributes>();
+        // the listing repeats the same few owners on every line
+        final Map<String, String> names = new HashMap<String, String>();
 
         final BufferedReader reader = new BufferedReader(new InputStreamReader(pInput));
 
@@ -210,7 +229,7 @@ drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes
 
             readTotal(reader);
             final TarEntry dir = readDir(reader, base);
-            mapping.put(dir.getName(), dir);
+            mapping.put(dir.getName(), toAttributes(dir, names));
 
             while(true) {
                 final TarEntry file = readFile(reader, base);
@@ -219,31 +238,50 @@ drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes
                     break;
                 }
 
-                mapping.put(file.getName(), file);
+                mapping.put(file.getName(), toAttributes(file, names));
             }
         }
 
         return mapping;
     }
 
-    public TarEntry map( final TarEntry pEntry ) {
-
-        final TarEntry entry = mapping.get(pEntry.getName());
+    private static Attributes toAttributes( final TarEntry pEntry, final Map<String, String> pNames ) {
+        return new Attributes(pEntry.getMode(), share(pEntry.getUserName(), pNames), share(pEntry.getGroupName(), pNames));
+    }
 
-        if (entry != null) {
+    private static String share( final String pName, final Map<String, String> pNames ) {
+        final String name = pNames.get(pName);
+        if (name != null) {
+            return name;
+        }
+        pNames.put(pName, pName);
+        return pName;
+    }
 
-            final TarEntry newEntry = new TarEntry(entry.getName());
-            newEntry.setUserId(entry.getUserId());
-            newEntry.setGroupId(entry.getGroupId());
-            newEntry.setUserName(entry.getUserName());
-            newEntry.setGroupName(entry.getGroupName());
-            newEntry.setMode(entry.getMode());
-            newEntry.setSize(entry.getSize());
+    public TarEntry map( final TarEntry pEntry ) {
 
-            return newEntry;
+        if (mapping.containsKey(pEntry.getName())) {
+            final MutableEntry entry = new MutableEntry(pEntry);
+            map(entry);
+            return entry.toTarEntry();
         }
 
         return pEntry;
     }
 
+    public void map( final MutableEntry pEntry ) {
+
+        final Attributes attributes = mapping.get(pEntry.getName());
+
+        if (attributes != null) {
+            // the listing does not provide ids and sizes, they used to come from a fresh entry
+            pEntry.setUserId(0);
+            pEntry.setGroupId(0);
+            pEntry.setUserName(attributes.user);
+            pEntry.setGroupName(attributes.group);
+            pEntry.setMode(attributes.mode);
+            pEntry.setSize(0);
+        }
+    }
+
 }
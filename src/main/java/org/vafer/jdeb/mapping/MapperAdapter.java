@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+/**
+ * Runs a {@link Mapper} as an {@link EntryMapper}, converting the entry to
+ * a TarEntry and back.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class MapperAdapter implements EntryMapper {
+
+    private final Mapper mapper;
+
+    public MapperAdapter( final Mapper pMapper ) {
+        mapper = pMapper;
+    }
+
+    public void map( final MutableEntry pEntry ) {
+        final String linkName = pEntry.getLinkName();
+        pEntry.setFrom(mapper.map(pEntry.toTarEntry()));
+        // a TarEntry has no way to carry the link name
+        pEntry.setLinkName(linkName);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a list of mappers to an entry in place. Mappers that are not
+ * {@link EntryMapper}s themselves get wrapped with a {@link MapperAdapter}.
+ * Consecutive {@link PrefixMapper}s and {@link PermMapper}s are fused into
+ * a single step and {@link NullMapper}s are dropped.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class MapperChain implements EntryMapper {
+
+    private final EntryMapper[] mappers;
+
+    public MapperChain( final Mapper[] pMappers ) {
+        final List<EntryMapper> chain = new ArrayList<EntryMapper>();
+
+        if (pMappers != null) {
+            FusedPermMapper fused = null;
+            for (int i = 0; i < pMappers.length; i++) {
+                final Mapper mapper = pMappers[i];
+
+                if (mapper instanceof NullMapper) {
+                    continue;
+                }
+
+                // subclasses might change what map does, so only the mappers of jdeb get fused
+                if (mapper.getClass() == PrefixMapper.class || mapper.getClass() == PermMapper.class) {
+                    if (fused == null) {
+                        fused = new FusedPermMapper();
+                        chain.add(fused);
+                    }
+                    ((PrefixMapper) mapper).addTo(fused);
+                    continue;
+                }
+
+                fused = null;
+
+                // a subclass of the PrefixMapper might only override the map of the TarEntry
+                if (mapper instanceof EntryMapper && !(mapper instanceof PrefixMapper)) {
+                    chain.add((EntryMapper) mapper);
+                } else {
+                    chain.add(new MapperAdapter(mapper));
+                }
+            }
+        }
+
+        mappers = chain.toArray(new EntryMapper[chain.size()]);
+    }
+
+    /**
+     * @return whether the chain leaves every entry as it is
+     */
+    public boolean isEmpty() {
+        return mappers.length == 0;
+    }
+
+    public void map( final MutableEntry pEntry ) {
+        for (int i = 0; i < mappers.length; i++) {
+            mappers[i].map(pEntry);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import org.apache.tools.tar.TarEntry;
+
+/**
+ * The attributes of an entry of the data archive that get changed by the
+ * {@link EntryMapper}s in place. A producer can reuse one instance for all
+ * of its entries, so mapping does not need a new TarEntry per mapper.
+ *
+ * Like a TarEntry created from a name, the entry is a directory if its
+ * name ends with a slash.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class MutableEntry {
+
+    private String name = "";
+    private String linkName = "";
+    private String userName = "";
+    private int userId;
+    private String groupName = "";
+    private int groupId;
+    private int mode;
+    private long size;
+
+    public MutableEntry() {
+    }
+
+    public MutableEntry( final TarEntry pEntry ) {
+        setFrom(pEntry);
+    }
+
+    /**
+     * Replace all attributes.
+     */
+    public void set( final String pName, final String pLinkName, final String pUserName, final int pUserId, final String pGroupName, final int pGroupId, final int pMode, final long pSize ) {
+        name = pName;
+        linkName = pLinkName;
+        userName = pUserName;
+        userId = pUserId;
+        groupName = pGroupName;
+        groupId = pGroupId;
+        mode = pMode;
+        size = pSize;
+    }
+
+    /**
+     * Replace all attributes with the ones of the tar entry.
+     */
+    public void setFrom( final TarEntry pEntry ) {
+        set(pEntry.getName(), pEntry.getLinkName(), pEntry.getUserName(), pEntry.getUserId(), pEntry.getGroupName(), pEntry.getGroupId(), pEntry.getMode(), pEntry.getSize());
+    }
+
+    /**
+     * @return a new tar entry with the attributes, the link name cannot be carried over
+     */
+    public TarEntry toTarEntry() {
+        final TarEntry entry = new TarEntry(name);
+        entry.setUserId(userId);
+        entry.setUserName(userName);
+        entry.setGroupId(groupId);
+        entry.setGroupName(groupName);
+        entry.setMode(mode);
+        entry.setSize(size);
+        return entry;
+    }
+
+    public boolean isDirectory() {
+        return name.endsWith("/");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName( final String pName ) {
+        name = pName;
+    }
+
+    public String getLinkName() {
+        return linkName;
+    }
+
+    public void setLinkName( final String pLinkName ) {
+        linkName = pLinkName;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public void setUserName( final String pUserName ) {
+        userName = pUserName;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId( final int pUserId ) {
+        userId = pUserId;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public void setGroupName( final String pGroupName ) {
+        groupName = pGroupName;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId( final int pGroupId ) {
+        groupId = pGroupId;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public void setMode( final int pMode ) {
+        mode = pMode;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize( final long pSize ) {
+        size = pSize;
+    }
+}
@@ -17,10 +17,13 @@ package org.vafer.jdeb.mapping;
 
 import org.apache.tools.tar.TarEntry;
 
-public final class NullMapper implements Mapper {
+public final class NullMapper implements Mapper, EntryMapper {
 
     public TarEntry map( final TarEntry pEntry ) {
         return pEntry;
     }
 
+    public void map( final MutableEntry pEntry ) {
+    }
+
 }
@@ -59,50 +59,41 @@ public final class PermMapper extends PrefixMapper {
     }
 
     public TarEntry map(final TarEntry entry) {
-        final String name = entry.getName();
+        final MutableEntry newEntry = new MutableEntry(entry);
+        map(newEntry);
+        return newEntry.toTarEntry();
+    }
 
-        final TarEntry newEntry = new TarEntry(prefix + '/' + Utils.stripPath(strip, name));
+    public void map(final MutableEntry entry) {
+        entry.setName(prefix + '/' + Utils.stripPath(strip, entry.getName()));
 
         // Set ownership
         if (uid > -1) {
-            newEntry.setUserId(uid);
-        } else {
-            newEntry.setUserId(entry.getUserId());
+            entry.setUserId(uid);
         }
         if (gid > -1) {
-            newEntry.setGroupId(gid);
-        } else {
-            newEntry.setGroupId(entry.getGroupId());
+            entry.setGroupId(gid);
         }
         if (user != null) {
-            newEntry.setUserName(user);
-        } else {
-            newEntry.setUserName(entry.getUserName());
+            entry.setUserName(user);
         }
         if (group != null) {
-            newEntry.setGroupName(group);
-        } else {
-            newEntry.setGroupName(entry.getGroupName());
+            entry.setGroupName(group);
         }
 
         // Set permissions
-        if (newEntry.isDirectory()) {
+        if (entry.isDirectory()) {
             if (dirMode > -1) {
-                newEntry.setMode(dirMode);
-            } else {
-                newEntry.setMode(entry.getMode());
+                entry.setMode(dirMode);
             }
         } else {
             if (fileMode > -1) {
-                newEntry.setMode(fileMode);
-            } else {
-                newEntry.setMode(entry.getMode());
-
+                entry.setMode(fileMode);
             }
         }
+    }
 
-        newEntry.setSize(entry.getSize());
-
-        return newEntry;
+    void addTo(final FusedPermMapper mapper) {
+        mapper.add(strip, prefix, uid, gid, user, group, fileMode, dirMode);
     }
 }
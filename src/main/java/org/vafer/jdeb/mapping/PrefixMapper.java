@@ -23,7 +23,7 @@ import org.vafer.jdeb.utils.Utils;
  *
  * @author Torsten Curdt <tcurdt@vafer.org>
  */
-public class PrefixMapper implements Mapper {
+public class PrefixMapper implements Mapper, EntryMapper {
 
     protected final int strip;
     protected final String prefix;
@@ -34,19 +34,17 @@ public class PrefixMapper implements Mapper {
     }
 
     public TarEntry map( final TarEntry pEntry ) {
+        final MutableEntry entry = new MutableEntry(pEntry);
+        map(entry);
+        return entry.toTarEntry();
+    }
 
-        final String name = pEntry.getName();
-
-        final TarEntry newEntry = new TarEntry(prefix + '/' + Utils.stripPath(strip, name));
-
-        newEntry.setUserId(pEntry.getUserId());
-        newEntry.setGroupId(pEntry.getGroupId());
-        newEntry.setUserName(pEntry.getUserName());
-        newEntry.setGroupName(pEntry.getGroupName());
-        newEntry.setMode(pEntry.getMode());
-        newEntry.setSize(pEntry.getSize());
+    public void map( final MutableEntry pEntry ) {
+        pEntry.setName(prefix + '/' + Utils.stripPath(strip, pEntry.getName()));
+    }
 
-        return newEntry;
+    void addTo( final FusedPermMapper pMapper ) {
+        pMapper.add(strip, prefix, -1, -1, null, null, -1, -1);
     }
 
 }
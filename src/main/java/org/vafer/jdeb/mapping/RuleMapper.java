@@ -0,0 +1,270 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.tools.tar.TarEntry;
+import org.vafer.jdeb.producers.PatternMatcher;
+
+/**
+ * Sets the mode and the ownership of the entries matching a pattern, one
+ * rule per line:
+ *
+ * <pre>
+ * # pattern       mode  owner
+ * bin/**          0755  root:root
+ * etc/**&#47;*.conf   0640  app:app
+ * var/lib/app/    0750  app:app
+ * usr/share/**    -     root
+ * </pre>
+ *
+ * The patterns are Ant patterns matched against the name of the entry,
+ * without a leading slash. A pattern ending with a slash only applies to
+ * directories. The mode is octal, "-" keeps the mode. The owner is a user
+ * and optionally a group, each either a name or a numeric id, "-" keeps it.
+ * Like with the LsMapper a name resets the id to 0.
+ *
+ * If several rules match an entry the most specific one wins: the one with
+ * more literal components, then the one with more wildcard components, then
+ * the one with fewer "**". Of equally specific rules the later one wins.
+ *
+ * All rules get compiled into a single automaton over the components of the
+ * name, so looking up the rule of an entry only depends on the length of its
+ * name and not on the number of rules.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class RuleMapper implements Mapper, EntryMapper {
+
+    private static final class Rule {
+
+        private final String pattern;
+        private final boolean directoryOnly;
+        private final int index;
+
+        private final int mode;
+        private final String user;
+        private final int uid;
+        private final String group;
+        private final int gid;
+
+        private int literals;
+        private int wildcards;
+        private int anys;
+
+        private Rule( final String pPattern, final int pIndex, final int pMode, final String pUser, final int pUid, final String pGroup, final int pGid ) {
+            directoryOnly = pPattern.endsWith("/");
+            pattern = pPattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            index = pIndex;
+            mode = pMode;
+            user = pUser;
+            uid = pUid;
+            group = pGroup;
+            gid = pGid;
+
+            final StringTokenizer tokens = new StringTokenizer(pPattern, "/\\");
+            while (tokens.hasMoreTokens()) {
+                final String token = tokens.nextToken();
+                if ("**".equals(token)) {
+                    anys++;
+                } else if (token.indexOf('*') != -1 || token.indexOf('?') != -1) {
+                    wildcards++;
+                } else {
+                    literals++;
+                }
+            }
+        }
+    }
+
+    /** the most specific rule first */
+    private static final Comparator<Rule> SPECIFICITY = new Comparator<Rule>() {
+        public int compare( final Rule pA, final Rule pB ) {
+            if (pA.literals != pB.literals) {
+                return pB.literals - pA.literals;
+            }
+            if (pA.wildcards != pB.wildcards) {
+                return pB.wildcards - pA.wildcards;
+            }
+            if (pA.anys != pB.anys) {
+                return pA.anys - pB.anys;
+            }
+            if (pA.directoryOnly != pB.directoryOnly) {
+                return pA.directoryOnly ? -1 : 1;
+            }
+            return pB.index - pA.index;
+        }
+    };
+
+    // the rules for directories and the ones for files, in the order of their patterns in the matcher
+    private final Rule[] directoryRules;
+    private final PatternMatcher directoryMatcher;
+    private final Rule[] fileRules;
+    private final PatternMatcher fileMatcher;
+
+    public RuleMapper( final InputStream pInput ) throws IOException {
+        this(readLines(pInput));
+    }
+
+    /**
+     * @param pRules the rules, empty lines and lines starting with '#' are ignored
+     */
+    public RuleMapper( final String[] pRules ) {
+        final List<Rule> rules = new ArrayList<Rule>();
+        for (int i = 0; i < pRules.length; i++) {
+            final String line = pRules[i].trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+                rules.add(parse(line, i + 1));
+            }
+        }
+
+        final Rule[] sorted = rules.toArray(new Rule[rules.size()]);
+        Arrays.sort(sorted, SPECIFICITY);
+
+        final List<Rule> forFiles = new ArrayList<Rule>();
+        for (int i = 0; i < sorted.length; i++) {
+            if (!sorted[i].directoryOnly) {
+                forFiles.add(sorted[i]);
+            }
+        }
+
+        directoryRules = sorted;
+        directoryMatcher = createMatcher(directoryRules);
+        fileRules = forFiles.toArray(new Rule[forFiles.size()]);
+        fileMatcher = createMatcher(fileRules);
+    }
+
+    private static String[] readLines( final InputStream pInput ) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(pInput, "UTF-8"));
+        final List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private static Rule parse( final String pLine, final int pLineNumber ) {
+        final StringTokenizer tokens = new StringTokenizer(pLine, " \t");
+        if (tokens.countTokens() < 2 || tokens.countTokens() > 3) {
+            throw new IllegalArgumentException("Line " + pLineNumber + " is not 'pattern mode [user[:group]]': " + pLine);
+        }
+
+        final String pattern = tokens.nextToken();
+        final String mode = tokens.nextToken();
+        final String owner = tokens.hasMoreTokens() ? tokens.nextToken() : "-";
+
+        final int colon = owner.indexOf(':');
+        final String user = colon == -1 ? owner : owner.substring(0, colon);
+        final String group = colon == -1 ? "-" : owner.substring(colon + 1);
+
+        try {
+            return new Rule(pattern, pLineNumber,
+                "-".equals(mode) ? -1 : Integer.parseInt(mode, 8),
+                isName(user) ? user : null, isId(user) ? Integer.parseInt(user) : -1,
+                isName(group) ? group : null, isId(group) ? Integer.parseInt(group) : -1);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + pLineNumber + " has an invalid mode: " + pLine, e);
+        }
+    }
+
+    private static boolean isId( final String pOwner ) {
+        if (pOwner.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < pOwner.length(); i++) {
+            if (!Character.isDigit(pOwner.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isName( final String pOwner ) {
+        return pOwner.length() > 0 && !"-".equals(pOwner) && !isId(pOwner);
+    }
+
+    private static PatternMatcher createMatcher( final Rule[] pRules ) {
+        final String[] patterns = new String[pRules.length];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = pRules[i].pattern;
+        }
+        return new PatternMatcher(patterns, null);
+    }
+
+    /**
+     * @return the rule for the entry, null if none matches
+     */
+    private Rule findRule( final String pName, final boolean pDirectory ) {
+        final PatternMatcher matcher = pDirectory ? directoryMatcher : fileMatcher;
+        final Rule[] rules = pDirectory ? directoryRules : fileRules;
+
+        PatternMatcher.State state = matcher.getRoot();
+        int start = 0;
+        for (int i = 0; i <= pName.length() && !state.isPruned(); i++) {
+            if (i == pName.length() || pName.charAt(i) == '/') {
+                // "." components as in "./usr" are skipped like empty ones
+                if (i > start && !(i == start + 1 && pName.charAt(start) == '.')) {
+                    state = matcher.next(state, pName, start, i);
+                }
+                start = i + 1;
+            }
+        }
+
+        final int include = state.getInclude();
+        return include != -1 ? rules[include] : null;
+    }
+
+    public TarEntry map( final TarEntry pEntry ) {
+        final MutableEntry entry = new MutableEntry(pEntry);
+        map(entry);
+        return entry.toTarEntry();
+    }
+
+    public void map( final MutableEntry pEntry ) {
+        final Rule rule = findRule(pEntry.getName(), pEntry.isDirectory());
+        if (rule == null) {
+            return;
+        }
+
+        if (rule.mode > -1) {
+            pEntry.setMode(rule.mode);
+        }
+        if (rule.user != null) {
+            pEntry.setUserName(rule.user);
+            pEntry.setUserId(0);
+        }
+        if (rule.uid > -1) {
+            pEntry.setUserId(rule.uid);
+        }
+        if (rule.group != null) {
+            pEntry.setGroupName(rule.group);
+            pEntry.setGroupId(0);
+        }
+        if (rule.gid > -1) {
+            pEntry.setGroupId(rule.gid);
+        }
+    }
+}
@@ -22,12 +22,15 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.producers.DataProducerArchive;
 import org.vafer.jdeb.producers.DataProducerDirectory;
 import org.vafer.jdeb.producers.DataProducerFile;
 import org.vafer.jdeb.producers.DataProducerLiteralPaths;
+import org.vafer.jdeb.producers.FilePrefetcher;
+import org.vafer.jdeb.producers.ScanCache;
 
 /**
  * Maven "data" elment acting as a factory for DataProducers. So far Archive and
@@ -76,6 +79,38 @@ public final class Data implements DataProducer {
         this.failOnMissingSrc = failOnMissingSrc;
     }
 
+    private long prefetchBudget = FilePrefetcher.DEFAULT_BUDGET;
+
+    /**
+     * @parameter expression="${prefetchBudget}"
+     */
+    public void setPrefetchBudget(long prefetchBudget) {
+        this.prefetchBudget = prefetchBudget;
+    }
+
+    long getPrefetchBudget() {
+        return prefetchBudget;
+    }
+
+    private ScanCache scanCache;
+
+    /**
+     * Share the walk of the src directory with the other data elements of the build.
+     */
+    void setScanCache(ScanCache scanCache) {
+        this.scanCache = scanCache;
+        if (isDirectory()) {
+            scanCache.expect(src, true, includePatterns, excludePatterns);
+        }
+    }
+
+    private boolean isDirectory() {
+        if (src == null || "file".equalsIgnoreCase(type) || "archive".equalsIgnoreCase(type) || "template".equalsIgnoreCase(type)) {
+            return false;
+        }
+        return "directory".equalsIgnoreCase(type) || src.isDirectory();
+    }
+
     /**
      * @parameter expression="${includes}" alias="includes"
      */
@@ -130,7 +165,11 @@ public final class Data implements DataProducer {
 
         org.vafer.jdeb.mapping.Mapper[] mappers = null;
         if (mapper != null) {
-            mappers = new org.vafer.jdeb.mapping.Mapper[] { mapper.createMapper() };
+            try {
+                mappers = new org.vafer.jdeb.mapping.Mapper[] { mapper.createMapper() };
+            } catch (MojoExecutionException e) {
+                throw new IOException(e.getMessage(), e);
+            }
         }
 
         if ("file".equalsIgnoreCase(type)) {
@@ -144,7 +183,7 @@ public final class Data implements DataProducer {
         }
 
         if ("directory".equalsIgnoreCase(type)) {
-            new DataProducerDirectory(src, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            produceDirectory(pReceiver, mappers);
             return;
         }
 
@@ -158,7 +197,14 @@ public final class Data implements DataProducer {
         if (src.isFile()) {
             new DataProducerArchive(src, includePatterns, excludePatterns, mappers).produce(pReceiver);
         } else {
-            new DataProducerDirectory(src, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            produceDirectory(pReceiver, mappers);
         }
     }
+
+    private void produceDirectory(final DataConsumer pReceiver, final org.vafer.jdeb.mapping.Mapper[] pMappers) throws IOException {
+        final DataProducerDirectory producer = new DataProducerDirectory(src, includePatterns, excludePatterns, pMappers);
+        producer.setPrefetchBudget(prefetchBudget);
+        producer.setScanCache(scanCache);
+        producer.produce(pReceiver);
+    }
 }
@@ -18,6 +18,7 @@ package org.vafer.jdeb.maven;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -26,7 +27,12 @@ import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.PackagingException;
 import org.vafer.jdeb.Processor;
 import org.vafer.jdeb.changes.TextfileChangesProvider;
+import org.vafer.jdeb.compression.Compression;
+import org.vafer.jdeb.compression.CompressionSelector;
 import org.vafer.jdeb.descriptors.PackageDescriptor;
+import org.vafer.jdeb.events.EventConsole;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.metrics.BuildMetrics;
 import org.vafer.jdeb.utils.VariableResolver;
 
 /**
@@ -70,9 +76,33 @@ public class DebMaker {
     /** The file where to write the changes of the changes input to */
     private File changesSave;
 
-    /** The compression method used for the data file (none, gzip or bzip2) */
+    /** The compression method used for the data file (none, gzip, bzip2, xz, zstd), a profile (fast, balanced, max) or auto */
     private String compression = "gzip";
 
+    /** The space reserved for the control archive to write the data straight into the deb (0 to disable) */
+    private long controlReserve;
+
+    /** The compression level, -1 for the default of the compression method */
+    private int compressionLevel = -1;
+
+    /** Whether zstd should use long distance matching */
+    private boolean longDistanceMatching;
+
+    /** The throughput in MB/s the "auto" compression needs to reach */
+    private int compressionThroughput = CompressionSelector.DEFAULT_MIN_THROUGHPUT;
+
+    /** Whether to write the build metrics as JSON next to the deb */
+    private boolean metricsReport;
+
+    /** The metrics of the last build */
+    private BuildMetrics metrics;
+
+    /** The file to write the compressed sizes of the files and directories to (CSV, or JSON for .json) */
+    private File sizeReport;
+
+    /** Receives the events of the packaging instead of the console if set */
+    private EventListener eventListener;
+
     private final VariableResolver variableResolver;
 
     private final Collection<DataProducer> dataProducers;
@@ -98,6 +128,15 @@ public class DebMaker {
         }
     }
 
+    /**
+     * Send the messages and the summary of the archived files as events
+     * to the listener instead of printing them to the console.
+     */
+    public void setEventListener(EventListener eventListener) {
+        this.eventListener = eventListener;
+        console = new EventConsole(eventListener);
+    }
+
     public void setDeb(File deb) {
         this.deb = deb;
     }
@@ -134,6 +173,37 @@ public class DebMaker {
         this.compression = compression;
     }
 
+    public void setControlReserve(long controlReserve) {
+        this.controlReserve = controlReserve;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void setLongDistanceMatching(boolean longDistanceMatching) {
+        this.longDistanceMatching = longDistanceMatching;
+    }
+
+    public void setCompressionThroughput(int compressionThroughput) {
+        this.compressionThroughput = compressionThroughput;
+    }
+
+    public void setSizeReport(File sizeReport) {
+        this.sizeReport = sizeReport;
+    }
+
+    public void setMetricsReport(boolean metricsReport) {
+        this.metricsReport = metricsReport;
+    }
+
+    /**
+     * @return the metrics of the last created package, null before
+     */
+    public BuildMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Adds a new data source to the deb. The new data source may point to a
      * single file, a directory, or a tarball.
@@ -199,8 +269,7 @@ public class DebMaker {
             }
         }
 
-        if (!"gzip".equals(compression) && !"bzip2".equals(compression)
-                && !"none".equals(compression)) {
+        if (!Compression.isSupported(compression)) {
             throw new PackagingException("The compression method '"
                     + compression + "' is not supported");
         }
@@ -220,7 +289,59 @@ public class DebMaker {
         final DataProducer[] data = new DataProducer[dataProducers.size()];
         dataProducers.toArray(data);
 
-        final Processor processor = new Processor(console, variableResolver);
+        if (controlReserve < 0) {
+            throw new PackagingException(
+                    "The 'controlReserve' setting must not be negative.");
+        }
+
+        if (!Compression.isValidLevel(compression, compressionLevel)) {
+            throw new PackagingException(
+                    "The 'compressionLevel' " + compressionLevel + " is not supported by the compression '" + compression + "' (gzip 0-9, xz 0-9, zstd 1-22, -1 for the default).");
+        }
+
+        if (!Compression.AUTO.equals(compression)) {
+            try {
+                Compression.forName(compression).checkAvailable();
+            } catch (IOException e) {
+                throw new PackagingException(e.getMessage(), e);
+            }
+        }
+
+        if (compressionThroughput <= 0) {
+            throw new PackagingException(
+                    "The 'compressionThroughput' setting must be positive.");
+        }
+
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] instanceof Data && ((Data) data[i]).getPrefetchBudget() < 0) {
+                throw new PackagingException(
+                        "The 'prefetchBudget' setting must not be negative.");
+            }
+        }
+
+        final Processor processor = eventListener != null ? new Processor(eventListener, variableResolver) : new Processor(console, variableResolver);
+        processor.setControlReserve(controlReserve);
+        processor.setCompressionLevel(compressionLevel);
+        processor.setLongDistanceMatching(longDistanceMatching);
+        processor.setMinThroughput(compressionThroughput);
+        processor.setSizeReport(sizeReport);
+
+        createPackage(processor, controlFiles, data);
+
+        metrics = processor.getMetrics();
+
+        if (metricsReport) {
+            final File report = BuildMetrics.getReportFile(deb);
+            try {
+                console.println("Writing build metrics to file: " + report);
+                metrics.writeJson(report);
+            } catch (Exception e) {
+                throw new PackagingException("Failed to write the build metrics " + report, e);
+            }
+        }
+    }
+
+    private void createPackage(Processor processor, File[] controlFiles, DataProducer[] data) throws PackagingException {
 
         final PackageDescriptor packageDescriptor;
         try {
@@ -34,6 +34,8 @@ import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.PackagingException;
 import org.vafer.jdeb.descriptors.AbstractDescriptor;
+import org.vafer.jdeb.events.AsyncEventListener;
+import org.vafer.jdeb.producers.ScanCache;
 import org.vafer.jdeb.utils.MapVariableResolver;
 import org.vafer.jdeb.utils.Utils;
 import org.vafer.jdeb.utils.VariableResolver;
@@ -90,12 +92,63 @@ public class DebMojo extends AbstractPluginMojo {
     private String changesSave;
 
     /**
-     * The compression method used for the data file (none, gzip or bzip2)
+     * The compression method used for the data file (none, gzip, bzip2, xz or zstd),
+     * a profile (fast, balanced or max) or auto to pick the method by trial compression
      *
      * @parameter default-value="gzip"
      */
     private String compression;
 
+    /**
+     * The number of bytes reserved for the control archive in front of the
+     * data archive. When set the data is written straight into the deb
+     * without intermediate temp files. 0 disables it.
+     *
+     * @parameter default-value="0"
+     */
+    private long controlReserve;
+
+    /**
+     * The compression level for gzip (0-9), xz (0-9) or zstd (1-22).
+     * -1 uses the default of the compression method.
+     *
+     * @parameter default-value="-1"
+     */
+    private int compressionLevel;
+
+    /**
+     * Whether zstd should use long distance matching. This improves the
+     * compression of big payloads but needs a 128 MB window.
+     *
+     * @parameter default-value="false"
+     */
+    private boolean longDistanceMatching;
+
+    /**
+     * The throughput in MB/s the "auto" compression needs to reach. Of the
+     * methods that are fast enough the one with the smallest output is used.
+     *
+     * @parameter default-value="20"
+     */
+    private int compressionThroughput;
+
+    /**
+     * Whether to write the wall and CPU time, bytes and files of the phases
+     * of the build as JSON next to the deb (e.g. jdeb_1.0.deb.metrics.json)
+     * and log them as a table. Otherwise the table is only logged in debug mode.
+     *
+     * @parameter default-value="false"
+     */
+    private boolean metricsReport;
+
+    /**
+     * The file to write the compressed size of every file and directory of
+     * the data archive to. It is written as JSON if the name ends with ".json",
+     * as CSV otherwise.
+     *
+     * @parameter
+     */
+    private String sizeReport;
 
     /**
      * Boolean option whether to attach the artifact to the project
@@ -185,6 +238,11 @@ public class DebMojo extends AbstractPluginMojo {
     private String closeReplaceToken = "]]";
     private Collection<DataProducer> dataProducers = new ArrayList<DataProducer>();
 
+    /**
+     * Shares the walks of the data elements on the same directory
+     */
+    private ScanCache scanCache;
+
 
     public void setOpenReplaceToken(String openReplaceToken) {
         this.openReplaceToken = openReplaceToken;
@@ -200,7 +258,9 @@ public class DebMojo extends AbstractPluginMojo {
         dataSet = pData;
         dataProducers.clear();
         if (pData != null) {
+            scanCache = new ScanCache();
             for (int i = 0; i < pData.length; i++) {
+                pData[i].setScanCache(scanCache);
                 dataProducers.add(pData[i]);
             }
         }
@@ -283,9 +343,12 @@ public class DebMojo extends AbstractPluginMojo {
                 }
             };
 
+            final AsyncEventListener events = new AsyncEventListener(new MavenEventListener(getLog()));
+
             try {
 
                 DebMaker debMaker = new DebMaker(infoConsole, debFile, controlDirFile, dataProducers, resolver);
+                debMaker.setEventListener(events);
 
                 if (changesInFile.exists() && changesInFile.canRead()) {
                     debMaker.setChangesIn(changesInFile);
@@ -294,7 +357,38 @@ public class DebMojo extends AbstractPluginMojo {
                 }
 
                 debMaker.setCompression(compression);
-                debMaker.makeDeb();
+                debMaker.setControlReserve(controlReserve);
+                debMaker.setCompressionLevel(compressionLevel);
+                debMaker.setLongDistanceMatching(longDistanceMatching);
+                debMaker.setCompressionThroughput(compressionThroughput);
+                debMaker.setMetricsReport(metricsReport);
+                if (sizeReport != null) {
+                    debMaker.setSizeReport(new File(Utils.replaceVariables(resolver, sizeReport, openReplaceToken, closeReplaceToken)));
+                }
+                try {
+                    debMaker.makeDeb();
+                } catch (PackagingException e) {
+                    events.close(e);
+                    throw e;
+                } catch (RuntimeException e) {
+                    events.close(e);
+                    throw e;
+                } finally {
+                    if (scanCache != null) {
+                        scanCache.release();
+                    }
+                    // only rethrows the failure of the listener if the packaging succeeded
+                    events.close();
+                }
+
+                // the table is only part of the regular output if the metrics were asked for
+                for (String line : debMaker.getMetrics().toTable()) {
+                    if (metricsReport) {
+                        getLog().info(line);
+                    } else {
+                        getLog().debug(line);
+                    }
+                }
 
                 // Always attach unless explicitly set to false
                 if ("true".equalsIgnoreCase(attach)) {
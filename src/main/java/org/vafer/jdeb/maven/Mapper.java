@@ -18,14 +18,16 @@ package org.vafer.jdeb.maven;
 import java.io.File;
 import java.io.FileInputStream;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.vafer.jdeb.mapping.LsMapper;
 import org.vafer.jdeb.mapping.NullMapper;
 import org.vafer.jdeb.mapping.PermMapper;
 import org.vafer.jdeb.mapping.PrefixMapper;
+import org.vafer.jdeb.mapping.RuleMapper;
 
 /**
  * Maven "mapper" element acting as factory for the entry mapper.
- * Supported types: ls, prefix, perm
+ * Supported types: ls, prefix, perm, rules
  *
  * @author Bryan Sant <bryan.sant@gmail.com>
  */
@@ -82,8 +84,13 @@ public final class Mapper {
      */
     private File src;
 
+    /**
+     * @parameter
+     */
+    private String[] rules;
 
-    public org.vafer.jdeb.mapping.Mapper createMapper() {
+
+    public org.vafer.jdeb.mapping.Mapper createMapper() throws MojoExecutionException {
 
         if ("perm".equalsIgnoreCase(type)) {
             return new PermMapper(uid, gid, user, group, filemode, dirmode, strip, prefix);
@@ -101,6 +108,22 @@ public final class Mapper {
             }
         }
 
+        if ("rules".equalsIgnoreCase(type)) {
+            try {
+                if (src == null) {
+                    return new RuleMapper(rules != null ? rules : new String[0]);
+                }
+                final FileInputStream input = new FileInputStream(src);
+                try {
+                    return new RuleMapper(input);
+                } finally {
+                    input.close();
+                }
+            } catch (Exception e) {
+                throw new MojoExecutionException("Could not read the rules of the mapper" + (src != null ? " from " + src : ""), e);
+            }
+        }
+
         return new NullMapper();
     }
 
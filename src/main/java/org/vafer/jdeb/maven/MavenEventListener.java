@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.maven;
+
+import org.apache.maven.plugin.logging.Log;
+import org.vafer.jdeb.events.Event;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.events.Level;
+
+/**
+ * Logs the events to the maven log. The details of every file are only
+ * logged in debug mode.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+final class MavenEventListener implements EventListener {
+
+    private final Log log;
+
+    MavenEventListener( final Log pLog ) {
+        log = pLog;
+    }
+
+    public boolean isEnabled( final Level pLevel ) {
+        switch (pLevel) {
+            case DEBUG:
+                return log.isDebugEnabled();
+            case INFO:
+                return log.isInfoEnabled();
+            default:
+                return log.isWarnEnabled();
+        }
+    }
+
+    public void onEvent( final Event pEvent ) {
+        switch (pEvent.getLevel()) {
+            case DEBUG:
+                log.debug(pEvent.getMessage());
+                break;
+            case INFO:
+                log.info(pEvent.getMessage());
+                break;
+            default:
+                log.warn(pEvent.getMessage());
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.vafer.jdeb.events.FlightRecorderEvent;
+
+/**
+ * The wall and CPU time, bytes and files of the phases of a build. The CPU
+ * time is the one of the whole process, so it includes the work of the
+ * background threads of a phase. It is -1 if the JVM does not provide it.
+ * Every phase is also recorded as a {@link FlightRecorderEvent#PHASE} event.
+ *
+ * The stages of a phase that run concurrently, like scanning and
+ * compressing while the data archive is built, are reported as parts of
+ * the phase with the time they kept their thread busy. The parts overlap
+ * and are not included in the total.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class BuildMetrics {
+
+    private static final Object OPERATING_SYSTEM = ManagementFactory.getOperatingSystemMXBean();
+    private static final Method PROCESS_CPU_TIME = getProcessCpuTimeMethod();
+
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    /**
+     * A phase of the build.
+     */
+    public static final class Phase {
+
+        private final String name;
+        private final long startWall;
+        private final long startCpu;
+        private final FlightRecorderEvent.Span span;
+        private long wall = -1;
+        private long cpu = -1;
+        private long bytesIn;
+        private long bytesOut;
+        private long files;
+        private final List<Phase> parts = new ArrayList<Phase>();
+
+        private Phase( final String pName ) {
+            name = pName;
+            startWall = System.nanoTime();
+            startCpu = getProcessCpuTime();
+            span = FlightRecorderEvent.PHASE.begin(pName);
+        }
+
+        private Phase( final String pName, final long pWallNanos ) {
+            name = pName;
+            startWall = 0;
+            startCpu = -1;
+            span = null;
+            wall = pWallNanos;
+        }
+
+        /**
+         * Add a part of the phase that has been measured already.
+         *
+         * @param pName the name of the part
+         * @param pWallNanos the time the part was busy
+         * @return the part, to set its bytes and files
+         */
+        public Phase addPart( final String pName, final long pWallNanos ) {
+            final Phase part = new Phase(pName, pWallNanos);
+            parts.add(part);
+            return part;
+        }
+
+        public List<Phase> getParts() {
+            return Collections.unmodifiableList(parts);
+        }
+
+        /**
+         * Finish measuring the time of the phase. The bytes should be set
+         * before, so they are part of the recorded event.
+         *
+         * @return the phase
+         */
+        public Phase stop() {
+            if (wall < 0) {
+                wall = System.nanoTime() - startWall;
+                final long endCpu = getProcessCpuTime();
+                cpu = startCpu >= 0 && endCpu >= 0 ? endCpu - startCpu : -1;
+                span.end(bytesIn > 0 ? bytesIn : bytesOut);
+            }
+            return this;
+        }
+
+        public Phase setBytesIn( final long pBytes ) {
+            bytesIn = pBytes;
+            return this;
+        }
+
+        public Phase setBytesOut( final long pBytes ) {
+            bytesOut = pBytes;
+            return this;
+        }
+
+        public Phase setFiles( final long pFiles ) {
+            files = pFiles;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWallNanos() {
+            return wall;
+        }
+
+        public long getCpuNanos() {
+            return cpu;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public double getFilesPerSecond() {
+            return wall > 0 ? files * 1e9 / wall : 0;
+        }
+
+        /**
+         * @return the MB/s of the input, or the output if the phase has no input
+         */
+        public double getMegabytesPerSecond() {
+            final long bytes = bytesIn > 0 ? bytesIn : bytesOut;
+            return wall > 0 ? bytes * 1e9 / wall / (1024 * 1024) : 0;
+        }
+
+        /**
+         * @return the output bytes per input byte, 0 if the phase does not transform bytes
+         */
+        public double getRatio() {
+            return bytesIn > 0 && bytesOut > 0 ? (double) bytesOut / bytesIn : 0;
+        }
+    }
+
+    private static Method getProcessCpuTimeMethod() {
+        try {
+            final Method method = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getProcessCpuTime");
+            method.invoke(OPERATING_SYSTEM);
+            return method;
+        } catch (Throwable t) {
+            // not available on this JVM
+            return null;
+        }
+    }
+
+    private static long getProcessCpuTime() {
+        if (PROCESS_CPU_TIME == null) {
+            return -1;
+        }
+        try {
+            return (Long) PROCESS_CPU_TIME.invoke(OPERATING_SYSTEM);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Start measuring a phase, it has to be stopped when it is done.
+     */
+    public Phase start( final String pName ) {
+        final Phase phase = new Phase(pName);
+        phases.add(phase);
+        return phase;
+    }
+
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    /**
+     * @return the phase or part of a phase with the given name or null
+     */
+    public Phase getPhase( final String pName ) {
+        for (Phase phase : phases) {
+            if (phase.name.equals(pName)) {
+                return phase;
+            }
+            for (Phase part : phase.parts) {
+                if (part.name.equals(pName)) {
+                    return part;
+                }
+            }
+        }
+        return null;
+    }
+
+    public long getWallNanos() {
+        long wall = 0;
+        for (Phase phase : phases) {
+            wall += Math.max(0, phase.wall);
+        }
+        return wall;
+    }
+
+    private static String millis( final long pNanos ) {
+        return pNanos < 0 ? "-" : "" + pNanos / 1000000;
+    }
+
+    private static String decimal( final double pValue ) {
+        return String.format(Locale.ENGLISH, "%.2f", pValue);
+    }
+
+    /**
+     * @return the lines of a table with a row per phase
+     */
+    public List<String> toTable() {
+        final List<String> lines = new ArrayList<String>();
+        final String format = "%-10s %9s %9s %12s %12s %9s %9s %6s";
+        lines.add(String.format(Locale.ENGLISH, format, "Phase", "Wall ms", "CPU ms", "Bytes in", "Bytes out", "Files/s", "MB/s", "Ratio"));
+        for (Phase phase : phases) {
+            lines.add(toRow(format, phase.name, phase));
+            for (Phase part : phase.parts) {
+                lines.add(toRow(format, "  " + part.name, part));
+            }
+        }
+        lines.add(String.format(Locale.ENGLISH, "%-10s %9s", "total", millis(getWallNanos())));
+        return lines;
+    }
+
+    private static String toRow( final String pFormat, final String pName, final Phase pPhase ) {
+        return String.format(Locale.ENGLISH, pFormat,
+            pName,
+            millis(pPhase.wall),
+            millis(pPhase.cpu),
+            pPhase.bytesIn,
+            pPhase.bytesOut,
+            pPhase.files > 0 ? decimal(pPhase.getFilesPerSecond()) : "-",
+            decimal(pPhase.getMegabytesPerSecond()),
+            pPhase.getRatio() > 0 ? decimal(pPhase.getRatio()) : "-"
+            );
+    }
+
+    public String toJson() {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"wallMillis\": ").append(getWallNanos() / 1000000).append(",\n  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            appendJson(json, phases.get(i), "    ");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static void appendJson( final StringBuilder pJson, final Phase pPhase, final String pIndent ) {
+        pJson.append(pIndent).append("{ \"name\": \"").append(pPhase.name.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        pJson.append(", \"wallMillis\": ").append(pPhase.wall < 0 ? -1 : pPhase.wall / 1000000);
+        pJson.append(", \"cpuMillis\": ").append(pPhase.cpu < 0 ? -1 : pPhase.cpu / 1000000);
+        pJson.append(", \"bytesIn\": ").append(pPhase.bytesIn);
+        pJson.append(", \"bytesOut\": ").append(pPhase.bytesOut);
+        pJson.append(", \"files\": ").append(pPhase.files);
+        pJson.append(", \"filesPerSecond\": ").append(decimal(pPhase.getFilesPerSecond()));
+        pJson.append(", \"mbPerSecond\": ").append(decimal(pPhase.getMegabytesPerSecond()));
+        pJson.append(", \"ratio\": ").append(decimal(pPhase.getRatio()));
+        if (!pPhase.parts.isEmpty()) {
+            pJson.append(", \"parts\": [");
+            for (int i = 0; i < pPhase.parts.size(); i++) {
+                pJson.append(i == 0 ? "\n" : ",\n");
+                appendJson(pJson, pPhase.parts.get(i), pIndent + "  ");
+            }
+            pJson.append('\n').append(pIndent).append(']');
+        }
+        pJson.append(" }");
+    }
+
+    public void writeJson( final File pFile ) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the file the JSON report is written to for a deb
+     */
+    public static File getReportFile( final File pDeb ) {
+        return new File(pDeb.getParentFile(), pDeb.getName() + ".metrics.json");
+    }
+}
@@ -15,10 +15,11 @@
  */
 package org.vafer.jdeb.producers;
 
-import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.apache.tools.tar.TarEntry;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MapperChain;
+import org.vafer.jdeb.mapping.MutableEntry;
 
 /**
  * Base Producer class providing including/excluding.
@@ -27,54 +28,34 @@ import org.vafer.jdeb.mapping.Mapper;
  */
 public abstract class AbstractDataProducer implements DataProducer {
 
-    private final String[] includes;
-    private final String[] excludes;
-    private final Mapper[] mappers;
+    private final PatternMatcher matcher;
+    private final MapperChain mappers;
 
 
     public AbstractDataProducer( final String[] pIncludes, final String[] pExcludes, final Mapper[] pMapper ) {
-        excludes = (pExcludes != null) ? pExcludes : new String[0];
-        includes = (pIncludes != null) ? pIncludes : new String[] { "**" };
-        mappers = (pMapper != null) ? pMapper : new Mapper[0];
+        matcher = new PatternMatcher(pIncludes, pExcludes);
+        mappers = new MapperChain(pMapper);
     }
 
     public boolean isIncluded( final String pName ) {
-        if (!isIncluded(pName, includes)) {
-            return false;
-        }
-        if (isExcluded(pName, excludes)) {
-            return false;
-        }
-        return true;
-    }
-
-    private boolean isIncluded( String name, String[] includes ) {
-        for (int i = 0; i < includes.length; i++) {
-            if (SelectorUtils.matchPath(includes[i], name)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
-    private boolean isExcluded( String name, String[] excludes ) {
-        for (int i = 0; i < excludes.length; i++) {
-            if (SelectorUtils.matchPath(excludes[i], name)) {
-                return true;
-            }
-        }
-        return false;
+        return matcher.matches(pName);
     }
 
     public TarEntry map( final TarEntry pEntry ) {
 
-        TarEntry entry = pEntry;
-
-        for (int i = 0; i < mappers.length; i++) {
-            entry = mappers[i].map(entry);
+        if (mappers.isEmpty()) {
+            return pEntry;
         }
 
-        return entry;
+        final MutableEntry entry = new MutableEntry(pEntry);
+        mappers.map(entry);
+        return entry.toTarEntry();
+    }
+
+    /**
+     * Apply the mappers to the entry in place.
+     */
+    public void map( final MutableEntry pEntry ) {
+        mappers.map(pEntry);
     }
 }
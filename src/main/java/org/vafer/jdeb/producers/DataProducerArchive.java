@@ -36,6 +36,7 @@ import org.apache.tools.tar.TarEntry;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MutableEntry;
 
 /**
  * Providing data from an archive keeping permissions and ownerships.
@@ -115,6 +116,8 @@ public final class DataProducerArchive extends AbstractDataProducer implements D
         }
 
 
+        final MutableEntry entry = new MutableEntry();
+
         try {
             while(true) {
 
@@ -128,9 +131,9 @@ public final class DataProducerArchive extends AbstractDataProducer implements D
                     continue;
                 }
 
-                TarEntry entry = converter.convert(archiveEntry);
+                entry.setFrom(converter.convert(archiveEntry));
 
-                entry = map(entry);
+                map(entry);
 
                 if (entry.isDirectory()) {
                     pReceiver.onEachDir(entry.getName(), entry.getLinkName(), entry.getUserName(), entry.getUserId(), entry.getGroupName(), entry.getGroupId(), entry.getMode(), entry.getSize());
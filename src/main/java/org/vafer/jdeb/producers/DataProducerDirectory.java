@@ -19,13 +19,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.tar.TarEntry;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
-import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.mapping.MutableEntry;
 
 /**
  * DataProducer iterating over a directory.
@@ -35,35 +36,93 @@ import org.vafer.jdeb.utils.Utils;
  */
 public final class DataProducerDirectory extends AbstractDataProducer implements DataProducer {
 
-    private final DirectoryScanner scanner = new DirectoryScanner();
+    private final File baseDir;
+    private final PatternMatcher matcher;
+    private long prefetchBudget = FilePrefetcher.DEFAULT_BUDGET;
+    private boolean followSymlinks = true;
+    private ScanCache scanCache;
 
     public DataProducerDirectory( final File pDir, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers ) {
         super(pIncludes, pExcludes, pMappers);
-        scanner.setBasedir(pDir);
-        scanner.setIncludes(pIncludes);
-        scanner.setExcludes(pExcludes);
-        scanner.setCaseSensitive(true);
-        scanner.setFollowSymlinks(true);
+        baseDir = pDir;
+        matcher = createMatcher(pIncludes, pExcludes);
     }
 
-    public void produce( final DataConsumer pReceiver ) throws IOException {
-
-        scanner.scan();
+    static PatternMatcher createMatcher( final String[] pIncludes, final String[] pExcludes ) {
+        return new PatternMatcher(pIncludes, addDirectoryExcludes(pExcludes));
+    }
 
-        final File baseDir = scanner.getBasedir();
+    /**
+     * Like Ant's DirectoryScanner an exclude ending with a separator also
+     * excludes everything below the directory, on top of the directory itself.
+     */
+    private static String[] addDirectoryExcludes( final String[] pExcludes ) {
+        if (pExcludes == null) {
+            return null;
+        }
 
-        final String[] dirs = scanner.getIncludedDirectories();
-        for (int i = 0; i < dirs.length; i++) {
-            final File file = new File(baseDir, dirs[i]);
-            String dirname = getFilename(baseDir, file);
+        final List<String> excludes = new ArrayList<String>();
+        for (int i = 0; i < pExcludes.length; i++) {
+            excludes.add(pExcludes[i]);
 
-            if ("".equals(dirname)) {
-                continue;
+            String pattern = pExcludes[i].replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            if (pattern.endsWith(File.separator)) {
+                pattern += "**";
             }
-
-            if (!isIncluded(dirname)) {
-                continue;
+            if (!pattern.equals(pExcludes[i])) {
+                excludes.add(pattern);
             }
+        }
+        return excludes.toArray(new String[excludes.size()]);
+    }
+
+    /**
+     * Set how many bytes of the upcoming files may be read ahead in the
+     * background, 0 reads every file only when it gets archived.
+     */
+    public void setPrefetchBudget( final long pPrefetchBudget ) {
+        prefetchBudget = pPrefetchBudget;
+    }
+
+    /**
+     * Set whether symbolic links to directories are followed.
+     */
+    public void setFollowSymlinks( final boolean pFollowSymlinks ) {
+        followSymlinks = pFollowSymlinks;
+    }
+
+    /**
+     * Share the walk of the directory with the other producers of the build.
+     * The directory has to be announced to the cache before, with the same includes and excludes.
+     */
+    public void setScanCache( final ScanCache pScanCache ) {
+        scanCache = pScanCache;
+    }
+
+    /**
+     * @return the walker collecting the directories and files that match the includes and excludes
+     */
+    DirectoryWalker createWalker() {
+        final DirectoryWalker walker = new DirectoryWalker(baseDir, matcher);
+        walker.setFollowSymlinks(followSymlinks);
+        return walker;
+    }
+
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+
+        final DirectoryWalker walker = createWalker();
+        final DirectoryWalker shared = scanCache != null ? scanCache.getWalk(baseDir, followSymlinks) : null;
+        if (shared != null) {
+            walker.select(shared);
+        } else {
+            walker.walk();
+        }
+
+        final MutableEntry entry = new MutableEntry();
+
+        final String[] dirs = walker.getDirectories();
+        for (int i = 0; i < dirs.length; i++) {
+            String dirname = dirs[i];
 
             if ('/' != File.separatorChar) {
                 dirname = dirname.replace(File.separatorChar, '/');
@@ -73,14 +132,9 @@ public final class DataProducerDirectory extends AbstractDataProducer implements
                 dirname += "/";
             }
 
-            TarEntry entry = new TarEntry(dirname);
-            entry.setUserId(0);
-            entry.setUserName("root");
-            entry.setGroupId(0);
-            entry.setGroupName("root");
-            entry.setMode(TarEntry.DEFAULT_DIR_MODE);
+            entry.set(dirname, "", "root", 0, "root", 0, TarEntry.DEFAULT_DIR_MODE, 0);
 
-            entry = map(entry);
+            map(entry);
 
             entry.setSize(0);
 
@@ -88,45 +142,41 @@ public final class DataProducerDirectory extends AbstractDataProducer implements
         }
 
 
-        final String[] files = scanner.getIncludedFiles();
-
+        final String[] files = walker.getFiles();
+        final long[] sizes = walker.getFileSizes();
+        final File[] included = new File[files.length];
         for (int i = 0; i < files.length; i++) {
-            final File file = new File(baseDir, files[i]);
-            String filename = getFilename(baseDir, file);
+            included[i] = new File(baseDir, files[i]);
+        }
 
-            if (!isIncluded(filename)) {
-                continue;
-            }
+        // the entries are mapped right before they are passed on, so they do not need to be kept
+        final FilePrefetcher prefetcher = prefetchBudget > 0 ? new FilePrefetcher(included, prefetchBudget) : null;
+        try {
+            for (int i = 0; i < files.length; i++) {
+                String filename = files[i];
 
-            if ('/' != File.separatorChar) {
-                filename = filename.replace(File.separatorChar, '/');
-            }
+                if ('/' != File.separatorChar) {
+                    filename = filename.replace(File.separatorChar, '/');
+                }
 
-            TarEntry entry = new TarEntry(filename);
-            entry.setUserId(0);
-            entry.setUserName("root");
-            entry.setGroupId(0);
-            entry.setGroupName("root");
-            entry.setMode(TarEntry.DEFAULT_FILE_MODE);
+                entry.set(filename, "", "root", 0, "root", 0, TarEntry.DEFAULT_FILE_MODE, 0);
 
-            entry = map(entry);
+                map(entry);
 
-            entry.setSize(file.length());
+                entry.setSize(sizes[i]);
 
-            final InputStream inputStream = new FileInputStream(file);
-            try {
-                pReceiver.onEachFile(inputStream, entry.getName(), entry.getLinkName(), entry.getUserName(), entry.getUserId(), entry.getGroupName(), entry.getGroupId(), entry.getMode(), entry.getSize());
-            } finally {
-                inputStream.close();
+                final InputStream inputStream = prefetcher != null ? prefetcher.open(i) : new FileInputStream(included[i]);
+                try {
+                    pReceiver.onEachFile(inputStream, entry.getName(), entry.getLinkName(), entry.getUserName(), entry.getUserId(), entry.getGroupName(), entry.getGroupId(), entry.getMode(), entry.getSize());
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.close();
             }
         }
     }
 
-    private String getFilename( File root, File file ) {
-
-        final String relativeFilename = file.getAbsolutePath().substring(root.getAbsolutePath().length());
-
-        return Utils.stripLeadingSlash(relativeFilename);
-    }
-
 }
\ No newline at end of file
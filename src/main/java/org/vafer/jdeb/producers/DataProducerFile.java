@@ -24,6 +24,7 @@ import org.apache.tools.tar.TarEntry;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MutableEntry;
 
 /**
  * DataProducer representing a single file
@@ -50,14 +51,10 @@ public final class DataProducerFile extends AbstractDataProducer implements Data
         } else {
           fileName = file.getName();
         }
-        TarEntry entry = new TarEntry(fileName);
-        entry.setUserId(0);
-        entry.setUserName("root");
-        entry.setGroupId(0);
-        entry.setGroupName("root");
-        entry.setMode(TarEntry.DEFAULT_FILE_MODE);
+        final MutableEntry entry = new MutableEntry();
+        entry.set(fileName, "", "root", 0, "root", 0, TarEntry.DEFAULT_FILE_MODE, 0);
 
-        entry = map(entry);
+        map(entry);
 
         entry.setSize(file.length());
 
@@ -36,11 +36,20 @@ import org.vafer.jdeb.DataProducer;
 public final class DataProducerFileSet implements DataProducer {
 
     private final FileSet fileset;
+    private long prefetchBudget = FilePrefetcher.DEFAULT_BUDGET;
 
     public DataProducerFileSet( final FileSet pFileset ) {
         fileset = pFileset;
     }
 
+    /**
+     * Set how many bytes of the upcoming files may be read ahead in the
+     * background, 0 reads every file only when it gets archived.
+     */
+    public void setPrefetchBudget( final long pPrefetchBudget ) {
+        prefetchBudget = pPrefetchBudget;
+    }
+
     public void produce( final DataConsumer pReceiver ) throws IOException {
         String user = "root";
         int uid = 0;
@@ -74,15 +83,27 @@ public final class DataProducerFileSet implements DataProducer {
         }
 
         final String[] files = scanner.getIncludedFiles();
+        final File[] included = new File[files.length];
         for (int i = 0; i < files.length; i++) {
-            final String name = files[i].replace('\\', '/');
-            final File file = new File(basedir, name);
+            included[i] = new File(basedir, files[i].replace('\\', '/'));
+        }
 
-            final InputStream inputStream = new FileInputStream(file);
-            try {
-                pReceiver.onEachFile(inputStream, prefix + "/" + name, null, user, uid, group, gid,filemode, file.length());
-            } finally {
-                inputStream.close();
+        final FilePrefetcher prefetcher = prefetchBudget > 0 ? new FilePrefetcher(included, prefetchBudget) : null;
+        try {
+            for (int i = 0; i < files.length; i++) {
+                final String name = files[i].replace('\\', '/');
+                final File file = included[i];
+
+                final InputStream inputStream = prefetcher != null ? prefetcher.open(i) : new FileInputStream(file);
+                try {
+                    pReceiver.onEachFile(inputStream, prefix + "/" + name, null, user, uid, group, gid,filemode, file.length());
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.close();
             }
         }
     }
@@ -6,6 +6,7 @@ import org.apache.tools.tar.TarEntry;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MutableEntry;
 
 public class DataProducerLiteralPaths extends AbstractDataProducer implements DataProducer {
 
@@ -17,15 +18,11 @@ public class DataProducerLiteralPaths extends AbstractDataProducer implements Da
   }
 
   public void produce(DataConsumer pReceiver) throws IOException {
+    final MutableEntry entry = new MutableEntry();
     for (String literalPath : literalPaths) {
-      TarEntry entry = new TarEntry(literalPath);
-      entry.setUserId(0);
-      entry.setUserName("root");
-      entry.setGroupId(0);
-      entry.setGroupName("root");
-      entry.setMode(TarEntry.DEFAULT_DIR_MODE);
-
-      entry = map(entry);
+      entry.set(literalPath, "", "root", 0, "root", 0, TarEntry.DEFAULT_DIR_MODE, 0);
+
+      map(entry);
 
       entry.setSize(0);
 
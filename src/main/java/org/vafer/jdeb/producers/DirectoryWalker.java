@@ -0,0 +1,343 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Collects the directories and files below a base directory that match the
+ * includes and excludes. Subtrees that cannot contain any match are not
+ * entered at all. With several matchers an entry is collected if any of
+ * them matches it, and a subtree is only skipped if all of them prune it. Symbolic links are followed, unless they point to one of
+ * the directories above them or following them has been turned off.
+ *
+ * The directories are listed in parallel on a fork-join pool. The type and
+ * the size of an entry come from a single read of its attributes. The paths
+ * are relative to the base directory, separated by File.separatorChar and
+ * sorted, like the ones of Ant's DirectoryScanner, no matter in which order
+ * the directories got listed.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class DirectoryWalker {
+
+    private final File baseDir;
+    private final PatternMatcher[] matchers;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean followSymlinks = true;
+
+    private String[] directories = new String[0];
+    private String[] files = new String[0];
+    private long[] sizes = new long[0];
+
+    /**
+     * A file found by a task, sorted by its path.
+     */
+    private static final class FileEntry implements Comparable<FileEntry> {
+
+        private final String path;
+        private final long size;
+
+        private FileEntry( final String pPath, final long pSize ) {
+            path = pPath;
+            size = pSize;
+        }
+
+        public int compareTo( final FileEntry pOther ) {
+            return path.compareTo(pOther.path);
+        }
+    }
+
+    /**
+     * Lists a directory and forks a task for every subdirectory that is not pruned.
+     */
+    private final class Walk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final String path;
+        private final PatternMatcher.State[] states;
+
+        private final List<String> directories = new ArrayList<String>();
+        private final List<FileEntry> files = new ArrayList<FileEntry>();
+        private final List<Walk> subdirectories = new ArrayList<Walk>();
+
+        private Walk( final Path pDir, final String pPath, final PatternMatcher.State[] pStates ) {
+            dir = pDir;
+            path = pPath;
+            states = pStates;
+        }
+
+        protected void compute() {
+            try {
+                list();
+            } catch (IOException e) {
+                throw new WalkException(e);
+            }
+            invokeAll(subdirectories);
+        }
+
+        private void list() throws IOException {
+            final DirectoryStream<Path> stream;
+            try {
+                stream = Files.newDirectoryStream(dir);
+            } catch (IOException e) {
+                // like File.list() the content of a directory that cannot be read is skipped
+                return;
+            }
+
+            try {
+                for (Path child : stream) {
+                    final String name = child.getFileName().toString();
+                    final PatternMatcher.State[] childStates = new PatternMatcher.State[states.length];
+                    boolean pruned = true;
+                    boolean match = false;
+                    for (int i = 0; i < states.length; i++) {
+                        childStates[i] = matchers[i].next(states[i], name, 0, name.length());
+                        pruned &= childStates[i].isPruned();
+                        match |= childStates[i].isMatch();
+                    }
+                    if (pruned) {
+                        continue;
+                    }
+
+                    final BasicFileAttributes own = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    final boolean link = own.isSymbolicLink();
+                    final BasicFileAttributes attributes = link ? readTarget(child) : own;
+                    final String childPath = path + name;
+
+                    if (attributes != null && attributes.isDirectory()) {
+                        if (link && !followSymlinks) {
+                            continue;
+                        }
+                        if (match) {
+                            directories.add(childPath);
+                        }
+                        if (!link || !isLoop(dir, child)) {
+                            subdirectories.add(new Walk(child, childPath + File.separatorChar, childStates));
+                        }
+                    } else if (match) {
+                        // a dangling link is passed on as a file, reading it will fail
+                        files.add(new FileEntry(childPath, attributes != null ? attributes.size() : 0));
+                    }
+                }
+            } catch (DirectoryIteratorException e) {
+                // the iteration wraps the IOException of reading the next entry
+                throw e.getCause();
+            } finally {
+                stream.close();
+            }
+        }
+
+        private void collect( final List<String> pDirectories, final List<FileEntry> pFiles ) {
+            pDirectories.addAll(directories);
+            pFiles.addAll(files);
+            for (Walk walk : subdirectories) {
+                walk.collect(pDirectories, pFiles);
+            }
+        }
+    }
+
+    /**
+     * Carries an IOException out of the fork-join pool.
+     */
+    private static final class WalkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private WalkException( final IOException pCause ) {
+            super(pCause);
+        }
+    }
+
+    public DirectoryWalker( final File pBaseDir, final PatternMatcher pMatcher ) {
+        this(pBaseDir, new PatternMatcher[] { pMatcher });
+    }
+
+    /**
+     * @param pMatchers the matchers of which any has to match an entry
+     */
+    public DirectoryWalker( final File pBaseDir, final PatternMatcher[] pMatchers ) {
+        baseDir = pBaseDir;
+        matchers = pMatchers.clone();
+    }
+
+    /**
+     * Set how many directories are listed at the same time, 1 walks the tree on the calling thread.
+     */
+    public void setParallelism( final int pParallelism ) {
+        parallelism = Math.max(1, pParallelism);
+    }
+
+    /**
+     * Set whether symbolic links to directories are listed and entered, links to files are always included.
+     */
+    public void setFollowSymlinks( final boolean pFollowSymlinks ) {
+        followSymlinks = pFollowSymlinks;
+    }
+
+    /**
+     * Walk the tree, replacing the result of a previous walk.
+     */
+    public void walk() throws IOException {
+        if (!baseDir.exists()) {
+            throw new IllegalStateException("basedir " + baseDir + " does not exist");
+        }
+        if (!baseDir.isDirectory()) {
+            throw new IllegalStateException("basedir " + baseDir + " is not a directory");
+        }
+
+        final List<String> foundDirectories = new ArrayList<String>();
+        final List<FileEntry> foundFiles = new ArrayList<FileEntry>();
+
+        final PatternMatcher.State[] roots = new PatternMatcher.State[matchers.length];
+        boolean pruned = true;
+        for (int i = 0; i < matchers.length; i++) {
+            roots[i] = matchers[i].getRoot();
+            pruned &= roots[i].isPruned();
+        }
+        if (!pruned) {
+            final Walk walk = new Walk(baseDir.toPath(), "", roots);
+            if (parallelism == 1) {
+                walkSequentially(walk);
+            } else {
+                final ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(walk);
+                } catch (WalkException e) {
+                    throw (IOException) e.getCause();
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            walk.collect(foundDirectories, foundFiles);
+        }
+
+        Collections.sort(foundDirectories);
+        Collections.sort(foundFiles);
+
+        directories = foundDirectories.toArray(new String[foundDirectories.size()]);
+        files = new String[foundFiles.size()];
+        sizes = new long[foundFiles.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = foundFiles.get(i).path;
+            sizes[i] = foundFiles.get(i).size;
+        }
+    }
+
+    /**
+     * Take the result from a walk of the same tree instead of walking the
+     * tree again, replacing the result of a previous walk.
+     *
+     * @param pWalked a walk of the same base directory that collected at least everything the matchers of this walker match
+     */
+    public void select( final DirectoryWalker pWalked ) {
+        final List<String> selectedDirectories = new ArrayList<String>();
+        for (int i = 0; i < pWalked.directories.length; i++) {
+            if (matches(pWalked.directories[i])) {
+                selectedDirectories.add(pWalked.directories[i]);
+            }
+        }
+
+        final List<Integer> selectedFiles = new ArrayList<Integer>();
+        for (int i = 0; i < pWalked.files.length; i++) {
+            if (matches(pWalked.files[i])) {
+                selectedFiles.add(i);
+            }
+        }
+
+        // the walked paths are sorted already
+        directories = selectedDirectories.toArray(new String[selectedDirectories.size()]);
+        files = new String[selectedFiles.size()];
+        sizes = new long[selectedFiles.size()];
+        for (int i = 0; i < files.length; i++) {
+            final int index = selectedFiles.get(i);
+            files[i] = pWalked.files[index];
+            sizes[i] = pWalked.sizes[index];
+        }
+    }
+
+    private boolean matches( final String pPath ) {
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].matches(pPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void walkSequentially( final Walk pWalk ) throws IOException {
+        pWalk.list();
+        for (Walk walk : pWalk.subdirectories) {
+            walkSequentially(walk);
+        }
+    }
+
+    /**
+     * @return the attributes of the target of the link, null for a dangling link
+     */
+    private static BasicFileAttributes readTarget( final Path pLink ) {
+        try {
+            return Files.readAttributes(pLink, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the linked directory is the directory it is in or one above it
+     */
+    private static boolean isLoop( final Path pParent, final Path pLink ) throws IOException {
+        return pParent.toRealPath().startsWith(pLink.toRealPath());
+    }
+
+    /**
+     * @return the sorted paths of the matching directories
+     */
+    public String[] getDirectories() {
+        return directories.clone();
+    }
+
+    /**
+     * @return the sorted paths of the matching files
+     */
+    public String[] getFiles() {
+        return files.clone();
+    }
+
+    /**
+     * @return the sizes of the files, in the order of {@link #getFiles()}
+     */
+    public long[] getFileSizes() {
+        return sizes.clone();
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Opens and reads the next files of a list into pooled buffers on
+ * background threads, so the latency of opening and reading files
+ * overlaps with archiving the previous ones. The files have to be
+ * opened in the order of the list.
+ *
+ * Every file in flight holds at least one buffer. Bigger files get
+ * more buffers as long as the budget allows, the rest of their content
+ * is read from the file when it gets consumed.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class FilePrefetcher {
+
+    public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final int THREADS = 4;
+
+    private final File[] files;
+    private final int maxBuffersPerFile;
+    private final Semaphore buffers;
+    private final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+    private final List<Future<Prefetch>> prefetches = new ArrayList<Future<Prefetch>>();
+    private final ExecutorService executor;
+
+    private int current;
+
+    /**
+     * @param pFiles the files in the order they will be opened
+     * @param pBudget the number of bytes that may be held in memory
+     */
+    public FilePrefetcher( final File[] pFiles, final long pBudget ) {
+        files = pFiles;
+
+        final int maxBuffers = (int) Math.max(1, Math.min(Integer.MAX_VALUE, pBudget / BUFFER_SIZE));
+        maxBuffersPerFile = Math.max(1, maxBuffers / 4);
+        buffers = new Semaphore(maxBuffers);
+
+        executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread(r, "jdeb-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Open the next file of the list.
+     *
+     * @param pIndex the index of the file, files must be opened in order
+     * @return the content of the file, closing it releases the buffers
+     */
+    public InputStream open( final int pIndex ) throws IOException {
+        if (pIndex != current) {
+            throw new IllegalStateException("Files must be opened in order, expected " + current + " but got " + pIndex);
+        }
+        current++;
+
+        // all previous files have been released, so the next file always gets its buffer
+        if (prefetches.size() == pIndex) {
+            buffers.acquireUninterruptibly();
+            submit(pIndex);
+        }
+
+        final Future<Prefetch> future = prefetches.get(pIndex);
+        prefetches.set(pIndex, null);
+
+        submitAhead();
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + files[pIndex]);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to read " + files[pIndex], cause);
+        }
+    }
+
+    private void submitAhead() {
+        while (prefetches.size() < files.length && buffers.tryAcquire()) {
+            submit(prefetches.size());
+        }
+    }
+
+    private void submit( final int pIndex ) {
+        final File file = files[pIndex];
+        prefetches.add(executor.submit(new Callable<Prefetch>() {
+            public Prefetch call() throws Exception {
+                return new Prefetch(file);
+            }
+        }));
+    }
+
+    /**
+     * Stop prefetching and close the files that have not been consumed.
+     */
+    public void close() {
+        executor.shutdown();
+        for (int i = current; i < prefetches.size(); i++) {
+            try {
+                prefetches.get(i).get().close();
+            } catch (Exception e) {
+                // the file is not used anymore anyway
+            }
+        }
+        prefetches.clear();
+    }
+
+    private byte[] takeBuffer() {
+        final byte[] buffer = pool.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private final class Prefetch extends InputStream {
+
+        private final List<byte[]> chunks = new ArrayList<byte[]>();
+        private int lastLength;
+        private InputStream rest;
+
+        private int chunk;
+        private int position;
+        private boolean closed;
+
+        private Prefetch( final File pFile ) throws IOException {
+            InputStream input = null;
+            try {
+                input = new FileInputStream(pFile);
+
+                // the first buffer has been acquired when the file got submitted
+                boolean acquired = true;
+                while (acquired) {
+                    final byte[] buffer = takeBuffer();
+                    chunks.add(buffer);
+
+                    final int length = readFully(input, buffer);
+                    lastLength = length;
+
+                    if (length < buffer.length) {
+                        input.close();
+                        return;
+                    }
+
+                    acquired = chunks.size() < maxBuffersPerFile && buffers.tryAcquire();
+                }
+
+                rest = input;
+
+            } catch (IOException e) {
+                if (input != null) {
+                    input.close();
+                }
+                release();
+                throw e;
+            }
+        }
+
+        private int readFully( final InputStream pInput, final byte[] pBuffer ) throws IOException {
+            int length = 0;
+            while (length < pBuffer.length) {
+                final int n = pInput.read(pBuffer, length, pBuffer.length - length);
+                if (n == -1) {
+                    break;
+                }
+                length += n;
+            }
+            return length;
+        }
+
+        private int available( final int pChunk ) {
+            if (pChunk == chunks.size() - 1 && rest == null) {
+                return lastLength - position;
+            }
+            return BUFFER_SIZE - position;
+        }
+
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read( final byte[] b, final int off, final int len ) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (chunk < chunks.size()) {
+                final int available = available(chunk);
+                if (available > 0) {
+                    final int n = Math.min(len, available);
+                    System.arraycopy(chunks.get(chunk), position, b, off, n);
+                    position += n;
+                    return n;
+                }
+                chunk++;
+                position = 0;
+            }
+
+            if (rest != null) {
+                return rest.read(b, off, len);
+            }
+
+            return -1;
+        }
+
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                if (rest != null) {
+                    rest.close();
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            for (int i = 0; i < chunks.size(); i++) {
+                pool.add(chunks.get(i));
+            }
+            buffers.release(Math.max(1, chunks.size()));
+            chunks.clear();
+        }
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Matches paths against a set of include and exclude patterns with the
+ * semantics of SelectorUtils.matchPath. A path is matched if it matches one
+ * of the includes and none of the excludes.
+ *
+ * All patterns get compiled into one automaton over the path components,
+ * so a path is matched in a single pass no matter how many patterns there
+ * are. The automaton can also be advanced one component at a time. The
+ * {@link State} of a directory tells whether anything at or below it can
+ * still match, which allows a walk to skip whole subtrees.
+ *
+ * The states are created and cached while matching. A matcher can be
+ * used by several threads at once, the states never change once created
+ * and a transition that is missing from the cache just gets computed again.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class PatternMatcher {
+
+    private static final int END = 0;
+    private static final int ANY = 1;
+    private static final int LITERAL = 2;
+    private static final int WILDCARD = 3;
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** the states that have been created are reused, as long as there are not too many of them */
+    private static final int MAX_STATES = 4096;
+    private static final int MAX_CACHE = 4096;
+
+    // the positions of all patterns, a pattern of n components has n + 1 positions
+    private final int[] kinds;
+    private final String[] tokens;
+    private final char[][] wildcards;
+    private final boolean[] excluding;
+    private final boolean[] anyBelow;
+    private final int[] patternOf;
+
+    private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<Key, State>();
+    private final State root;
+
+    /**
+     * Where the automaton is after matching the components of a path.
+     */
+    public static final class State {
+
+        private final int[] positions;
+        private final boolean match;
+        private final boolean pruned;
+        private final int include;
+
+        // the literal components that can follow, each with the positions reached by it
+        private final String[] literals;
+        private final int[][] literalTargets;
+        private final int[] table;
+        private final int[] wildcardPositions;
+        private final int[] anyPositions;
+        private final State[] cache;
+
+        private State( final PatternMatcher pMatcher, final int[] pPositions ) {
+            positions = pPositions;
+
+            boolean included = false;
+            boolean excluded = false;
+            boolean alive = false;
+            boolean excludedBelow = false;
+            int firstInclude = -1;
+
+            final Map<String, List<Integer>> literalMap = new HashMap<String, List<Integer>>();
+            final List<Integer> wildcardList = new ArrayList<Integer>();
+            final List<Integer> anyList = new ArrayList<Integer>();
+
+            for (int i = 0; i < positions.length; i++) {
+                final int position = positions[i];
+                final boolean exclude = pMatcher.excluding[position];
+
+                if (exclude) {
+                    excludedBelow |= pMatcher.anyBelow[position];
+                } else {
+                    alive = true;
+                }
+
+                switch (pMatcher.kinds[position]) {
+                    case END:
+                        if (exclude) {
+                            excluded = true;
+                        } else {
+                            included = true;
+                            final int pattern = pMatcher.patternOf[position];
+                            if (firstInclude == -1 || pattern < firstInclude) {
+                                firstInclude = pattern;
+                            }
+                        }
+                        break;
+                    case ANY:
+                        anyList.add(position);
+                        break;
+                    case LITERAL:
+                        List<Integer> targets = literalMap.get(pMatcher.tokens[position]);
+                        if (targets == null) {
+                            targets = new ArrayList<Integer>();
+                            literalMap.put(pMatcher.tokens[position], targets);
+                        }
+                        targets.add(position + 1);
+                        break;
+                    default:
+                        wildcardList.add(position);
+                        break;
+                }
+            }
+
+            match = included && !excluded;
+            pruned = !alive || excludedBelow;
+            include = firstInclude;
+
+            literals = literalMap.keySet().toArray(new String[literalMap.size()]);
+            literalTargets = new int[literals.length][];
+            table = new int[Math.max(2, Integer.highestOneBit(literals.length * 2) * 2)];
+            Arrays.fill(table, -1);
+            for (int i = 0; i < literals.length; i++) {
+                literalTargets[i] = toArray(literalMap.get(literals[i]));
+                int slot = slot(literals[i].hashCode(), table.length);
+                while (table[slot] != -1) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                table[slot] = i;
+            }
+
+            wildcardPositions = toArray(wildcardList);
+            anyPositions = toArray(anyList);
+
+            // a transition only depends on which literal and which wildcards matched
+            final long size = (long) (literals.length + 1) << wildcardPositions.length;
+            cache = wildcardPositions.length < 31 && size <= MAX_CACHE ? new State[(int) size] : null;
+        }
+
+        private int findLiteral( final String pPath, final int pStart, final int pEnd ) {
+            if (literals.length == 0) {
+                return -1;
+            }
+            final int length = pEnd - pStart;
+            int h = 0;
+            for (int i = pStart; i < pEnd; i++) {
+                h = 31 * h + pPath.charAt(i);
+            }
+            int slot = slot(h, table.length);
+            while (table[slot] != -1) {
+                final String literal = literals[table[slot]];
+                if (literal.length() == length && literal.regionMatches(0, pPath, pStart, length)) {
+                    return table[slot];
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            return -1;
+        }
+
+        /**
+         * @return whether the path matches an include and no exclude
+         */
+        public boolean isMatch() {
+            return match;
+        }
+
+        /**
+         * @return whether neither the path nor anything below it can match
+         */
+        public boolean isPruned() {
+            return pruned;
+        }
+
+        /**
+         * @return the index of the first include pattern that matches the path, -1 if none does
+         */
+        public int getInclude() {
+            return include;
+        }
+    }
+
+    /**
+     * The positions of a state, to find the state again.
+     */
+    private static final class Key {
+
+        private final int[] positions;
+        private final int hash;
+
+        private Key( final int[] pPositions ) {
+            positions = pPositions;
+            hash = Arrays.hashCode(pPositions);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals( final Object pObject ) {
+            return pObject instanceof Key && Arrays.equals(positions, ((Key) pObject).positions);
+        }
+    }
+
+    /**
+     * @param pIncludes the include patterns, null includes everything
+     * @param pExcludes the exclude patterns, null excludes nothing
+     */
+    public PatternMatcher( final String[] pIncludes, final String[] pExcludes ) {
+        final String[] includes = (pIncludes != null) ? pIncludes : new String[] { "**" };
+        final String[] excludes = (pExcludes != null) ? pExcludes : new String[0];
+
+        final List<String[]> patterns = new ArrayList<String[]>();
+        for (int i = 0; i < includes.length; i++) {
+            patterns.add(tokenize(includes[i]));
+        }
+        for (int i = 0; i < excludes.length; i++) {
+            patterns.add(tokenize(excludes[i]));
+        }
+
+        int count = 0;
+        for (String[] pattern : patterns) {
+            count += pattern.length + 1;
+        }
+
+        kinds = new int[count];
+        tokens = new String[count];
+        wildcards = new char[count][];
+        excluding = new boolean[count];
+        anyBelow = new boolean[count];
+        patternOf = new int[count];
+
+        final int[] starts = new int[patterns.size()];
+        int position = 0;
+        for (int p = 0; p < patterns.size(); p++) {
+            final String[] pattern = patterns.get(p);
+            starts[p] = position;
+            for (int i = 0; i <= pattern.length; i++) {
+                excluding[position] = p >= includes.length;
+                patternOf[position] = p;
+                if (i == pattern.length) {
+                    kinds[position] = END;
+                } else if ("**".equals(pattern[i])) {
+                    kinds[position] = ANY;
+                } else if (pattern[i].indexOf('*') != -1 || pattern[i].indexOf('?') != -1) {
+                    kinds[position] = WILDCARD;
+                    wildcards[position] = pattern[i].toCharArray();
+                } else {
+                    kinds[position] = LITERAL;
+                }
+                tokens[position] = i < pattern.length ? pattern[i] : null;
+                position++;
+            }
+
+            // a position followed by nothing but "**" matches the path and everything below it
+            for (int i = pattern.length - 1; i >= 0 && "**".equals(pattern[i]); i--) {
+                anyBelow[starts[p] + i] = true;
+            }
+        }
+
+        root = intern(closure(starts));
+    }
+
+    /**
+     * Split the pattern the same way SelectorUtils does.
+     */
+    private static String[] tokenize( final String pPattern ) {
+        final Vector<?> tokens = SelectorUtils.tokenizePath(pPattern);
+        final String[] result = new String[tokens.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (String) tokens.get(i);
+        }
+        return result;
+    }
+
+    private static int slot( final int pHash, final int pCapacity ) {
+        return (pHash ^ (pHash >>> 16)) & (pCapacity - 1);
+    }
+
+    private static int[] toArray( final List<Integer> pList ) {
+        final int[] result = new int[pList.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = pList.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Add the positions that can be reached without consuming a component, as "**" also matches nothing.
+     *
+     * @return the sorted positions without duplicates
+     */
+    private int[] closure( final int[] pPositions ) {
+        int[] result = new int[pPositions.length * 2];
+        int size = 0;
+        for (int i = 0; i < pPositions.length; i++) {
+            int position = pPositions[i];
+            while (true) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size++] = position;
+                if (kinds[position] != ANY) {
+                    break;
+                }
+                position++;
+            }
+        }
+
+        Arrays.sort(result, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    private State intern( final int[] pPositions ) {
+        final Key key = new Key(pPositions);
+        final State state = states.get(key);
+        if (state != null) {
+            return state;
+        }
+        final State created = new State(this, pPositions);
+        if (states.size() >= MAX_STATES) {
+            return created;
+        }
+        final State existing = states.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * @return the state before the first component of a path
+     */
+    public State getRoot() {
+        return root;
+    }
+
+    /**
+     * Advance the automaton by a single component of a path.
+     *
+     * @param pState the state after the previous components
+     * @param pPath the string the component is part of
+     * @param pStart the start of the component in the string
+     * @param pEnd the end of the component in the string
+     * @return the state after the component
+     */
+    public State next( final State pState, final String pPath, final int pStart, final int pEnd ) {
+        if (pState.positions.length == 0) {
+            return pState;
+        }
+
+        final int literal = pState.findLiteral(pPath, pStart, pEnd);
+
+        int mask = 0;
+        for (int i = 0; i < pState.wildcardPositions.length; i++) {
+            if (matchComponent(wildcards[pState.wildcardPositions[i]], pPath, pStart, pEnd)) {
+                mask |= 1 << i;
+            }
+        }
+
+        final int index = ((literal + 1) << pState.wildcardPositions.length) | mask;
+        if (pState.cache != null && pState.cache[index] != null) {
+            return pState.cache[index];
+        }
+
+        final List<Integer> positions = new ArrayList<Integer>();
+        for (int i = 0; i < pState.anyPositions.length; i++) {
+            positions.add(pState.anyPositions[i]);
+        }
+        if (literal != -1) {
+            final int[] targets = pState.literalTargets[literal];
+            for (int i = 0; i < targets.length; i++) {
+                positions.add(targets[i]);
+            }
+        }
+        for (int i = 0; i < pState.wildcardPositions.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                positions.add(pState.wildcardPositions[i] + 1);
+            }
+        }
+
+        final State state = intern(closure(toArray(positions)));
+        if (pState.cache != null) {
+            pState.cache[index] = state;
+        }
+        return state;
+    }
+
+    /**
+     * Advance the automaton by all components of a path.
+     */
+    public State match( final String pPath ) {
+        State state = root;
+        String path = pPath;
+
+        if (FileUtils.isAbsolutePath(path)) {
+            final String[] dissected = FILE_UTILS.dissect(path);
+            state = next(state, dissected[0], 0, dissected[0].length());
+            path = dissected[1];
+        }
+
+        final char separator = File.separatorChar;
+        int start = 0;
+        for (int i = 0; i <= path.length() && !state.isPruned(); i++) {
+            if (i == path.length() || path.charAt(i) == separator) {
+                if (i > start) {
+                    state = next(state, path, start, i);
+                }
+                start = i + 1;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return whether the path matches an include and no exclude
+     */
+    public boolean matches( final String pPath ) {
+        return match(pPath).isMatch();
+    }
+
+    /**
+     * Match a single component against a pattern with '*' and '?', the same way SelectorUtils.match does.
+     */
+    static boolean matchComponent( final char[] pPattern, final String pString, final int pStart, final int pEnd ) {
+        int patIdxStart = 0;
+        int patIdxEnd = pPattern.length - 1;
+        int strIdxStart = pStart;
+        int strIdxEnd = pEnd - 1;
+        char ch;
+
+        boolean containsStar = false;
+        for (int i = 0; i < pPattern.length; i++) {
+            if (pPattern[i] == '*') {
+                containsStar = true;
+                break;
+            }
+        }
+
+        if (!containsStar) {
+            if (patIdxEnd != strIdxEnd - pStart) {
+                return false;
+            }
+            for (int i = 0; i <= patIdxEnd; i++) {
+                ch = pPattern[i];
+                if (ch != '?' && ch != pString.charAt(pStart + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (patIdxEnd == 0) {
+            return true;
+        }
+
+        // the characters before the first star
+        while ((ch = pPattern[patIdxStart]) != '*' && strIdxStart <= strIdxEnd) {
+            if (ch != '?' && ch != pString.charAt(strIdxStart)) {
+                return false;
+            }
+            patIdxStart++;
+            strIdxStart++;
+        }
+        if (strIdxStart > strIdxEnd) {
+            return onlyStars(pPattern, patIdxStart, patIdxEnd);
+        }
+
+        // the characters after the last star
+        while ((ch = pPattern[patIdxEnd]) != '*' && strIdxStart <= strIdxEnd) {
+            if (ch != '?' && ch != pString.charAt(strIdxEnd)) {
+                return false;
+            }
+            patIdxEnd--;
+            strIdxEnd--;
+        }
+        if (strIdxStart > strIdxEnd) {
+            return onlyStars(pPattern, patIdxStart, patIdxEnd);
+        }
+
+        // the parts between the stars
+        while (patIdxStart != patIdxEnd && strIdxStart <= strIdxEnd) {
+            int patIdxTmp = -1;
+            for (int i = patIdxStart + 1; i <= patIdxEnd; i++) {
+                if (pPattern[i] == '*') {
+                    patIdxTmp = i;
+                    break;
+                }
+            }
+            if (patIdxTmp == patIdxStart + 1) {
+                patIdxStart++;
+                continue;
+            }
+
+            final int patLength = patIdxTmp - patIdxStart - 1;
+            final int strLength = strIdxEnd - strIdxStart + 1;
+            int foundIdx = -1;
+            strLoop:
+            for (int i = 0; i <= strLength - patLength; i++) {
+                for (int j = 0; j < patLength; j++) {
+                    ch = pPattern[patIdxStart + j + 1];
+                    if (ch != '?' && ch != pString.charAt(strIdxStart + i + j)) {
+                        continue strLoop;
+                    }
+                }
+                foundIdx = strIdxStart + i;
+                break;
+            }
+
+            if (foundIdx == -1) {
+                return false;
+            }
+
+            patIdxStart = patIdxTmp;
+            strIdxStart = foundIdx + patLength;
+        }
+
+        return onlyStars(pPattern, patIdxStart, patIdxEnd);
+    }
+
+    private static boolean onlyStars( final char[] pPattern, final int pStart, final int pEnd ) {
+        for (int i = pStart; i <= pEnd; i++) {
+            if (pPattern[i] != '*') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
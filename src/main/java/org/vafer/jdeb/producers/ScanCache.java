@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares the walk of a directory between the producers of a build that
+ * archive parts of the same tree. The producers announce the directories
+ * they are going to walk with {@link #expect} before the build starts.
+ * A directory that is expected more than once gets walked only once with
+ * the matchers of all its producers, so a subtree is only skipped if every
+ * one of them excludes it. Every producer then selects its directories and
+ * files from that walk in memory. A walk is kept until it gets released
+ * with {@link #release()}, so producing the data more than once (like the
+ * sampling of the "auto" compression does) still walks the tree only once.
+ *
+ * The walks are keyed by the absolute path of the directory and whether
+ * symbolic links are followed.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ScanCache {
+
+    private static final class Entry {
+
+        private int expected;
+        private boolean shared;
+        private final List<PatternMatcher> matchers = new ArrayList<PatternMatcher>();
+        private DirectoryWalker walker;
+    }
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private static String getKey( final File pDir, final boolean pFollowSymlinks ) {
+        return (pFollowSymlinks ? "follow:" : "nofollow:") + pDir.getAbsoluteFile().toPath().normalize();
+    }
+
+    /**
+     * Announce that a producer is going to walk the directory.
+     *
+     * @param pIncludes the include patterns of the producer, null includes everything
+     * @param pExcludes the exclude patterns of the producer, null excludes nothing
+     */
+    public synchronized void expect( final File pDir, final boolean pFollowSymlinks, final String[] pIncludes, final String[] pExcludes ) {
+        final String key = getKey(pDir, pFollowSymlinks);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        entry.expected++;
+        entry.matchers.add(DataProducerDirectory.createMatcher(pIncludes, pExcludes));
+        if (entry.expected > 1) {
+            entry.shared = true;
+        }
+    }
+
+    /**
+     * @return the walk of the directory for all the producers expecting it, or null if no other producer walks it and the producer should walk it on its own
+     */
+    public DirectoryWalker getWalk( final File pDir, final boolean pFollowSymlinks ) throws IOException {
+        final String key = getKey(pDir, pFollowSymlinks);
+
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || !entry.shared) {
+                return null;
+            }
+        }
+
+        // other directories can be walked at the same time
+        synchronized (entry) {
+            if (entry.walker == null) {
+                final DirectoryWalker walker = new DirectoryWalker(pDir, entry.matchers.toArray(new PatternMatcher[entry.matchers.size()]));
+                walker.setFollowSymlinks(pFollowSymlinks);
+                walker.walk();
+                entry.walker = walker;
+            }
+            return entry.walker;
+        }
+    }
+
+    /**
+     * Drop the walks once the build is done, the next build walks the directories again.
+     */
+    public synchronized void release() {
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                entry.walker = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates several digests of the data written to it at once. The data
+ * is copied into the slots of a ring buffer and every digest is updated
+ * on a thread of its own, so hashing with several algorithms takes about
+ * as long as hashing with the slowest of them. A slot is only reused once
+ * all digests have consumed it.
+ *
+ * The digests are available after the stream got closed.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class ParallelDigestOutputStream extends OutputStream {
+
+    private static final int SLOTS = 8;
+    private static final int SLOT_SIZE = 64 * 1024;
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final byte[][] digestValues;
+    private final Thread[] workers;
+
+    private final byte[][] slots = new byte[SLOTS][SLOT_SIZE];
+    private final int[] lengths = new int[SLOTS];
+    private int position;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private long published;
+    private final long[] consumed;
+    private boolean closed;
+    private Throwable failure;
+
+    private long size;
+
+    public ParallelDigestOutputStream( final String[] pAlgorithms ) throws NoSuchAlgorithmException {
+        algorithms = pAlgorithms.clone();
+        digests = new MessageDigest[algorithms.length];
+        digestValues = new byte[algorithms.length][];
+        consumed = new long[algorithms.length];
+        workers = new Thread[algorithms.length];
+
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
+        }
+
+        for (int i = 0; i < algorithms.length; i++) {
+            final int worker = i;
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    digest(worker);
+                }
+            }, "jdeb-digest-" + algorithms[i]);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    private void digest( final int pWorker ) {
+        final MessageDigest digest = digests[pWorker];
+        try {
+            long next = 0;
+            while (true) {
+                synchronized (lock) {
+                    while (next == published && !closed) {
+                        lock.wait();
+                    }
+                    if (next == published) {
+                        break;
+                    }
+                }
+
+                final int slot = (int) (next % SLOTS);
+                digest.update(slots[slot], 0, lengths[slot]);
+                next++;
+
+                synchronized (lock) {
+                    consumed[pWorker] = next;
+                    lock.notifyAll();
+                }
+            }
+
+            digestValues[pWorker] = digest.digest();
+
+        } catch (Throwable t) {
+            synchronized (lock) {
+                if (failure == null) {
+                    failure = t;
+                }
+                // never make the writer wait for a failed digest
+                consumed[pWorker] = Long.MAX_VALUE;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private long getSlowest() {
+        long slowest = Long.MAX_VALUE;
+        for (int i = 0; i < consumed.length; i++) {
+            slowest = Math.min(slowest, consumed[i]);
+        }
+        return slowest;
+    }
+
+    private void check() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to calculate the digests", failure);
+        }
+    }
+
+    /**
+     * Wait until the slot that gets filled next has been consumed by all digests.
+     */
+    private void awaitSlot() throws IOException {
+        synchronized (lock) {
+            check();
+            try {
+                while (published - getSlowest() >= SLOTS) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the digests");
+            }
+        }
+    }
+
+    private void publish() {
+        synchronized (lock) {
+            lengths[(int) (published % SLOTS)] = position;
+            published++;
+            lock.notifyAll();
+        }
+        position = 0;
+    }
+
+    public void write( final int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( final byte[] b, int off, int len ) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        size += len;
+
+        while (len > 0) {
+            if (position == 0) {
+                awaitSlot();
+            }
+
+            final byte[] slot = slots[(int) (published % SLOTS)];
+            final int n = Math.min(len, SLOT_SIZE - position);
+            System.arraycopy(b, off, slot, position, n);
+            position += n;
+            off += n;
+            len -= n;
+
+            if (position == SLOT_SIZE) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Wait until all data has been digested.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (position > 0) {
+            publish();
+        }
+
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the digests");
+            }
+        }
+
+        synchronized (lock) {
+            check();
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the digest of the given algorithm, only available after closing
+     */
+    public byte[] getDigest( final String pAlgorithm ) {
+        if (!closed) {
+            throw new IllegalStateException("The digests are only available after closing");
+        }
+        for (int i = 0; i < algorithms.length; i++) {
+            if (algorithms[i].equals(pAlgorithm)) {
+                return digestValues[i];
+            }
+        }
+        throw new IllegalArgumentException("No digest calculated for " + pAlgorithm);
+    }
+
+    public String getHexDigest( final String pAlgorithm ) {
+        return Utils.toHex(getDigest(pAlgorithm));
+    }
+}
@@ -41,15 +41,30 @@ public final class Utils {
         return count;
      }
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     public static String toHex( final byte[] pBytes ) {
-        final StringBuilder sb = new StringBuilder();
+        final char[] chars = new char[pBytes.length * 2];
 
         for (int i = 0; i < pBytes.length; ++i) {
-            sb.append(Integer.toHexString(pBytes[i]>>4 & 0x0f));
-            sb.append(Integer.toHexString(pBytes[i] & 0x0f));
+            chars[i * 2] = HEX[pBytes[i] >> 4 & 0x0f];
+            chars[i * 2 + 1] = HEX[pBytes[i] & 0x0f];
         }
 
-        return sb.toString();
+        return new String(chars);
+    }
+
+    /**
+     * Hex encode the bytes as ASCII into the output without allocating.
+     *
+     * @return the position after the encoded bytes
+     */
+    public static int toHex( final byte[] pBytes, final int pLength, final byte[] pOutput, int pOffset ) {
+        for (int i = 0; i < pLength; ++i) {
+            pOutput[pOffset++] = (byte) HEX[pBytes[i] >> 4 & 0x0f];
+            pOutput[pOffset++] = (byte) HEX[pBytes[i] & 0x0f];
+        }
+        return pOffset;
     }
 
     public static String stripPath( final int p, final String s ) {
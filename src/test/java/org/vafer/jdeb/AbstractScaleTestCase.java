@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs a scenario with a huge number of entries in a JVM with a small heap.
+ * The subclasses implement the scenario in their main method, which reports
+ * the heap it needed with {@link #report}. The tests only run with the
+ * "scale" profile as they take a while.
+ *
+ * Two numbers get reported. The peak is the highest heap usage seen right
+ * after a garbage collection while the scenario ran, the retained heap is
+ * what is still reachable from the result of the scenario at the end.
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public abstract class AbstractScaleTestCase extends TestCase {
+
+    private static final String PREFIX = "HEAP ";
+
+    public static final int ENTRIES = Integer.getInteger("jdeb.scale.entries", 1000000).intValue();
+
+    private static final Object lock = new Object();
+    private static long peak;
+    private static Thread sampler;
+
+    /**
+     * The heap of the scenario.
+     */
+    protected static final class Heap {
+
+        private final long peak;
+        private final long retained;
+
+        private Heap( final long pPeak, final long pRetained ) {
+            peak = pPeak;
+            retained = pRetained;
+        }
+
+        public long getPeak() {
+            return peak;
+        }
+
+        public long getRetained() {
+            return retained;
+        }
+    }
+
+    private static long getUsedAfterCollection() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long getUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Start watching the heap, to be called at the beginning of the main method.
+     */
+    protected static void monitor() {
+        sampler = new Thread(new Runnable() {
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    synchronized (lock) {
+                        peak = Math.max(peak, getUsedAfterCollection());
+                    }
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "jdeb-heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Report the heap to the test, to be called at the end of the main method.
+     *
+     * @param pResult the result of the scenario, kept reachable while the retained heap gets measured
+     */
+    protected static void report( final Object pResult ) throws InterruptedException {
+        sampler.interrupt();
+        sampler.join();
+
+        System.gc();
+        System.gc();
+        final long retained = getUsed();
+
+        synchronized (lock) {
+            peak = Math.max(peak, getUsedAfterCollection());
+            System.out.println(PREFIX + peak + " " + retained + " " + System.identityHashCode(pResult));
+        }
+    }
+
+    private String getClasspath() throws URISyntaxException {
+        final Set<String> paths = new LinkedHashSet<String>();
+        for (ClassLoader loader = getClass().getClassLoader(); loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                final URL[] urls = ((URLClassLoader) loader).getURLs();
+                for (int i = 0; i < urls.length; i++) {
+                    if ("file".equals(urls[i].getProtocol())) {
+                        paths.add(new File(urls[i].toURI()).getPath());
+                    }
+                }
+            }
+        }
+        paths.add(System.getProperty("java.class.path"));
+
+        final StringBuilder classpath = new StringBuilder();
+        for (String path : paths) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparatorChar);
+            }
+            classpath.append(path);
+        }
+        return classpath.toString();
+    }
+
+    /**
+     * Run the main method of the test case in a JVM with the given heap and fail if it does not complete.
+     *
+     * @param pMaxHeap the maximum heap, as for -Xmx
+     * @return the heap the scenario needed
+     */
+    protected Heap run( final String pMaxHeap, final String[] pArgs ) throws Exception {
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Xmx" + pMaxHeap);
+        command.add("-Djdeb.scale.entries=" + ENTRIES);
+        command.add("-cp");
+        command.add(getClasspath());
+        command.add(getClass().getName());
+        for (int i = 0; i < pArgs.length; i++) {
+            command.add(pArgs[i]);
+        }
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final StringBuilder output = new StringBuilder();
+        Heap heap = null;
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PREFIX)) {
+                    final String[] values = line.substring(PREFIX.length()).split(" ");
+                    heap = new Heap(Long.parseLong(values[0]), Long.parseLong(values[1]));
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        final int exit = process.waitFor();
+        assertEquals("The scenario did not complete with -Xmx" + pMaxHeap + "\n" + output, 0, exit);
+        assertNotNull("The scenario did not report its heap\n" + output, heap);
+        return heap;
+    }
+
+    /**
+     * Fail if the heap per entry exceeds the limit.
+     */
+    protected static void assertPerEntry( final String pMessage, final long pLimit, final long pBytes ) {
+        final long perEntry = pBytes / ENTRIES;
+        assertTrue(pMessage + " takes " + perEntry + " bytes per entry, the limit is " + pLimit, perEntry <= pLimit);
+    }
+}
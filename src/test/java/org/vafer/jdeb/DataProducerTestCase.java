@@ -17,7 +17,9 @@ package org.vafer.jdeb;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
@@ -27,8 +29,10 @@ import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
 import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarInputStream;
+import org.vafer.jdeb.ar.ArArchiveChannel;
 import org.vafer.jdeb.ar.NonClosingInputStream;
 import org.vafer.jdeb.descriptors.PackageDescriptor;
+import org.vafer.jdeb.metrics.BuildMetrics;
 import org.vafer.jdeb.producers.DataProducerArchive;
 import org.vafer.jdeb.producers.DataProducerDirectory;
 
@@ -57,6 +61,18 @@ public final class DataProducerTestCase extends TestCase {
         final PackageDescriptor packageDescriptor = processor.createDeb(new File[] { control }, data, deb, "gzip" );
 
         assertTrue(packageDescriptor.isValid());
+        assertEquals(32, packageDescriptor.get("MD5").length());
+        assertEquals(64, packageDescriptor.get("SHA256").length());
+        assertEquals("" + deb.length(), packageDescriptor.get("Size"));
+
+        final BuildMetrics metrics = processor.getMetrics();
+        assertEquals(5, metrics.getPhases().size());
+        assertTrue(metrics.getPhase("data").getFiles() > 0);
+        assertTrue(metrics.getPhase("data").getBytesOut() > 0);
+        assertTrue(metrics.getPhase("compress").getBytesIn() > metrics.getPhase("compress").getBytesOut());
+        assertNotNull(metrics.getPhase("scan"));
+        assertEquals(deb.length(), metrics.getPhase("assembly").getBytesOut());
+        assertEquals(deb.length(), metrics.getPhase("digests").getBytesIn());
 
         final Set filesInDeb = new HashSet();
 
@@ -96,4 +112,91 @@ public final class DataProducerTestCase extends TestCase {
 
         assertTrue("Cannot delete the file " + deb, deb.delete());
     }
+
+    public void testCreationInPlace() throws Exception {
+        final long controlLength = createInPlace(64 * 1024);
+
+        // a reserve too small for the control archive forces the data to be moved
+        createInPlace(100);
+
+        // the control archive fills the reserve or leaves too little space for a padding member
+        final long controlEntryLength = ArArchiveChannel.getEntryLength(controlLength);
+        for (long reserve = controlEntryLength - 4; reserve <= controlEntryLength + ArArchiveChannel.HEADER_LENGTH + 4; reserve += 2) {
+            createInPlace(reserve);
+        }
+    }
+
+    /**
+     * @return the length of the control archive
+     */
+    private long createInPlace( final long pReserve ) throws Exception {
+        final Processor processor = new Processor(new Console() {
+            public void println(String s) {
+            }
+        }, null);
+        processor.setControlReserve(pReserve);
+
+        final File control = new File(getClass().getResource("deb/control/control").toURI());
+        final File directory = new File(getClass().getResource("deb/data").toURI());
+
+        final DataProducer[] data = new DataProducer[] {
+                new DataProducerDirectory(directory, null, new String[] { "**/.svn/**" }, null)
+        };
+
+        final File deb = File.createTempFile("jdeb", ".deb");
+
+        final PackageDescriptor packageDescriptor = processor.createDeb(new File[] { control }, data, deb, "gzip" );
+
+        assertTrue(packageDescriptor.isValid());
+        assertEquals("" + deb.length(), packageDescriptor.get("Size"));
+
+        final List<String> members = new ArrayList<String>();
+        final Set<String> filesInDeb = new HashSet<String>();
+        long controlLength = 0;
+
+        final ArArchiveInputStream ar = new ArArchiveInputStream(new FileInputStream(deb));
+        while(true) {
+            final ArArchiveEntry arEntry = ar.getNextArEntry();
+            if (arEntry == null) {
+                break;
+            }
+
+            members.add(arEntry.getName());
+
+            if ("control.tar.gz".equals(arEntry.getName())) {
+                controlLength = arEntry.getLength();
+            }
+
+            if ("data.tar.gz".equals(arEntry.getName())) {
+
+                final TarInputStream tar = new TarInputStream(new GZIPInputStream(new NonClosingInputStream(ar)));
+
+                while(true) {
+                    final TarEntry tarEntry = tar.getNextEntry();
+                    if (tarEntry == null) {
+                        break;
+                    }
+
+                    filesInDeb.add(tarEntry.getName());
+                }
+
+                tar.close();
+                break;
+            }
+            for (int i = 0; i < arEntry.getLength(); i++) {
+                ar.read();
+            }
+        }
+
+        ar.close();
+
+        assertEquals("debian-binary", members.get(0));
+        assertEquals("control.tar.gz", members.get(1));
+        assertEquals("data.tar.gz", members.get(members.size() - 1));
+        assertTrue("testfile wasn't found in the package", filesInDeb.contains("./test/testfile"));
+
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+
+        return controlLength;
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb;
+
+import java.io.File;
+
+public final class ProcessorScaleTestCase extends AbstractScaleTestCase {
+
+    public static void main( final String[] args ) throws Exception {
+        monitor();
+
+        final File control = new File(ProcessorScaleTestCase.class.getResource("/org/vafer/jdeb/deb/control/control").toURI());
+        final File deb = new File(args[0]);
+
+        final Processor processor = new Processor(new Console() {
+            public void println( final String s ) {
+            }
+        }, null);
+        processor.createDeb(new File[] { control }, new DataProducer[] { new SyntheticDataProducer(ENTRIES, 64) }, deb, "gzip");
+
+        if (processor.getArchiveIndex().getFileCount() != ENTRIES) {
+            throw new IllegalStateException("Archived " + processor.getArchiveIndex().getFileCount() + " of " + ENTRIES + " files");
+        }
+
+        report(processor);
+    }
+
+    public void testHeap() throws Exception {
+        final File deb = File.createTempFile("jdeb", ".deb");
+        try {
+            final Heap heap = run("192m", new String[] { deb.getPath() });
+
+            assertPerEntry("The packaging", 128, heap.getRetained());
+            assertPerEntry("Building the package", 144, heap.getPeak());
+        } finally {
+            deb.delete();
+        }
+    }
+}
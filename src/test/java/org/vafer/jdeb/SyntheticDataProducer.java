@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Produces a tree of generated entries without any files on disk. The
+ * names and the content are created while producing, so the producer
+ * itself does not hold on to anything no matter how many entries it has.
+ *
+ * ATTENTION: don't use outside of jdeb
+ *
+ * @author Torsten Curdt <tcurdt@vafer.org>
+ */
+public final class SyntheticDataProducer implements DataProducer {
+
+    private static final int FILES_PER_DIRECTORY = 1000;
+
+    private final int files;
+    private final byte[] content;
+
+    /**
+     * @param pFiles the number of files, there is a directory for every 1000 of them
+     * @param pMaxSize the maximum size of a file
+     */
+    public SyntheticDataProducer( final int pFiles, final int pMaxSize ) {
+        files = pFiles;
+        content = new byte[pMaxSize];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < files; i++) {
+            final int directory = i / FILES_PER_DIRECTORY;
+            if (i % FILES_PER_DIRECTORY == 0) {
+                name.setLength(0);
+                name.append("usr/share/synthetic/").append(directory % 100).append("/dir").append(directory);
+                pReceiver.onEachDir(name.toString(), null, "root", 0, "root", 0, 0755, 0);
+            }
+
+            name.setLength(0);
+            name.append("usr/share/synthetic/").append(directory % 100).append("/dir").append(directory).append("/file").append(i);
+            final int size = content.length > 0 ? i % (content.length + 1) : 0;
+            pReceiver.onEachFile(new ByteArrayInputStream(content, 0, size), name.toString(), null, "root", 0, "root", 0, 0644, size);
+        }
+    }
+}
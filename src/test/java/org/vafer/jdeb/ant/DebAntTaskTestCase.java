@@ -25,6 +25,8 @@ import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
+import com.github.luben.zstd.ZstdInputStream;
+
 import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
 import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
 import org.apache.tools.ant.BuildException;
@@ -34,6 +36,7 @@ import org.apache.tools.ant.ProjectHelper;
 import org.apache.tools.bzip2.CBZip2InputStream;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarInputStream;
+import org.tukaani.xz.XZInputStream;
 import org.vafer.jdeb.ar.NonClosingInputStream;
 
 /**
@@ -155,6 +158,58 @@ public final class DebAntTaskTestCase extends TestCase {
         assertTrue(out.toString().indexOf("Total size") == -1);
     }
 
+    public void testRulesMapper() throws Exception {
+        project.executeTarget("rules-mapper");
+
+        File deb = new File("target/test-classes/test.deb");
+        assertTrue("package not build", deb.exists());
+
+        ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(deb));
+        ArArchiveEntry entry;
+        int files = 0;
+        while ((entry = in.getNextArEntry()) != null) {
+            if (entry.getName().equals("data.tar.gz")) {
+                TarInputStream tar = new TarInputStream(new GZIPInputStream(new NonClosingInputStream(in)));
+                TarEntry tarentry;
+                while ((tarentry = tar.getNextEntry()) != null) {
+                    if (tarentry.isDirectory()) {
+                        assertEquals("directory mode (" + tarentry.getName() + ")", 0750, tarentry.getMode() & 07777);
+                        assertEquals("user", "app", tarentry.getUserName());
+                        assertEquals("group", "app", tarentry.getGroupName());
+                    } else {
+                        assertEquals("file mode (" + tarentry.getName() + ")", 0644, tarentry.getMode() & 07777);
+                        assertEquals("user", "root", tarentry.getUserName());
+                        assertEquals("group", "staff", tarentry.getGroupName());
+                        files++;
+                    }
+                }
+                tar.close();
+            } else {
+                // skip to the next entry
+                long skip = entry.getLength();
+                while(skip > 0) {
+                    long skipped = in.skip(skip);
+                    if (skipped == -1) {
+                        throw new IOException("Failed to skip");
+                    }
+                    skip -= skipped;
+                }
+            }
+        }
+        in.close();
+
+        assertEquals("files", 1, files);
+    }
+
+    public void testMissingRules() {
+        try {
+            project.executeTarget("missing-rules");
+            fail("No exception thrown");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
     public void testFileSet() {
         project.executeTarget("fileset");
 
@@ -208,6 +263,25 @@ public final class DebAntTaskTestCase extends TestCase {
         }
     }
 
+    public void testInvalidCompressionLevel() throws Exception {
+        try {
+            project.executeTarget("invalid-compression-level");
+            fail("No exception thrown");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
+    public void testNegativeDataPrefetchBudget() throws Exception {
+        // the budget of the data element is kept instead of the one of the task
+        try {
+            project.executeTarget("negative-data-prefetch-budget");
+            fail("No exception thrown");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
     public void testBZip2Compression() throws Exception {
         project.executeTarget("bzip2-compression");
 
@@ -246,6 +320,111 @@ public final class DebAntTaskTestCase extends TestCase {
         assertTrue("bz2 file not found", found);
     }
 
+    public void testXZCompression() throws Exception {
+        project.executeTarget("xz-compression");
+
+        File deb = new File("target/test-classes/test.deb");
+        assertTrue("package not build", deb.exists());
+
+        boolean found = false;
+
+        ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(deb));
+        ArArchiveEntry entry;
+        while ((entry = in.getNextArEntry()) != null) {
+            if (entry.getName().equals("data.tar.xz")) {
+                found = true;
+
+                TarInputStream tar = new TarInputStream(new XZInputStream(in));
+                while (tar.getNextEntry() != null);
+                tar.close();
+                break;
+            } else {
+                // skip to the next entry
+                long skip = entry.getLength();
+                while(skip > 0) {
+                    long skipped = in.skip(skip);
+                    if (skipped == -1) {
+                        throw new IOException("Failed to skip");
+                    }
+                    skip -= skipped;
+                }
+            }
+        }
+        in.close();
+
+        assertTrue("xz file not found", found);
+    }
+
+    public void testZstdCompression() throws Exception {
+        project.executeTarget("zstd-compression");
+
+        File deb = new File("target/test-classes/test.deb");
+        assertTrue("package not build", deb.exists());
+
+        boolean found = false;
+
+        ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(deb));
+        ArArchiveEntry entry;
+        while ((entry = in.getNextArEntry()) != null) {
+            if (entry.getName().equals("data.tar.zst")) {
+                found = true;
+
+                TarInputStream tar = new TarInputStream(new ZstdInputStream(in));
+                while (tar.getNextEntry() != null);
+                tar.close();
+                break;
+            } else {
+                // skip to the next entry
+                long skip = entry.getLength();
+                while(skip > 0) {
+                    long skipped = in.skip(skip);
+                    if (skipped == -1) {
+                        throw new IOException("Failed to skip");
+                    }
+                    skip -= skipped;
+                }
+            }
+        }
+        in.close();
+
+        assertTrue("zst file not found", found);
+    }
+
+    private String getDataName( File deb ) throws Exception {
+        ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(deb));
+        try {
+            ArArchiveEntry entry;
+            while ((entry = in.getNextArEntry()) != null) {
+                if (entry.getName().startsWith("data.tar")) {
+                    return entry.getName();
+                }
+            }
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testProfileCompression() throws Exception {
+        project.executeTarget("profile-compression");
+
+        File deb = new File("target/test-classes/test.deb");
+        assertTrue("package not build", deb.exists());
+
+        assertEquals("data.tar.zst", getDataName(deb));
+    }
+
+    public void testAutoCompression() throws Exception {
+        project.executeTarget("auto-compression");
+
+        File deb = new File("target/test-classes/test.deb");
+        assertTrue("package not build", deb.exists());
+
+        // with such a low throughput objective the smallest output wins
+        String name = getDataName(deb);
+        assertTrue(name, name.equals("data.tar.xz") || name.equals("data.tar.bz2") || name.equals("data.tar.zst"));
+    }
+
     public void testNoCompression() throws Exception {
         project.executeTarget("no-compression");
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.ar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+
+public final class ArArchiveChannelTestCase extends TestCase {
+
+    private String read( final ArArchiveInputStream pInput, final ArArchiveEntry pEntry ) throws Exception {
+        final byte[] content = new byte[(int) pEntry.getLength()];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) pInput.read();
+        }
+        return new String(content, "US-ASCII");
+    }
+
+    public void testReservedEntry() throws Exception {
+        final File out = File.createTempFile("jdeb", ".ar");
+
+        final RandomAccessFile file = new RandomAccessFile(out, "rw");
+        final ArArchiveChannel ar = new ArArchiveChannel(file.getChannel());
+        ar.putEntry("first", "odd".getBytes());
+
+        final long reserved = ar.position();
+        ar.position(reserved + 200);
+
+        final OutputStream data = ar.putEntry("data");
+        data.write("back-patched".getBytes());
+        data.close();
+
+        ar.position(reserved);
+        ar.putEntry("second", "even".getBytes());
+        ar.putPadding(reserved + 200);
+        file.close();
+
+        final ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(out));
+
+        ArArchiveEntry entry = in.getNextArEntry();
+        assertEquals("first", entry.getName());
+        assertEquals("odd", read(in, entry));
+        in.read(); // padding
+
+        entry = in.getNextArEntry();
+        assertEquals("second", entry.getName());
+        assertEquals("even", read(in, entry));
+
+        entry = in.getNextArEntry();
+        assertEquals("_padding", entry.getName());
+        assertEquals(200 - 2 * ArArchiveChannel.HEADER_LENGTH - 4, entry.getLength());
+        read(in, entry);
+
+        entry = in.getNextArEntry();
+        assertEquals("data", entry.getName());
+        assertEquals("back-patched", read(in, entry));
+
+        assertNull(in.getNextArEntry());
+        in.close();
+
+        assertTrue(out.delete());
+    }
+
+    public void testFileEntry() throws Exception {
+        final File content = File.createTempFile("jdeb", ".txt");
+        final FileOutputStream output = new FileOutputStream(content);
+        output.write("transferred".getBytes());
+        output.close();
+
+        final File out = File.createTempFile("jdeb", ".ar");
+
+        final RandomAccessFile file = new RandomAccessFile(out, "rw");
+        final ArArchiveChannel ar = new ArArchiveChannel(file.getChannel());
+        ar.putEntry("file", content);
+        ar.putEntry("after", "entry".getBytes());
+        file.close();
+
+        final ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(out));
+
+        ArArchiveEntry entry = in.getNextArEntry();
+        assertEquals("file", entry.getName());
+        assertEquals("transferred", read(in, entry));
+        in.read(); // padding
+
+        entry = in.getNextArEntry();
+        assertEquals("after", entry.getName());
+        assertEquals("entry", read(in, entry));
+
+        in.close();
+
+        assertTrue(out.delete());
+        assertTrue(content.delete());
+    }
+
+    public void testMove() throws Exception {
+        final File out = File.createTempFile("jdeb", ".ar");
+
+        final RandomAccessFile file = new RandomAccessFile(out, "rw");
+        final ArArchiveChannel ar = new ArArchiveChannel(file.getChannel());
+
+        final long reserved = ar.position();
+        ar.position(reserved + 2);
+
+        final OutputStream data = ar.putEntry("data");
+        data.write("moved".getBytes());
+        data.close();
+        final long length = ar.position() - reserved - 2;
+
+        final byte[] control = "does not fit".getBytes();
+        final long controlEnd = reserved + ArArchiveChannel.getEntryLength(control.length);
+        assertFalse(ArArchiveChannel.isPaddable(reserved + 2 - controlEnd));
+
+        ar.move(reserved + 2, length, controlEnd);
+        ar.position(reserved);
+        ar.putEntry("control", control);
+        file.close();
+
+        final ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(out));
+
+        ArArchiveEntry entry = in.getNextArEntry();
+        assertEquals("control", entry.getName());
+        assertEquals("does not fit", read(in, entry));
+
+        entry = in.getNextArEntry();
+        assertEquals("data", entry.getName());
+        assertEquals("moved", read(in, entry));
+
+        in.close();
+
+        assertTrue(out.delete());
+    }
+
+    public void testEveryGap() throws Exception {
+        final byte[] control = "control".getBytes();
+
+        for (int gap = -10; gap <= ArArchiveChannel.HEADER_LENGTH + 4; gap++) {
+            final File out = File.createTempFile("jdeb", ".ar");
+
+            final RandomAccessFile file = new RandomAccessFile(out, "rw");
+            final ArArchiveChannel ar = new ArArchiveChannel(file.getChannel());
+
+            final long reserved = ar.position();
+            final long controlEnd = reserved + ArArchiveChannel.getEntryLength(control.length);
+            final long dataPosition = controlEnd + gap;
+            ar.position(dataPosition);
+
+            final OutputStream data = ar.putEntry("data");
+            data.write("moved".getBytes());
+            data.close();
+            final long length = ar.position() - dataPosition;
+
+            final long position = ArArchiveChannel.getPaddablePosition(controlEnd, dataPosition);
+            assertTrue("gap " + gap, position >= dataPosition);
+            assertTrue("gap " + gap, ArArchiveChannel.isPaddable(position - controlEnd));
+
+            ar.move(dataPosition, length, position);
+            ar.position(reserved);
+            ar.putEntry("control", control);
+            ar.putPadding(position);
+            file.close();
+
+            final ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(out));
+
+            ArArchiveEntry entry = in.getNextArEntry();
+            assertEquals("control", entry.getName());
+            assertEquals("control", read(in, entry));
+            in.read(); // padding
+
+            entry = in.getNextArEntry();
+            if (position > controlEnd) {
+                assertEquals("_padding", entry.getName());
+                read(in, entry);
+                entry = in.getNextArEntry();
+            }
+            assertEquals("gap " + gap, "data", entry.getName());
+            assertEquals("moved", read(in, entry));
+
+            in.close();
+
+            assertTrue(out.delete());
+        }
+    }
+}
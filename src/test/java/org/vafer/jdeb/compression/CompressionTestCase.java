@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import junit.framework.TestCase;
+
+public final class CompressionTestCase extends TestCase {
+
+    public void testLevels() {
+        assertTrue(Compression.isValidLevel("gzip", -1));
+        assertTrue(Compression.isValidLevel("gzip", 9));
+        assertFalse(Compression.isValidLevel("gzip", 15));
+        assertTrue(Compression.isValidLevel("xz", 0));
+        assertFalse(Compression.isValidLevel("xz", 12));
+        assertTrue(Compression.isValidLevel("zstd", 22));
+        assertFalse(Compression.isValidLevel("zstd", 0));
+        assertFalse(Compression.isValidLevel("bzip2", 9));
+        assertTrue(Compression.isValidLevel("bzip2", -1));
+        assertFalse(Compression.isValidLevel("max", 15));
+        assertFalse(Compression.isValidLevel("none", 1));
+        assertFalse(Compression.isValidLevel("gzip", -2));
+    }
+
+    public void testAutoLevels() {
+        // zstd supports it
+        assertTrue(Compression.isValidLevel(Compression.AUTO, 15));
+        assertFalse(Compression.isValidLevel(Compression.AUTO, 23));
+    }
+
+    public void testInvalidLevel() {
+        try {
+            Compression.GZIP.withLevel(15);
+            fail("No exception thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testAvailable() throws Exception {
+        Compression.ZSTD.checkAvailable();
+        Compression.GZIP.checkAvailable();
+    }
+}
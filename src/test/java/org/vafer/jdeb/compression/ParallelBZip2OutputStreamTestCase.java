@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.tools.bzip2.CBZip2InputStream;
+
+public final class ParallelBZip2OutputStreamTestCase extends TestCase {
+
+    private static final int BLOCK_SIZE = 50 * 1000;
+
+    private byte[] createContent( final int pLength ) {
+        // compressible but not trivial
+        final Random random = new Random(42);
+        final byte[] content = new byte[pLength];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    private byte[] compress( final byte[] pContent, final int pThreads, final int pChunk ) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ParallelBZip2OutputStream out = new ParallelBZip2OutputStream(bytes, BLOCK_SIZE, pThreads);
+        for (int i = 0; i < pContent.length; i += pChunk) {
+            out.write(pContent, i, Math.min(pChunk, pContent.length - i));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] decompress( final byte[] pCompressed ) throws Exception {
+        final InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(pCompressed));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public void testRoundTrip() throws Exception {
+        final byte[] content = createContent(5 * BLOCK_SIZE + 123);
+        final byte[] compressed = compress(content, 4, 1000);
+
+        assertTrue(compressed.length < content.length);
+        assertTrue(Arrays.equals(content, decompress(compressed)));
+    }
+
+    public void testIndependentOfThreads() throws Exception {
+        final byte[] content = createContent(7 * BLOCK_SIZE + 11);
+        final byte[] expected = compress(content, 1, content.length);
+
+        assertTrue(Arrays.equals(expected, compress(content, 2, 777)));
+        assertTrue(Arrays.equals(expected, compress(content, 8, 4096)));
+    }
+
+    public void testSingleStream() throws Exception {
+        final byte[] content = createContent(3 * BLOCK_SIZE + 5);
+        final byte[] compressed = compress(content, 2, 4096);
+
+        assertEquals('B', compressed[0]);
+        assertEquals('Z', compressed[1]);
+        assertEquals('h', compressed[2]);
+        assertEquals('9', compressed[3]);
+
+        // the legacy decoder stops at the end of the first stream
+        final InputStream in = new CBZip2InputStream(new ByteArrayInputStream(compressed, 2, compressed.length - 2));
+        for (int i = 0; i < content.length; i++) {
+            assertEquals(content[i], (byte) in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testBlockBoundaries() throws Exception {
+        final byte[] empty = new byte[0];
+        assertTrue(Arrays.equals(empty, decompress(compress(empty, 2, 1))));
+
+        final byte[] full = createContent(3 * BLOCK_SIZE);
+        assertTrue(Arrays.equals(full, decompress(compress(full, 2, BLOCK_SIZE))));
+    }
+}
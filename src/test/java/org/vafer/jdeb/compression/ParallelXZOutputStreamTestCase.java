@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.tukaani.xz.SingleXZInputStream;
+
+public final class ParallelXZOutputStreamTestCase extends TestCase {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private byte[] createContent( final int pLength ) {
+        // compressible but not trivial
+        final Random random = new Random(42);
+        final byte[] content = new byte[pLength];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    private byte[] compress( final byte[] pContent, final int pThreads, final int pChunk ) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ParallelXZOutputStream out = new ParallelXZOutputStream(bytes, 1, BLOCK_SIZE, pThreads);
+        for (int i = 0; i < pContent.length; i += pChunk) {
+            out.write(pContent, i, Math.min(pChunk, pContent.length - i));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] decompress( final byte[] pCompressed ) throws Exception {
+        final InputStream in = new SingleXZInputStream(new ByteArrayInputStream(pCompressed));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public void testRoundTrip() throws Exception {
+        final byte[] content = createContent(5 * BLOCK_SIZE + 123);
+        final byte[] compressed = compress(content, 4, 1000);
+
+        assertTrue(compressed.length < content.length);
+        assertTrue(Arrays.equals(content, decompress(compressed)));
+    }
+
+    public void testIndependentOfThreads() throws Exception {
+        final byte[] content = createContent(7 * BLOCK_SIZE + 11);
+        final byte[] expected = compress(content, 1, content.length);
+
+        assertTrue(Arrays.equals(expected, compress(content, 2, 777)));
+        assertTrue(Arrays.equals(expected, compress(content, 8, 4096)));
+    }
+
+    public void testDefaultBlockSize() throws Exception {
+        assertEquals(3 * 8 * 1024 * 1024, ParallelXZOutputStream.getBlockSize(ParallelXZOutputStream.DEFAULT_PRESET));
+    }
+
+    public void testBlockBoundaries() throws Exception {
+        final byte[] empty = new byte[0];
+        assertTrue(Arrays.equals(empty, decompress(compress(empty, 2, 1))));
+
+        final byte[] full = createContent(3 * BLOCK_SIZE);
+        assertTrue(Arrays.equals(full, decompress(compress(full, 2, BLOCK_SIZE))));
+    }
+
+    public void testMemoryBudget() throws Exception {
+        final long mb = 1024 * 1024;
+        final int blockSize = ParallelXZOutputStream.getBlockSize(9);
+
+        // plenty of memory keeps the blocks and limits the threads
+        assertEquals(blockSize, ParallelXZOutputStream.getBlockSize(9, blockSize, 8000 * mb));
+        final int threads = ParallelXZOutputStream.getThreads(9, blockSize, 16, 8000 * mb);
+        assertTrue(threads > 1 && threads < 16);
+
+        // a single thread with full blocks does not fit, the blocks shrink
+        final int smaller = ParallelXZOutputStream.getBlockSize(9, blockSize, 1000 * mb);
+        assertTrue(smaller < blockSize);
+        assertEquals(1, ParallelXZOutputStream.getThreads(9, smaller, 16, 1000 * mb));
+
+        // not even the encoder fits
+        try {
+            ParallelXZOutputStream.getBlockSize(9, blockSize, 500 * mb);
+            fail("the preset should not fit");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("heap"));
+        }
+    }
+}
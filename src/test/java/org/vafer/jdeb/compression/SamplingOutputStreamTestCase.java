@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.compression;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public final class SamplingOutputStreamTestCase extends TestCase {
+
+    public void testSmallContent() throws Exception {
+        final SamplingOutputStream out = new SamplingOutputStream(4, 16);
+        out.write("0123456789".getBytes());
+        out.close();
+
+        assertEquals(10, out.getCount());
+        assertEquals("0123456789", new String(out.getSample()));
+    }
+
+    public void testSpreadSample() throws Exception {
+        final SamplingOutputStream out = new SamplingOutputStream(1, 4);
+        for (int i = 0; i < 16; i++) {
+            out.write('a' + i);
+        }
+
+        assertEquals(16, out.getCount());
+
+        // every fourth byte is kept once the sample had to be thinned out twice
+        assertTrue(Arrays.equals("aeim".getBytes(), out.getSample()));
+    }
+}
@@ -0,0 +1,66 @@
+package org.vafer.jdeb.data;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public final class ArchiveIndexTestCase extends TestCase {
+
+    public void testParents() {
+        ArchiveIndex index = new ArchiveIndex();
+
+        assertEquals(2, index.addParents("./usr/share/doc/jdeb/copyright"));
+        assertTrue(index.isDirectory("usr/share/doc/jdeb"));
+        assertEquals(4, index.getDirectoryCount());
+
+        // only the parents below ./usr/share/ are new
+        assertEquals("./usr/share/".length(), index.addParents("./usr/share/man/man1/jdeb.1"));
+        assertEquals(6, index.getDirectoryCount());
+
+        assertEquals("./usr/share/man/".length(), index.addParents("./usr/share/man/man1/"));
+    }
+
+    public void testDirectories() {
+        ArchiveIndex index = new ArchiveIndex();
+
+        assertTrue(index.addDirectory("./"));
+        assertFalse(index.addDirectory("./"));
+
+        index.addParents("./usr/lib/jdeb/");
+        assertTrue(index.addDirectory("./usr/lib/jdeb/"));
+        assertFalse(index.addDirectory("./usr/lib/jdeb/"));
+        assertFalse(index.addDirectory("./usr/lib/"));
+        assertEquals(3, index.getDirectoryCount());
+    }
+
+    public void testDuplicates() {
+        ArchiveIndex index = new ArchiveIndex();
+
+        assertTrue(index.addFile("./etc/jdeb.conf"));
+        assertFalse(index.addFile("./etc/jdeb.conf"));
+        assertTrue(index.addFile("./etc/other.conf"));
+
+        assertEquals(2, index.getFileCount());
+        assertEquals(Arrays.asList(new String[] { "./etc/jdeb.conf" }), index.getDuplicates());
+    }
+
+    public void testQueries() {
+        ArchiveIndex index = new ArchiveIndex();
+        index.addFile("./usr/bin/b");
+        index.addFile("./usr/bin/a");
+        index.addDirectory("./usr/lib/");
+
+        assertTrue(index.contains("usr/bin/a"));
+        assertTrue(index.contains("/usr/bin/a"));
+        assertTrue(index.isFile("./usr/bin/a"));
+        assertFalse(index.isDirectory("./usr/bin/a"));
+        assertTrue(index.isDirectory("./usr/bin/"));
+        assertFalse(index.contains("./usr/bin/c"));
+        assertFalse(index.contains("./opt/bin/a"));
+
+        assertEquals(Arrays.asList(new String[] { "bin", "lib" }), Arrays.asList(index.list("usr")));
+        assertEquals(Arrays.asList(new String[] { "a", "b" }), Arrays.asList(index.list("./usr/bin/")));
+        assertEquals(0, index.list("./usr/lib").length);
+        assertEquals(0, index.list("./opt").length);
+    }
+}
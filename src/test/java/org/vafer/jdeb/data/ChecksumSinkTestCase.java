@@ -0,0 +1,50 @@
+package org.vafer.jdeb.data;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+public final class ChecksumSinkTestCase extends TestCase {
+
+    private static final String MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+
+    private String fill(ChecksumSink sink, int lines) throws Exception {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sink.add(MD5, "./usr/share/jdeb/fäile" + i);
+            expected.append(MD5).append(' ').append("./usr/share/jdeb/fäile").append(i).append('\n');
+        }
+        return expected.toString();
+    }
+
+    public void testInMemory() throws Exception {
+        ChecksumSink sink = new ChecksumSink();
+        String expected = fill(sink, 100);
+
+        assertFalse(sink.isSpilled());
+        assertEquals(expected, sink.toString());
+        assertEquals(expected.getBytes("UTF-8").length, sink.getLength());
+    }
+
+    public void testSpilled() throws Exception {
+        ChecksumSink sink = new ChecksumSink(1000);
+        String expected = fill(sink, 1000);
+
+        assertTrue(sink.isSpilled());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sink.writeTo(out);
+        assertEquals(expected, out.toString("UTF-8"));
+        assertEquals(out.size(), sink.getLength());
+
+        sink.delete();
+        assertFalse(sink.isSpilled());
+        assertEquals(0, sink.getLength());
+        try {
+            sink.toString();
+            fail("No exception thrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
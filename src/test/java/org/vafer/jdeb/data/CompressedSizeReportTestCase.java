@@ -0,0 +1,128 @@
+/*
+ * Copyright 2009 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+
+public final class CompressedSizeReportTestCase extends TestCase {
+
+    private static final Console SILENT = new Console() {
+        public void println(String s) {
+        }
+    };
+
+    /**
+     * Many small compressible files and one big random file that does not compress.
+     */
+    private static final DataProducer PRODUCER = new DataProducer() {
+        public void produce(DataConsumer receiver) throws IOException {
+            for (int i = 0; i < 200; i++) {
+                final byte[] content = ("line " + i + "\n").getBytes();
+                receiver.onEachFile(new ByteArrayInputStream(content), "usr/share/doc/file" + i, null, "root", 0, "root", 0, 0644, content.length);
+            }
+            final byte[] random = new byte[1024 * 1024];
+            new Random(1).nextBytes(random);
+            receiver.onEachFile(new ByteArrayInputStream(random), "usr/lib/random.bin", null, "root", 0, "root", 0, 0644, random.length);
+        }
+    };
+
+    private void assertReport( final String pCompression, final boolean pPipelined ) throws Exception {
+        final File deb = new File("target/sizes.tar");
+        final File report = new File("target/sizes.csv");
+
+        final DataBuilder builder = new DataBuilder(SILENT);
+        builder.setPipelined(pPipelined);
+        builder.setSizeReport(report);
+        builder.build(new DataProducer[] { PRODUCER }, deb, pCompression);
+
+        final CompressedSizeReport sizes = builder.getSizeReport();
+        final List<CompressedSizeReport.Row> files = sizes.getFiles();
+        assertEquals(201, files.size());
+
+        long total = 0;
+        for (CompressedSizeReport.Row file : files) {
+            assertTrue(file.getCompressed() >= 0);
+            total += file.getCompressed();
+        }
+        assertTrue(pCompression + ": " + total + " > " + deb.length(), total <= deb.length());
+
+        final CompressedSizeReport.Row random = files.get(200);
+        assertEquals("./usr/lib/random.bin", random.getPath());
+        assertTrue(pCompression + ": " + random.getCompressed(), random.getCompressed() > 1000 * 1000);
+
+        final List<CompressedSizeReport.Row> directories = sizes.getDirectories();
+        assertEquals(".", directories.get(0).getPath());
+        assertEquals(201, directories.get(0).getFiles());
+        assertEquals(total, directories.get(0).getCompressed());
+
+        CompressedSizeReport.Row doc = null;
+        for (CompressedSizeReport.Row directory : directories) {
+            if ("./usr/share/doc".equals(directory.getPath())) {
+                doc = directory;
+            }
+        }
+        assertNotNull(doc);
+        assertEquals(200, doc.getFiles());
+        assertTrue(pCompression + ": " + doc.getCompressed(), doc.getCompressed() < random.getCompressed() / 4);
+
+        assertTrue(report.isFile());
+    }
+
+    public void testUncompressed() throws Exception {
+        assertReport("none", false);
+    }
+
+    public void testBlocks() throws Exception {
+        assertReport("gzip", true);
+        assertReport("gzip", false);
+    }
+
+    public void testExactWithoutCompression() throws Exception {
+        final DataBuilder builder = new DataBuilder(SILENT);
+        builder.setSizeReport(new File("target/sizes.json"));
+        builder.build(new DataProducer[] { PRODUCER }, new File("target/sizes.tar"), "none");
+
+        final CompressedSizeReport.Row random = builder.getSizeReport().getFiles().get(200);
+        // header, content and no padding
+        assertEquals(512 + 1024 * 1024, random.getCompressed());
+    }
+
+    public void testFormats() throws Exception {
+        final DataBuilder builder = new DataBuilder(SILENT);
+        builder.setSizeReport(new File("target/sizes.json"));
+        builder.build(new DataProducer[] { PRODUCER }, new File("target/sizes.tar"), "gzip");
+
+        final StringWriter csv = new StringWriter();
+        builder.getSizeReport().writeCsv(csv);
+        assertTrue(csv.toString().startsWith("type,path,files,size,compressed,ratio\ndirectory,.,201,"));
+        assertTrue(csv.toString().contains("\nfile,./usr/lib/random.bin,1,1048576,"));
+
+        final StringWriter json = new StringWriter();
+        builder.getSizeReport().writeJson(json);
+        assertTrue(json.toString().contains("{ \"path\": \"./usr/lib/random.bin\", \"files\": 1, \"size\": 1048576, \"compressed\": "));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.data;
+
+import java.io.OutputStream;
+
+import org.vafer.jdeb.AbstractScaleTestCase;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.SyntheticDataProducer;
+
+public final class DataBuilderScaleTestCase extends AbstractScaleTestCase {
+
+    public static void main( final String[] args ) throws Exception {
+        monitor();
+
+        final DataBuilder builder = new DataBuilder(new Console() {
+            public void println( final String s ) {
+            }
+        });
+        builder.build(new DataProducer[] { new SyntheticDataProducer(ENTRIES, 64) }, new OutputStream() {
+            public void write( final int b ) {
+            }
+
+            public void write( final byte[] b, final int off, final int len ) {
+            }
+        }, "none");
+
+        if (builder.getIndex().getFileCount() != ENTRIES) {
+            throw new IllegalStateException("Archived " + builder.getIndex().getFileCount() + " of " + ENTRIES + " files");
+        }
+
+        report(builder);
+    }
+
+    public void testHeap() throws Exception {
+        final Heap heap = run("160m", new String[0]);
+
+        assertPerEntry("The archive index and md5sums", 128, heap.getRetained());
+        assertPerEntry("Building the data archive", 144, heap.getPeak());
+    }
+}
@@ -16,14 +16,24 @@
 
 package org.vafer.jdeb.data;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
 import org.vafer.jdeb.Console;
+import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.compression.Compression;
 import org.vafer.jdeb.data.DataBuilder;
 import org.vafer.jdeb.producers.DataProducerFileSet;
 
@@ -55,5 +65,184 @@ public class DataBuilderTestCase extends TestCase {
         assertTrue("empty md5 file", md5s.length() > 0);
         assertFalse("windows path separator found", md5s.indexOf("\\") != -1);
     }
-    
+
+    private static final Console SILENT = new Console() {
+        public void println(String s) {
+        }
+    };
+
+    private static final DataProducer PRODUCER = new DataProducer() {
+        public void produce(DataConsumer receiver) throws IOException {
+            receiver.onEachDir("usr/share/test", null, "root", 0, "root", 0, 0755, 0);
+            for (int i = 0; i < 20; i++) {
+                byte[] content = new byte[i * 17000];
+                Arrays.fill(content, (byte) i);
+                receiver.onEachFile(new ByteArrayInputStream(content), "usr/share/test/file" + i, null, "root", 0, "root", 0, 0644, content.length);
+            }
+        }
+    };
+
+    private byte[] build(boolean pipelined) throws Exception {
+        DataBuilder dataBuilder = new DataBuilder(SILENT);
+        dataBuilder.setPipelined(pipelined);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dataBuilder.build(new DataProducer[] { PRODUCER }, out, "gzip");
+        return out.toByteArray();
+    }
+
+    private byte[] uncompress(byte[] archive) throws Exception {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(archive));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Clear the modification times and the header checksums that depend on them.
+     */
+    private byte[] withoutModTimes(byte[] tar) {
+        byte[] result = tar.clone();
+        int offset = 0;
+        while (offset + 512 <= result.length && result[offset] != 0) {
+            Arrays.fill(result, offset + 136, offset + 136 + 12, (byte) 0);
+            Arrays.fill(result, offset + 148, offset + 148 + 8, (byte) 0);
+            String size = new String(result, offset + 124, 12).trim();
+            long length = size.length() > 0 ? Long.parseLong(size, 8) : 0;
+            offset += 512 + (int) ((length + 511) / 512 * 512);
+        }
+        return result;
+    }
+
+    private String describe(byte[] archive) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        TarInputStream tar = new TarInputStream(new GZIPInputStream(new ByteArrayInputStream(archive)));
+        TarEntry entry;
+        while ((entry = tar.getNextEntry()) != null) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            tar.copyEntryContents(content);
+            sb.append(entry.getName()).append(' ').append(entry.getMode()).append(' ').append(entry.getSize());
+            sb.append(' ').append(Arrays.hashCode(content.toByteArray())).append('\n');
+        }
+        tar.close();
+        return sb.toString();
+    }
+
+    public void testPipelinedBuildMatchesSequential() throws Exception {
+        byte[] sequential = build(false);
+        byte[] pipelined = build(true);
+
+        // the modification times of the entries can differ between the two builds
+        assertEquals(describe(sequential), describe(pipelined));
+        assertTrue(Arrays.equals(withoutModTimes(uncompress(sequential)), withoutModTimes(uncompress(pipelined))));
+    }
+
+    public void testPipelinedFailure() throws Exception {
+        DataBuilder dataBuilder = new DataBuilder(SILENT);
+
+        DataProducer failing = new DataProducer() {
+            public void produce(DataConsumer receiver) throws IOException {
+                PRODUCER.produce(receiver);
+                throw new IOException("broken");
+            }
+        };
+
+        try {
+            dataBuilder.build(new DataProducer[] { failing }, new ByteArrayOutputStream(), "gzip");
+            fail("No exception thrown");
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    public void testPipelinedFailureWithinFile() throws Exception {
+        final DataProducer failing = new DataProducer() {
+            public void produce(DataConsumer receiver) throws IOException {
+                InputStream input = new InputStream() {
+                    private int count;
+
+                    public int read() throws IOException {
+                        if (count == 300000) {
+                            throw new IOException("broken");
+                        }
+                        return count++ & 0xff;
+                    }
+                };
+                receiver.onEachFile(input, "usr/share/test/broken", null, "root", 0, "root", 0, 0644, 1000000);
+            }
+        };
+
+        final Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    new DataBuilder(SILENT).build(new DataProducer[] { failing }, new ByteArrayOutputStream(), "gzip");
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(30000);
+
+        assertFalse("The build did not finish", thread.isAlive());
+        assertTrue(thrown[0] instanceof IOException);
+        assertEquals("broken", thrown[0].getMessage());
+    }
+
+    /**
+     * Passes the files of the producer on and counts them.
+     */
+    private static final class CountingProducer implements DataProducer {
+
+        private final int count;
+        private final int size;
+        private int files;
+
+        private CountingProducer( int count, int size ) {
+            this.count = count;
+            this.size = size;
+        }
+
+        public void produce(DataConsumer receiver) throws IOException {
+            for (int i = 0; i < count; i++) {
+                files++;
+                byte[] content = new byte[i == 0 ? 10 * size : size];
+                Arrays.fill(content, (byte) i);
+                receiver.onEachFile(new ByteArrayInputStream(content), "usr/share/test/file" + i, null, "root", 0, "root", 0, 0644, content.length);
+            }
+        }
+    }
+
+    public void testAutoStopsOnceSampled() throws Exception {
+        CountingProducer producer = new CountingProducer(5000, 17000);
+
+        DataBuilder dataBuilder = new DataBuilder(SILENT);
+        dataBuilder.setSampleSize(100 * 1000);
+        dataBuilder.setCompressionLevel(1);
+
+        Compression compression = dataBuilder.getCompression(new DataProducer[] { producer }, Compression.AUTO);
+
+        assertEquals(1, compression.getLevel());
+        assertTrue("produced " + producer.files + " files", producer.files < 5000);
+    }
+
+    public void testAutoSamplesBeyondTheFirstFile() throws Exception {
+        // the first file alone is ten times the sample size
+        CountingProducer producer = new CountingProducer(20, 100 * 1000);
+
+        DataBuilder dataBuilder = new DataBuilder(SILENT);
+        dataBuilder.setSampleSize(100 * 1000);
+        dataBuilder.setCompressionLevel(1);
+
+        dataBuilder.getCompression(new DataProducer[] { producer }, Compression.AUTO);
+
+        assertEquals(20, producer.files);
+    }
 }
@@ -0,0 +1,108 @@
+package org.vafer.jdeb.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.tar.TarOutputStream;
+import org.vafer.jdeb.events.Event;
+import org.vafer.jdeb.events.EventListener;
+import org.vafer.jdeb.events.Level;
+import org.vafer.jdeb.events.SummarizingEventListener;
+
+/**
+ * Measures the bytes allocated per archived file, which must not grow
+ * with the number of files that are already in the archive.
+ */
+public final class DefaultDataConsumerAllocationTestCase extends TestCase {
+
+    private static final int BATCH = 5000;
+
+    private static final EventListener SILENT = new EventListener() {
+        public boolean isEnabled(Level level) {
+            return false;
+        }
+
+        public void onEvent(Event event) {
+        }
+    };
+
+    private static final OutputStream NULL = new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final Object threads = ManagementFactory.getThreadMXBean();
+    private Method allocatedBytes;
+
+    protected void setUp() throws Exception {
+        try {
+            allocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            if ((Long) allocatedBytes.invoke(threads, Thread.currentThread().getId()) < 0) {
+                allocatedBytes = null;
+            }
+        } catch (Exception e) {
+            // the JVM does not provide the allocated bytes of a thread
+            allocatedBytes = null;
+        }
+    }
+
+    private long getAllocatedBytes() throws Exception {
+        return (Long) allocatedBytes.invoke(threads, Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the average number of bytes allocated per file
+     */
+    private long archive(DefaultDataConsumer consumer, int offset) throws Exception {
+        // names and inputs are prepared up front so only the consumer gets measured
+        String[] names = new String[BATCH];
+        ByteArrayInputStream[] inputs = new ByteArrayInputStream[BATCH];
+        byte[] content = new byte[100];
+        for (int i = 0; i < BATCH; i++) {
+            int n = offset + i;
+            names[i] = "./usr/share/jdeb/dir" + (n / 100) + "/file" + n;
+            inputs[i] = new ByteArrayInputStream(content);
+        }
+
+        long before = getAllocatedBytes();
+        for (int i = 0; i < BATCH; i++) {
+            consumer.onEachFile(inputs[i], names[i], null, "root", 0, "root", 0, 0644, content.length);
+        }
+        return (getAllocatedBytes() - before) / BATCH;
+    }
+
+    public void testConstantAllocationPerFile() throws Exception {
+        if (allocatedBytes == null) {
+            return;
+        }
+
+        ChecksumSink checksums = new ChecksumSink(0);
+        try {
+            TarOutputStream tar = new TarOutputStream(NULL);
+            tar.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+            DefaultDataConsumer consumer = new DefaultDataConsumer(new SummarizingEventListener(SILENT), tar, checksums, new DataSize(), new ArchiveIndex());
+
+            // warm up
+            for (int i = 0; i < 4; i++) {
+                archive(consumer, i * BATCH);
+            }
+
+            long early = archive(consumer, 4 * BATCH);
+            for (int i = 5; i < 20; i++) {
+                archive(consumer, i * BATCH);
+            }
+            long late = archive(consumer, 20 * BATCH);
+
+            assertTrue("allocated " + early + " bytes per file early and " + late + " bytes later", late <= early * 3 / 2 + 64);
+        } finally {
+            checksums.delete();
+        }
+    }
+}
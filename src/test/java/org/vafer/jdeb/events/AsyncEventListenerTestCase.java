@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public final class AsyncEventListenerTestCase extends TestCase {
+
+    public void testOrderAndThread() {
+        final List<String> messages = new ArrayList<String>();
+        final List<String> threads = new ArrayList<String>();
+
+        AsyncEventListener listener = new AsyncEventListener(new EventListener() {
+            public boolean isEnabled( Level pLevel ) {
+                return true;
+            }
+
+            public void onEvent( Event pEvent ) {
+                messages.add(pEvent.getMessage());
+            }
+        }, 4);
+
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            listener.onEvent(new Event(Level.INFO, Event.FILE, "file" + i, i) {
+                protected String createMessage() {
+                    threads.add(Thread.currentThread().getName());
+                    return "message" + n;
+                }
+            });
+        }
+        listener.close();
+
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message" + i, messages.get(i));
+            assertEquals("jdeb-events", threads.get(i));
+        }
+
+        // events after closing are dropped
+        assertFalse(listener.isEnabled(Level.WARN));
+        listener.onEvent(new Event(Level.WARN, "late"));
+        assertEquals(100, messages.size());
+    }
+
+    public void testFailureIsRethrownOnClose() {
+        final List<String> messages = new ArrayList<String>();
+
+        AsyncEventListener listener = new AsyncEventListener(new EventListener() {
+            public boolean isEnabled( Level pLevel ) {
+                return true;
+            }
+
+            public void onEvent( Event pEvent ) {
+                if (messages.size() == 10) {
+                    throw new IllegalStateException("broken");
+                }
+                messages.add(pEvent.getMessage());
+            }
+        }, 4);
+
+        for (int i = 0; i < 100; i++) {
+            listener.onEvent(new Event(Level.INFO, "message" + i));
+        }
+
+        try {
+            listener.close();
+            fail("the failure of the listener should have been rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+
+        // no events are passed on after the failure
+        assertEquals(10, messages.size());
+    }
+
+    public void testFailureIsSuppressedByPrimary() {
+        AsyncEventListener listener = new AsyncEventListener(new EventListener() {
+            public boolean isEnabled( Level pLevel ) {
+                return true;
+            }
+
+            public void onEvent( Event pEvent ) {
+                throw new IllegalStateException("broken");
+            }
+        });
+
+        listener.onEvent(new Event(Level.INFO, "message"));
+
+        Exception primary = new Exception("packaging failed");
+        listener.close(primary);
+
+        assertEquals(1, primary.getSuppressed().length);
+        assertEquals("broken", primary.getSuppressed()[0].getMessage());
+
+        // closing again does not throw anymore
+        listener.close();
+    }
+}
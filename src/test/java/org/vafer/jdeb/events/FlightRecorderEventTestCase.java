@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public final class FlightRecorderEventTestCase extends TestCase {
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Recording");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public void testNotRecording() throws Exception {
+        assertFalse(FlightRecorderEvent.PHASE.isEnabled());
+
+        final FlightRecorderEvent.Span span = FlightRecorderEvent.PHASE.begin("one");
+        assertSame("not recording must not allocate", span, FlightRecorderEvent.PHASE.begin("two"));
+        span.end(1);
+    }
+
+    /**
+     * @return the "name" of the recorded jdeb events
+     */
+    private static List<String> record( final Runnable pRunnable ) throws Exception {
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, "org.vafer.jdeb.Phase");
+        recordingClass.getMethod("enable", String.class).invoke(recording, "org.vafer.jdeb.Entry");
+        recordingClass.getMethod("start").invoke(recording);
+        try {
+            pRunnable.run();
+        } finally {
+            recordingClass.getMethod("stop").invoke(recording);
+        }
+
+        final File file = File.createTempFile("jdeb", ".jfr");
+        try {
+            final Object path = file.getClass().getMethod("toPath").invoke(file);
+            recordingClass.getMethod("dump", Class.forName("java.nio.file.Path")).invoke(recording, path);
+            recordingClass.getMethod("close").invoke(recording);
+
+            final Class<?> recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+            final List<?> events = (List<?>) recordingFileClass.getMethod("readAllEvents", Class.forName("java.nio.file.Path")).invoke(null, path);
+
+            final List<String> names = new ArrayList<String>();
+            for (Object event : events) {
+                final Object type = event.getClass().getMethod("getEventType").invoke(event);
+                final String typeName = (String) type.getClass().getMethod("getName").invoke(type);
+                if (typeName.startsWith("org.vafer.jdeb.")) {
+                    names.add((String) event.getClass().getMethod("getValue", String.class).invoke(event, "name"));
+                }
+            }
+            return names;
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testRecording() throws Exception {
+        if (!isAvailable()) {
+            return;
+        }
+
+        final List<String> names = record(new Runnable() {
+            public void run() {
+                assertTrue(FlightRecorderEvent.PHASE.isEnabled());
+                FlightRecorderEvent.PHASE.begin("data").end(100);
+                FlightRecorderEvent.ENTRY.begin("./small").end(100);
+                FlightRecorderEvent.ENTRY.begin("./big").end(FlightRecorderEvent.DEFAULT_ENTRY_BYTES);
+            }
+        });
+
+        assertTrue(names.toString(), names.contains("data"));
+        assertTrue(names.toString(), names.contains("./big"));
+        assertFalse("below the thresholds", names.contains("./small"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public final class SummarizingEventListenerTestCase extends TestCase {
+
+    private static final class RecordingListener implements EventListener {
+
+        private final Level level;
+        private final List<Event> events = new ArrayList<Event>();
+
+        private RecordingListener( Level level ) {
+            this.level = level;
+        }
+
+        public boolean isEnabled( Level pLevel ) {
+            return level.includes(pLevel);
+        }
+
+        public void onEvent( Event pEvent ) {
+            events.add(pEvent);
+        }
+    }
+
+    private void archive( SummarizingEventListener summary ) {
+        for (int i = 0; i < 100; i++) {
+            summary.onEvent(new Event(Level.DEBUG, Event.FILE, "./file" + i, i * 10) {
+                protected String createMessage() {
+                    throw new AssertionError("the message must not be formatted");
+                }
+            });
+        }
+        summary.onEvent(new Event(Level.DEBUG, Event.DIRECTORY, "./dir/", 0));
+        summary.onEvent(new Event(Level.WARN, "Duplicate file ./file1"));
+    }
+
+    public void testSummary() {
+        RecordingListener listener = new RecordingListener(Level.INFO);
+        SummarizingEventListener summary = new SummarizingEventListener(listener, 3);
+
+        archive(summary);
+
+        // only the warning has been passed on
+        assertEquals(1, listener.events.size());
+
+        assertEquals(100, summary.getFiles());
+        assertEquals(1, summary.getDirectories());
+        assertEquals(49500, summary.getBytes());
+
+        List<Event> largest = summary.getLargestFiles();
+        assertEquals(3, largest.size());
+        assertEquals("./file99", largest.get(0).getName());
+        assertEquals("./file98", largest.get(1).getName());
+        assertEquals("./file97", largest.get(2).getName());
+
+        summary.summarize();
+        assertEquals("Archived 100 files with 49500 bytes in 1 directories", listener.events.get(1).getMessage());
+        assertEquals("  990 ./file99", listener.events.get(4).getMessage());
+    }
+
+    public void testDetails() {
+        RecordingListener listener = new RecordingListener(Level.DEBUG);
+        SummarizingEventListener summary = new SummarizingEventListener(listener);
+
+        summary.onEvent(new Event(Level.DEBUG, Event.FILE, "./file", 1));
+
+        assertEquals(1, listener.events.size());
+        assertEquals("file: ./file", listener.events.get(0).getMessage());
+    }
+
+    public void testSilent() {
+        RecordingListener listener = new RecordingListener(Level.WARN);
+        SummarizingEventListener summary = new SummarizingEventListener(listener);
+
+        summary.onEvent(new Event(Level.DEBUG, Event.FILE, "./file", 1));
+        summary.summarize();
+
+        assertEquals(0, listener.events.size());
+        assertEquals(1, summary.getFiles());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import java.io.InputStream;
+
+import org.apache.tools.tar.TarEntry;
+import org.vafer.jdeb.AbstractScaleTestCase;
+
+public final class LsMapperScaleTestCase extends AbstractScaleTestCase {
+
+    /**
+     * Generates the "ls -laR" output of directories with 1000 files while it gets read.
+     */
+    private static final class Listing extends InputStream {
+
+        private final int files;
+        private final StringBuilder line = new StringBuilder();
+        private byte[] bytes = new byte[0];
+        private int position;
+        private int next = -1;
+
+        private Listing( final int pFiles ) {
+            files = pFiles;
+        }
+
+        private boolean fill() {
+            line.setLength(0);
+            if (next == -1) {
+                line.append("total 0\n");
+                line.append("drwxr-xr-x   23 root  root   782 Jun 25 03:48 .\n");
+                line.append("drwxr-xr-x    3 root  root   102 Jun 25 03:48 ..\n");
+            } else if (next >= files) {
+                return false;
+            } else {
+                if (next % 1000 == 0) {
+                    line.append("\n./usr/share/synthetic/dir").append(next / 1000).append(":\n");
+                    line.append("total 8000\n");
+                    line.append("drwxr-xr-x   23 root  root   782 Jun 25 03:48 .\n");
+                    line.append("drwxr-xr-x    3 root  root   102 Jun 25 03:48 ..\n");
+                }
+                line.append(next % 3 == 0 ? "-rwxr-xr-x" : "-rw-r--r--");
+                line.append("    1 ").append(next % 2 == 0 ? "root" : "daemon").append("  root  100 Jun 25 03:48 file").append(next).append('\n');
+            }
+            next++;
+            bytes = line.toString().getBytes();
+            position = 0;
+            return true;
+        }
+
+        public int read() {
+            if (position == bytes.length && !fill()) {
+                return -1;
+            }
+            return bytes[position++] & 0xff;
+        }
+
+        public int read( final byte[] b, final int off, final int len ) {
+            if (position == bytes.length && !fill()) {
+                return -1;
+            }
+            final int n = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    public static void main( final String[] args ) throws Exception {
+        monitor();
+
+        final LsMapper mapper = new LsMapper(new Listing(ENTRIES));
+
+        final int last = ENTRIES - 1;
+        final TarEntry entry = mapper.map(new TarEntry("usr/share/synthetic/dir" + (last / 1000) + "/file" + last));
+        if (entry.getMode() != (last % 3 == 0 ? 0755 : 0644)) {
+            throw new IllegalStateException("The last file got mapped to " + Integer.toOctalString(entry.getMode()));
+        }
+
+        report(mapper);
+    }
+
+    public void testHeap() throws Exception {
+        final Heap heap = run("224m", new String[0]);
+
+        assertPerEntry("The mapping", 168, heap.getRetained());
+        assertPerEntry("Parsing the listing", 184, heap.getPeak());
+    }
+}
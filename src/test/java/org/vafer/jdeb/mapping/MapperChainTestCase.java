@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.tar.TarEntry;
+
+public final class MapperChainTestCase extends TestCase {
+
+    private static final String[] NAMES = { "usr/share/doc/", "usr/bin/app", "app", "etc/", "/opt/app/lib/a.jar", "" };
+    private static final String[] PREFIXES = { "", "/opt", "usr/share", "a/b/" };
+
+    private static TarEntry createEntry( final String pName ) {
+        final TarEntry entry = new TarEntry(pName);
+        entry.setUserId(0);
+        entry.setUserName("root");
+        entry.setGroupId(0);
+        entry.setGroupName("root");
+        entry.setMode(entry.isDirectory() ? TarEntry.DEFAULT_DIR_MODE : TarEntry.DEFAULT_FILE_MODE);
+        entry.setSize(entry.isDirectory() ? 0 : 1234);
+        return entry;
+    }
+
+    private static Mapper createMapper( final Random pRandom ) {
+        final int strip = pRandom.nextInt(4);
+        final String prefix = PREFIXES[pRandom.nextInt(PREFIXES.length)];
+        switch (pRandom.nextInt(4)) {
+            case 0:
+                return new PrefixMapper(strip, prefix);
+            case 1:
+                return new NullMapper();
+            default:
+                return new PermMapper(
+                    pRandom.nextBoolean() ? pRandom.nextInt(1000) : -1,
+                    pRandom.nextBoolean() ? pRandom.nextInt(1000) : -1,
+                    pRandom.nextBoolean() ? "user" + pRandom.nextInt(3) : null,
+                    pRandom.nextBoolean() ? "group" + pRandom.nextInt(3) : null,
+                    pRandom.nextBoolean() ? pRandom.nextInt(512) : -1,
+                    pRandom.nextBoolean() ? pRandom.nextInt(512) : -1,
+                    strip, prefix);
+        }
+    }
+
+    private static void assertSameEntry( final String pMessage, final TarEntry pExpected, final MutableEntry pActual ) {
+        assertEquals(pMessage, pExpected.getName(), pActual.getName());
+        assertEquals(pMessage, pExpected.getUserName(), pActual.getUserName());
+        assertEquals(pMessage, pExpected.getUserId(), pActual.getUserId());
+        assertEquals(pMessage, pExpected.getGroupName(), pActual.getGroupName());
+        assertEquals(pMessage, pExpected.getGroupId(), pActual.getGroupId());
+        assertEquals(pMessage, pExpected.getMode(), pActual.getMode());
+        assertEquals(pMessage, pExpected.getSize(), pActual.getSize());
+        assertEquals(pMessage, pExpected.isDirectory(), pActual.isDirectory());
+    }
+
+    public void testSameAsMappingOneByOne() {
+        final Random random = new Random(42);
+        final MutableEntry entry = new MutableEntry();
+
+        for (int i = 0; i < 2000; i++) {
+            final Mapper[] mappers = new Mapper[random.nextInt(5)];
+            for (int j = 0; j < mappers.length; j++) {
+                mappers[j] = createMapper(random);
+            }
+            final MapperChain chain = new MapperChain(mappers);
+
+            for (int j = 0; j < NAMES.length; j++) {
+                TarEntry expected = createEntry(NAMES[j]);
+                for (int k = 0; k < mappers.length; k++) {
+                    expected = mappers[k].map(expected);
+                }
+
+                entry.setFrom(createEntry(NAMES[j]));
+                chain.map(entry);
+
+                assertSameEntry(i + " " + NAMES[j], expected, entry);
+            }
+        }
+    }
+
+    public void testEmpty() {
+        assertTrue(new MapperChain(null).isEmpty());
+        assertTrue(new MapperChain(new Mapper[] { new NullMapper() }).isEmpty());
+        assertFalse(new MapperChain(new Mapper[] { new PrefixMapper(0, "") }).isEmpty());
+    }
+
+    public void testAdapter() {
+        final Mapper upper = new Mapper() {
+            public TarEntry map( final TarEntry pEntry ) {
+                pEntry.setUserName(pEntry.getUserName().toUpperCase());
+                return pEntry;
+            }
+        };
+
+        // a subclass of the PrefixMapper must not get fused
+        final Mapper suffix = new PrefixMapper(1, "") {
+            public TarEntry map( final TarEntry pEntry ) {
+                final TarEntry entry = super.map(pEntry);
+                entry.setName(entry.getName() + ".bak");
+                return entry;
+            }
+        };
+
+        final MutableEntry entry = new MutableEntry(createEntry("usr/bin/app"));
+        entry.setLinkName("app.sh");
+        new MapperChain(new Mapper[] { new PermMapper(-1, -1, "app", null, -1, -1, 1, "/opt"), upper, suffix }).map(entry);
+
+        assertEquals("/opt/bin/app.bak", entry.getName());
+        assertEquals("APP", entry.getUserName());
+        assertEquals("root", entry.getGroupName());
+        assertEquals(1234, entry.getSize());
+        assertEquals("app.sh", entry.getLinkName());
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.apache.tools.tar.TarEntry;
+
+public final class RuleMapperTestCase extends TestCase {
+
+    private static final String RULES =
+        "# pattern        mode  owner\n" +
+        "**               0644  root:root\n" +
+        "**/              0755  root:root\n" +
+        "\n" +
+        "bin/**           0755\n" +
+        "etc/**/*.conf    0640  app:app\n" +
+        "var/lib/app/     0750  1000:1000\n" +
+        "usr/share/**     -     doc\n";
+
+    private static MutableEntry map( final RuleMapper pMapper, final String pName ) {
+        final MutableEntry entry = new MutableEntry();
+        entry.set(pName, "", "builder", 0, "builder", 0, pName.endsWith("/") ? 040000 : 0100000, 0);
+        pMapper.map(entry);
+        return entry;
+    }
+
+    public void testMostSpecificWins() throws Exception {
+        final RuleMapper mapper = new RuleMapper(new ByteArrayInputStream(RULES.getBytes("UTF-8")));
+
+        MutableEntry entry = map(mapper, "README");
+        assertEquals(0644, entry.getMode());
+        assertEquals("root", entry.getUserName());
+
+        entry = map(mapper, "bin/app");
+        assertEquals(0755, entry.getMode());
+        // the rule does not set an owner
+        assertEquals("builder", entry.getUserName());
+
+        entry = map(mapper, "/etc/app/server.conf");
+        assertEquals(0640, entry.getMode());
+        assertEquals("app", entry.getUserName());
+        assertEquals("app", entry.getGroupName());
+
+        entry = map(mapper, "./etc/app/");
+        assertEquals(0755, entry.getMode());
+        assertEquals("root", entry.getGroupName());
+
+        entry = map(mapper, "var/lib/app/");
+        assertEquals(0750, entry.getMode());
+        assertEquals(1000, entry.getUserId());
+        assertEquals(1000, entry.getGroupId());
+        assertEquals("builder", entry.getUserName());
+
+        // the rule for the directory does not apply to a file of the same name
+        entry = map(mapper, "var/lib/app");
+        assertEquals(0644, entry.getMode());
+
+        entry = map(mapper, "usr/share/doc/copyright");
+        assertEquals(0100000, entry.getMode());
+        assertEquals("doc", entry.getUserName());
+        assertEquals("builder", entry.getGroupName());
+    }
+
+    public void testLaterRuleWins() {
+        final RuleMapper mapper = new RuleMapper(new String[] { "lib/*.jar 0600", "lib/*.jar 0644" });
+        assertEquals(0644, map(mapper, "lib/a.jar").getMode());
+    }
+
+    public void testNameResetsId() {
+        final RuleMapper mapper = new RuleMapper(new String[] { "bin/* 0755 app:app", "lib/* 0644 1001" });
+
+        MutableEntry entry = new MutableEntry();
+        entry.set("bin/app", "", "builder", 1000, "builder", 1000, 0100644, 0);
+        mapper.map(entry);
+        assertEquals("app", entry.getUserName());
+        assertEquals(0, entry.getUserId());
+        assertEquals("app", entry.getGroupName());
+        assertEquals(0, entry.getGroupId());
+
+        entry = new MutableEntry();
+        entry.set("lib/a.jar", "", "builder", 1000, "builder", 1000, 0100644, 0);
+        mapper.map(entry);
+        assertEquals(1001, entry.getUserId());
+        assertEquals(1000, entry.getGroupId());
+    }
+
+    public void testTarEntry() {
+        final RuleMapper mapper = new RuleMapper(new String[] { "bin/* 0755 root:staff" });
+        final TarEntry entry = mapper.map(new TarEntry("bin/app"));
+        assertEquals(0755, entry.getMode());
+        assertEquals("root", entry.getUserName());
+        assertEquals("staff", entry.getGroupName());
+    }
+
+    public void testInvalidRules() {
+        try {
+            new RuleMapper(new String[] { "bin/**" });
+            fail("the mode is missing");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new RuleMapper(new String[] { "bin/** 0855" });
+            fail("the mode is not octal");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static int[] getSpecificity( final String pPattern ) {
+        final int[] specificity = new int[3];
+        final String[] components = pPattern.split("/");
+        for (int i = 0; i < components.length; i++) {
+            if (components[i].equals("**")) {
+                specificity[2]--;
+            } else if (components[i].indexOf('*') != -1 || components[i].indexOf('?') != -1) {
+                specificity[1]++;
+            } else if (components[i].length() > 0) {
+                specificity[0]++;
+            }
+        }
+        return specificity;
+    }
+
+    /**
+     * @return the mode of the most specific matching rule, found by trying all of them
+     */
+    private static int findMode( final List<String> pPatterns, final String pName, final boolean pDirectory ) {
+        int[] best = null;
+        int mode = -1;
+        for (int i = 0; i < pPatterns.size(); i++) {
+            String pattern = pPatterns.get(i);
+            final boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly && !pDirectory) {
+                continue;
+            }
+            pattern = pattern.replace('/', File.separatorChar);
+            if (!SelectorUtils.matchPath(pattern, pName.replace('/', File.separatorChar))) {
+                continue;
+            }
+            final int[] specificity = getSpecificity(pPatterns.get(i));
+            final int[] candidate = { specificity[0], specificity[1], specificity[2], directoryOnly ? 1 : 0 };
+            boolean better = best == null;
+            for (int j = 0; j < candidate.length && !better; j++) {
+                if (candidate[j] != best[j]) {
+                    better = candidate[j] > best[j];
+                    break;
+                }
+                // equally specific, the later one wins
+                better = j == candidate.length - 1;
+            }
+            if (better) {
+                best = candidate;
+                mode = i;
+            }
+        }
+        return mode;
+    }
+
+    public void testSameAsTryingAllRules() {
+        final String[] components = { "usr", "lib", "etc", "app", "*.jar", "a*", "?pp", "**" };
+        final String[] names = { "usr", "lib", "etc", "app", "a.jar", "apps", "b.conf", "lib.jar" };
+        final Random random = new Random(7);
+
+        for (int n = 0; n < 200; n++) {
+            final List<String> patterns = new ArrayList<String>();
+            final String[] rules = new String[1 + random.nextInt(12)];
+            for (int i = 0; i < rules.length; i++) {
+                final StringBuilder pattern = new StringBuilder();
+                final int length = 1 + random.nextInt(4);
+                for (int j = 0; j < length; j++) {
+                    if (j > 0) {
+                        pattern.append('/');
+                    }
+                    pattern.append(components[random.nextInt(components.length)]);
+                }
+                if (random.nextInt(4) == 0) {
+                    pattern.append('/');
+                }
+                patterns.add(pattern.toString());
+                // the mode tells which rule has been applied
+                rules[i] = pattern + " " + Integer.toOctalString(i);
+            }
+
+            final RuleMapper mapper = new RuleMapper(rules);
+
+            for (int i = 0; i < 100; i++) {
+                final StringBuilder name = new StringBuilder();
+                final int length = 1 + random.nextInt(4);
+                for (int j = 0; j < length; j++) {
+                    if (j > 0) {
+                        name.append('/');
+                    }
+                    name.append(names[random.nextInt(names.length)]);
+                }
+                final boolean directory = random.nextBoolean();
+
+                final MutableEntry entry = new MutableEntry();
+                entry.set(name + (directory ? "/" : ""), "", "", 0, "", 0, -1, 0);
+                mapper.map(entry);
+
+                assertEquals(patterns + " " + entry.getName(), findMode(patterns, name.toString(), directory), entry.getMode());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.metrics;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public final class BuildMetricsTestCase extends TestCase {
+
+    public void testPhases() throws Exception {
+        final BuildMetrics metrics = new BuildMetrics();
+
+        final BuildMetrics.Phase data = metrics.start("data");
+        Thread.sleep(20);
+        data.stop().setFiles(10).setBytesIn(4000).setBytesOut(1000);
+
+        metrics.start("control").stop();
+
+        assertEquals(2, metrics.getPhases().size());
+        assertSame(data, metrics.getPhase("data"));
+        assertNull(metrics.getPhase("signing"));
+
+        assertTrue(data.getWallNanos() >= 20 * 1000000L);
+        assertEquals(0.25, data.getRatio(), 0.0001);
+        assertTrue(data.getFilesPerSecond() > 0);
+        assertTrue(data.getMegabytesPerSecond() > 0);
+        assertEquals(0.0, metrics.getPhase("control").getRatio(), 0.0001);
+
+        final long wall = data.getWallNanos();
+        data.stop();
+        assertEquals("stopping again must not change the time", wall, data.getWallNanos());
+    }
+
+    public void testReports() throws Exception {
+        final BuildMetrics metrics = new BuildMetrics();
+        metrics.start("data").stop().setFiles(3).setBytesIn(300).setBytesOut(100);
+
+        final List<String> table = metrics.toTable();
+        assertEquals(3, table.size());
+        assertTrue(table.get(0).startsWith("Phase"));
+        assertTrue(table.get(1).startsWith("data"));
+        assertTrue(table.get(1).endsWith("0.33"));
+        assertTrue(table.get(2).startsWith("total"));
+
+        final String json = metrics.toJson();
+        assertTrue(json, json.contains("\"name\": \"data\""));
+        assertTrue(json, json.contains("\"files\": 3"));
+        assertTrue(json, json.contains("\"ratio\": 0.33"));
+
+        assertEquals(new File("target", "x.deb.metrics.json"), BuildMetrics.getReportFile(new File("target", "x.deb")));
+    }
+
+    public void testParts() throws Exception {
+        final BuildMetrics metrics = new BuildMetrics();
+        final BuildMetrics.Phase data = metrics.start("data");
+        data.stop();
+        data.addPart("compress", 5 * 1000000000L).setBytesIn(400).setBytesOut(100);
+
+        assertEquals(1, data.getParts().size());
+        assertEquals(0.25, metrics.getPhase("compress").getRatio(), 0.0001);
+        assertEquals("the parts overlap the phase", data.getWallNanos(), metrics.getWallNanos());
+
+        final List<String> table = metrics.toTable();
+        assertEquals(4, table.size());
+        assertTrue(table.get(2).startsWith("  compress"));
+
+        final String json = metrics.toJson();
+        assertTrue(json, json.contains("\"parts\": ["));
+        assertTrue(json, json.contains("\"name\": \"compress\", \"wallMillis\": 5000"));
+    }
+}
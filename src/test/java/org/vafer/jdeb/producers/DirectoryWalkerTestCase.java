@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.DirectoryScanner;
+
+public final class DirectoryWalkerTestCase extends TestCase {
+
+    private File dir;
+
+    private void create( final String pPath ) throws IOException {
+        final File file = new File(dir, pPath);
+        file.getParentFile().mkdirs();
+        final FileOutputStream output = new FileOutputStream(file);
+        try {
+            // every file gets a size of its own
+            output.write(new byte[pPath.length()]);
+        } finally {
+            output.close();
+        }
+    }
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("jdeb", "walker");
+        dir.delete();
+        dir.mkdirs();
+
+        create("bin/app");
+        create("lib/a.jar");
+        create("lib/b.jar");
+        create("lib/ext/c.jar");
+        create("lib/ext/README");
+        create("node_modules/left-pad/index.js");
+        create("node_modules/left-pad/node_modules/x/index.js");
+        create("target/classes/A.class");
+        create("src/target/keep.txt");
+        create("doc/a.txt~");
+        create("doc/b.txt");
+        new File(dir, "empty").mkdirs();
+    }
+
+    private static void delete( final File pFile ) {
+        if (pFile.isDirectory() && !Files.isSymbolicLink(pFile.toPath())) {
+            final File[] files = pFile.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        pFile.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    /**
+     * @return what the directory producer used to archive, the scanner result filtered by the raw patterns
+     */
+    private List<String> scan( final String[] pIncludes, final String[] pExcludes, final boolean pDirectories ) {
+        final DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(dir);
+        scanner.setIncludes(pIncludes);
+        scanner.setExcludes(pExcludes);
+        scanner.setCaseSensitive(true);
+        scanner.setFollowSymlinks(true);
+        scanner.scan();
+
+        final PatternMatcher matcher = new PatternMatcher(pIncludes, pExcludes);
+        final List<String> result = new ArrayList<String>();
+        final String[] paths = pDirectories ? scanner.getIncludedDirectories() : scanner.getIncludedFiles();
+        for (int i = 0; i < paths.length; i++) {
+            if (paths[i].length() > 0 && matcher.matches(paths[i])) {
+                result.add(paths[i]);
+            }
+        }
+        return result;
+    }
+
+    private void assertSameAsScanner( final String[] pIncludes, final String[] pExcludes ) throws Exception {
+        final DataProducerDirectory producer = new DataProducerDirectory(dir, pIncludes, pExcludes, null);
+        for (int parallelism = 1; parallelism <= 4; parallelism *= 2) {
+            final DirectoryWalker walker = producer.createWalker();
+            walker.setParallelism(parallelism);
+            walker.walk();
+
+            assertEquals(scan(pIncludes, pExcludes, true), Arrays.asList(walker.getDirectories()));
+            assertEquals(scan(pIncludes, pExcludes, false), Arrays.asList(walker.getFiles()));
+        }
+    }
+
+    public void testSameAsScanner() throws Exception {
+        assertSameAsScanner(null, null);
+        assertSameAsScanner(new String[] { "**/*.jar" }, null);
+        assertSameAsScanner(new String[] { "lib/**", "bin/**" }, new String[] { "lib/ext/**" });
+        assertSameAsScanner(null, new String[] { "**/node_modules/**", "target/", "**/*~" });
+        assertSameAsScanner(new String[] { "lib/", "doc/*" }, new String[] { "**/ext" });
+        assertSameAsScanner(new String[] { "*" }, null);
+        assertSameAsScanner(new String[0], null);
+    }
+
+    public void testSorted() throws Exception {
+        final DirectoryWalker walker = new DirectoryWalker(dir, new PatternMatcher(null, null));
+        walker.walk();
+
+        final String[] files = walker.getFiles();
+        final String[] sorted = files.clone();
+        Arrays.sort(sorted);
+        assertEquals(Arrays.asList(sorted), Arrays.asList(files));
+        assertEquals(11, files.length);
+    }
+
+    public void testSizes() throws Exception {
+        final DirectoryWalker walker = new DirectoryWalker(dir, new PatternMatcher(null, null));
+        walker.walk();
+
+        final String[] files = walker.getFiles();
+        final long[] sizes = walker.getFileSizes();
+        assertEquals(files.length, sizes.length);
+        for (int i = 0; i < files.length; i++) {
+            assertEquals(files[i], new File(dir, files[i]).length(), sizes[i]);
+            assertEquals(files[i], files[i].length(), sizes[i]);
+        }
+    }
+
+    public void testSymlinkLoop() throws Exception {
+        try {
+            Files.createSymbolicLink(new File(dir, "lib/ext/loop").toPath(), dir.toPath());
+            Files.createSymbolicLink(new File(dir, "doc/bin").toPath(), new File(dir, "bin").toPath());
+        } catch (Exception e) {
+            // the file system does not support links
+            return;
+        }
+
+        final DirectoryWalker walker = new DirectoryWalker(dir, new PatternMatcher(null, null));
+        walker.walk();
+
+        final List<String> files = Arrays.asList(walker.getFiles());
+        assertTrue(files.contains("doc" + File.separator + "bin" + File.separator + "app"));
+        assertEquals(12, files.size());
+    }
+
+    public void testNotFollowingSymlinks() throws Exception {
+        try {
+            Files.createSymbolicLink(new File(dir, "doc/bin").toPath(), new File(dir, "bin").toPath());
+            Files.createSymbolicLink(new File(dir, "doc/app").toPath(), new File(dir, "bin/app").toPath());
+        } catch (Exception e) {
+            // the file system does not support links
+            return;
+        }
+
+        final DirectoryWalker walker = new DirectoryWalker(dir, new PatternMatcher(null, null));
+        walker.setFollowSymlinks(false);
+        walker.walk();
+
+        final List<String> files = Arrays.asList(walker.getFiles());
+        assertTrue(files.contains("doc" + File.separator + "app"));
+        assertFalse(Arrays.asList(walker.getDirectories()).contains("doc" + File.separator + "bin"));
+        assertEquals(12, files.size());
+    }
+
+    public void testMissingDirectory() throws Exception {
+        try {
+            new DirectoryWalker(new File(dir, "missing"), new PatternMatcher(null, null)).walk();
+            fail("the directory does not exist");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public final class FilePrefetcherTestCase extends TestCase {
+
+    private static final int[] SIZES = { 0, 1, 32 * 1024, 32 * 1024 + 1, 100000, 1000000, 17, 0, 65536 };
+
+    private File dir;
+    private File[] files;
+    private byte[][] contents;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("jdeb", "prefetch");
+        dir.delete();
+        dir.mkdirs();
+
+        final Random random = new Random(42);
+        files = new File[SIZES.length];
+        contents = new byte[SIZES.length][];
+        for (int i = 0; i < SIZES.length; i++) {
+            contents[i] = new byte[SIZES[i]];
+            random.nextBytes(contents[i]);
+            files[i] = new File(dir, "file" + i);
+            final FileOutputStream out = new FileOutputStream(files[i]);
+            try {
+                out.write(contents[i]);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    private static byte[] readFully( final InputStream pInput ) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[5000];
+        int n;
+        while ((n = pInput.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private void assertContents( final long pBudget ) throws Exception {
+        final FilePrefetcher prefetcher = new FilePrefetcher(files, pBudget);
+        try {
+            for (int i = 0; i < files.length; i++) {
+                final InputStream input = prefetcher.open(i);
+                try {
+                    assertTrue("content of file " + i, Arrays.equals(contents[i], readFully(input)));
+                    assertEquals(-1, input.read());
+                } finally {
+                    input.close();
+                }
+            }
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    public void testDefaultBudget() throws Exception {
+        assertContents(FilePrefetcher.DEFAULT_BUDGET);
+    }
+
+    public void testSmallBudget() throws Exception {
+        // a single buffer, every file larger than that is read from disk
+        assertContents(1);
+        assertContents(64 * 1024);
+    }
+
+    public void testOrder() throws Exception {
+        final FilePrefetcher prefetcher = new FilePrefetcher(files, FilePrefetcher.DEFAULT_BUDGET);
+        try {
+            prefetcher.open(0).close();
+            prefetcher.open(2);
+            fail("files must be opened in order");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    public void testMissingFile() throws Exception {
+        files[3].delete();
+
+        final FilePrefetcher prefetcher = new FilePrefetcher(files, FilePrefetcher.DEFAULT_BUDGET);
+        try {
+            for (int i = 0; i < 3; i++) {
+                prefetcher.open(i).close();
+            }
+            prefetcher.open(3);
+            fail("the missing file should fail when it gets opened");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            prefetcher.close();
+        }
+    }
+}
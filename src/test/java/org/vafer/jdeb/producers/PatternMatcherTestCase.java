@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+public final class PatternMatcherTestCase extends TestCase {
+
+    private static final String[] COMPONENTS = { "a", "b", "ab", "abc", "target", "node_modules", "x.jar", ".svn", "file~", "" };
+    private static final String[] PATTERN_COMPONENTS = { "a", "b", "*", "**", "?", "a*", "*b", "a?c", "*.jar", "target", "*~", ".svn", "**", "*a*" };
+
+    private static String randomPath( final Random pRandom, final String[] pComponents, final int pMaxLength ) {
+        final StringBuilder sb = new StringBuilder();
+        if (pRandom.nextInt(10) == 0) {
+            sb.append('/');
+        }
+        final int length = pRandom.nextInt(pMaxLength + 1);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(pComponents[pRandom.nextInt(pComponents.length)]);
+        }
+        if (pRandom.nextInt(10) == 0) {
+            sb.append('/');
+        }
+        return sb.toString();
+    }
+
+    private static boolean matchPath( final String[] pIncludes, final String[] pExcludes, final String pPath ) {
+        boolean included = false;
+        for (int i = 0; i < pIncludes.length; i++) {
+            included |= SelectorUtils.matchPath(pIncludes[i], pPath);
+        }
+        boolean excluded = false;
+        for (int i = 0; i < pExcludes.length; i++) {
+            excluded |= SelectorUtils.matchPath(pExcludes[i], pPath);
+        }
+        return included && !excluded;
+    }
+
+    public void testSameAsSelectorUtils() {
+        final Random random = new Random(42);
+        for (int n = 0; n < 500; n++) {
+            final String[] includes = new String[random.nextInt(4)];
+            for (int i = 0; i < includes.length; i++) {
+                includes[i] = randomPath(random, PATTERN_COMPONENTS, 4);
+            }
+            final String[] excludes = new String[random.nextInt(3)];
+            for (int i = 0; i < excludes.length; i++) {
+                excludes[i] = randomPath(random, PATTERN_COMPONENTS, 4);
+            }
+
+            final PatternMatcher matcher = new PatternMatcher(includes, excludes);
+            for (int i = 0; i < 200; i++) {
+                final String path = randomPath(random, COMPONENTS, 6);
+                // twice to also use the cached transitions
+                for (int j = 0; j < 2; j++) {
+                    assertEquals(path + " with " + Arrays.asList(includes) + " and " + Arrays.asList(excludes),
+                        matchPath(includes, excludes, path), matcher.matches(path));
+                }
+            }
+        }
+    }
+
+    public void testDefaults() {
+        final PatternMatcher matcher = new PatternMatcher(null, null);
+        assertTrue(matcher.matches("usr/bin/ls"));
+        assertTrue(matcher.matches(""));
+
+        assertFalse(new PatternMatcher(new String[0], null).matches("usr/bin/ls"));
+    }
+
+    public void testPruning() {
+        final PatternMatcher matcher = new PatternMatcher(new String[] { "usr/**", "etc/*.conf" }, new String[] { "**/node_modules/**", "**/target" });
+
+        assertTrue(matcher.match("var").isPruned());
+        assertFalse(matcher.match("usr").isPruned());
+        assertFalse(matcher.match("etc").isPruned());
+        assertTrue(matcher.match("etc/conf.d").isPruned());
+        assertTrue(matcher.match("usr/share/node_modules").isPruned());
+        assertFalse(matcher.match("usr/share/node_modules/x").isMatch());
+
+        // only the directory itself is excluded, not what is in it
+        assertFalse(matcher.match("usr/target").isPruned());
+        assertFalse(matcher.match("usr/target").isMatch());
+        assertTrue(matcher.match("usr/target/file").isMatch());
+
+        assertTrue(new PatternMatcher(null, new String[] { "**" }).getRoot().isPruned());
+    }
+
+    public void testIncrementally() {
+        final PatternMatcher matcher = new PatternMatcher(new String[] { "**/*.jar" }, new String[] { "lib/ext/**" });
+        final String path = "lib/ext/a.jar";
+
+        PatternMatcher.State state = matcher.getRoot();
+        state = matcher.next(state, path, 0, 3);
+        assertFalse(state.isMatch());
+        assertFalse(state.isPruned());
+        state = matcher.next(state, path, 4, 7);
+        assertTrue(state.isPruned());
+
+        state = matcher.next(matcher.getRoot(), path, 0, 3);
+        state = matcher.next(state, "b.jar", 0, 5);
+        assertTrue(state.isMatch());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.compression.Compression;
+import org.vafer.jdeb.data.DataBuilder;
+
+public final class ScanCacheTestCase extends TestCase {
+
+    private File dir;
+
+    private void create( final String pPath ) throws IOException {
+        final File file = new File(dir, pPath);
+        file.getParentFile().mkdirs();
+        final FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(pPath.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("jdeb", "cache");
+        dir.delete();
+        dir.mkdirs();
+
+        create("bin/app");
+        create("lib/a.jar");
+        create("lib/ext/b.jar");
+        create("doc/README");
+        create("target/classes/A.class");
+    }
+
+    private static void delete( final File pFile ) {
+        final File[] files = pFile.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        pFile.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    private static List<String> produce( final DataProducerDirectory pProducer ) throws IOException {
+        final List<String> names = new ArrayList<String>();
+        pProducer.produce(new DataConsumer() {
+            public void onEachDir( String dirname, String linkname, String user, int uid, String group, int gid, int mode, long size ) {
+                names.add(dirname);
+            }
+
+            public void onEachFile( InputStream input, String filename, String linkname, String user, int uid, String group, int gid, int mode, long size ) throws IOException {
+                names.add(filename + " " + size);
+            }
+        });
+        return names;
+    }
+
+    private DataProducerDirectory createProducer( final String[] pIncludes, final String[] pExcludes, final ScanCache pScanCache ) {
+        final DataProducerDirectory producer = new DataProducerDirectory(dir, pIncludes, pExcludes, null);
+        producer.setScanCache(pScanCache);
+        return producer;
+    }
+
+    public void testSameAsWalking() throws Exception {
+        final String[][] includes = { null, { "lib/**" }, { "**/*.jar", "bin/" } };
+        final String[][] excludes = { { "target/" }, { "lib/ext/**" }, null };
+
+        final ScanCache cache = new ScanCache();
+        for (int i = 0; i < includes.length; i++) {
+            cache.expect(dir, true, includes[i], excludes[i]);
+        }
+
+        for (int i = 0; i < includes.length; i++) {
+            assertEquals(produce(createProducer(includes[i], excludes[i], null)), produce(createProducer(includes[i], excludes[i], cache)));
+        }
+    }
+
+    public void testWalkedOnce() throws Exception {
+        final ScanCache cache = new ScanCache();
+        cache.expect(dir, true, new String[] { "lib/**" }, null);
+        cache.expect(new File(dir, "lib/.."), true, new String[] { "lib/**" }, null);
+
+        final List<String> first = produce(createProducer(new String[] { "lib/**" }, null, cache));
+        create("lib/c.jar");
+        final List<String> second = produce(createProducer(new String[] { "lib/**" }, null, cache));
+
+        // the second producer got the walk of the first one
+        assertEquals(first, second);
+
+        // the walk is kept for producing the data again until it gets released
+        assertEquals(first, produce(createProducer(new String[] { "lib/**" }, null, cache)));
+        cache.release();
+        assertEquals(first.size() + 1, produce(createProducer(new String[] { "lib/**" }, null, cache)).size());
+    }
+
+    public void testSharedWithAutoCompression() throws Exception {
+        final ScanCache cache = new ScanCache();
+        cache.expect(dir, true, new String[] { "lib/**" }, null);
+        cache.expect(dir, true, new String[] { "bin/**" }, null);
+
+        final DataProducer[] producers = {
+            createProducer(new String[] { "lib/**" }, null, cache),
+            createProducer(new String[] { "bin/**" }, null, cache)
+        };
+
+        final DataBuilder builder = new DataBuilder(new Console() {
+            public void println( String s ) {
+            }
+        });
+        final Compression compression = builder.getCompression(producers, Compression.AUTO);
+        final DirectoryWalker walk = cache.getWalk(dir, true);
+        assertNotNull(walk);
+
+        // the build gets the walk of the sampling
+        builder.build(producers, new ByteArrayOutputStream(), compression);
+        assertSame(walk, cache.getWalk(dir, true));
+    }
+
+    public void testNotShared() throws Exception {
+        final ScanCache cache = new ScanCache();
+        cache.expect(dir, true, null, null);
+        cache.expect(dir, false, null, null);
+        cache.expect(new File(dir, "lib"), true, null, null);
+
+        assertNull(cache.getWalk(dir, true));
+        assertNull(cache.getWalk(dir, false));
+        assertNull(cache.getWalk(new File(dir, "bin"), true));
+    }
+
+    public void testExcludedByAll() throws Exception {
+        final ScanCache cache = new ScanCache();
+        cache.expect(dir, true, null, new String[] { "target/", "doc/**" });
+        cache.expect(dir, true, new String[] { "lib/**", "doc/**" }, new String[] { "target/**" });
+
+        final List<String> files = new ArrayList<String>();
+        final String[] walked = cache.getWalk(dir, true).getFiles();
+        for (int i = 0; i < walked.length; i++) {
+            files.add(walked[i].replace(File.separatorChar, '/'));
+        }
+
+        // only what every producer excludes is left out of the walk
+        assertTrue(files.contains("bin/app"));
+        assertTrue(files.contains("doc/README"));
+        assertTrue(files.contains("lib/ext/b.jar"));
+        assertFalse(files.contains("target/classes/A.class"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public final class ParallelDigestOutputStreamTestCase extends TestCase {
+
+    private static final String[] ALGORITHMS = { "MD5", "SHA1", "SHA-256", "SHA-512" };
+
+    private void assertDigests( final int pLength, final int pWriteSize ) throws Exception {
+        final byte[] data = new byte[pLength];
+        new Random(pLength).nextBytes(data);
+
+        final ParallelDigestOutputStream out = new ParallelDigestOutputStream(ALGORITHMS);
+        for (int i = 0; i < data.length; i += pWriteSize) {
+            out.write(data, i, Math.min(pWriteSize, data.length - i));
+        }
+        out.close();
+
+        assertEquals(pLength, out.getSize());
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            final byte[] expected = MessageDigest.getInstance(ALGORITHMS[i]).digest(data);
+            assertTrue(ALGORITHMS[i] + " of " + pLength + " bytes", Arrays.equals(expected, out.getDigest(ALGORITHMS[i])));
+        }
+    }
+
+    public void testEmpty() throws Exception {
+        assertDigests(0, 1);
+    }
+
+    public void testSmallWrites() throws Exception {
+        assertDigests(100000, 7);
+    }
+
+    public void testLargeWrites() throws Exception {
+        // more data than fits into the ring at once
+        assertDigests(3 * 1024 * 1024 + 17, 1024 * 1024);
+    }
+
+    public void testSlotBoundary() throws Exception {
+        assertDigests(64 * 1024, 64 * 1024);
+    }
+
+    public void testUnknownAlgorithm() throws Exception {
+        final ParallelDigestOutputStream out = new ParallelDigestOutputStream(ALGORITHMS);
+        out.close();
+        try {
+            out.getDigest("SHA-384");
+            fail("SHA-384 was not calculated");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}